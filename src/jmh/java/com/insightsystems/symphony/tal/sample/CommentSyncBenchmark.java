@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.avispl.symphony.api.tal.dto.Comment;
+import com.avispl.symphony.api.tal.dto.TalTicket;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Comment comparison of syncComments and description search of syncDescription, on a ticket whose comments
+ * mostly exist on both sides already.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommentSyncBenchmark {
+
+    @Param({"1", "10", "100", "1000", "5000"})
+    public int comments;
+
+    /**
+     * Size in characters of each note text
+     */
+    @Param({"128", "4096"})
+    public int noteSize;
+
+    private TalTicket ticket;
+    private JSONArray notes;
+    private JSONObject description;
+
+    @Setup
+    public void setup() {
+        ticket = Payloads.ticket(comments, noteSize);
+        notes = ConnectWiseClient.parse(Payloads.notesBody(comments, noteSize)).getJSONArray("JSONArray");
+        description = SampleTalAdapterImpl.findDescription(notes);
+    }
+
+    /**
+     * Symphony to ConnectWise comparison, finding the comments to PATCH and to POST
+     */
+    @Benchmark
+    public void diffComments(Blackhole blackhole) {
+        List<Comment> toPatch = new ArrayList<>();
+        List<Comment> toPost = new ArrayList<>();
+        SampleTalAdapterImpl.diffComments(ticket.getComments(), notes, description, toPatch, toPost, null);
+        blackhole.consume(toPatch);
+        blackhole.consume(toPost);
+    }
+
+    /**
+     * ConnectWise to Symphony comparison, finding the notes missing on Symphony
+     */
+    @Benchmark
+    public List<JSONObject> commentsMissingFromSymphony() {
+        return SampleTalAdapterImpl.commentsMissingFromSymphony(ticket.getComments(), notes);
+    }
+
+    /**
+     * Search of the oldest discussion note
+     */
+    @Benchmark
+    public JSONObject findDescription() {
+        return SampleTalAdapterImpl.findDescription(notes);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.avispl.symphony.api.tal.dto.Comment;
+import com.avispl.symphony.api.tal.dto.TalTicket;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Benchmark inputs built out of ConnectWise payloads recorded from a live instance (src/jmh/resources/connectwise),
+ * scaled to the requested number of notes and note size.
+ *
+ * Generated tickets and notes overlap the way a long-lived synced ticket does: most comments exist on both sides
+ * with the same text, and a few are edited on Symphony, new on Symphony or new on ConnectWise.
+ */
+final class Payloads {
+
+    /**
+     * ConnectWise ID of the first generated note
+     */
+    private static final int FIRST_NOTE_ID = 500000;
+
+    private Payloads() {
+    }
+
+    /**
+     * @return recorded ConnectWise ticket GET response body
+     */
+    static String ticketBody() {
+        return read("ticket.json");
+    }
+
+    /**
+     * Builds a ConnectWise notes GET response body. The first note is the ticket description.
+     * @param count number of notes
+     * @param textSize size in characters of each note text
+     * @return JSON array of notes
+     */
+    static String notesBody(int count, int textSize) {
+        JSONObject recorded = new JSONObject(read("note.json"));
+        Instant created = Instant.parse(recorded.getString("dateCreated"));
+
+        JSONArray notes = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            JSONObject note = new JSONObject(recorded.toString());
+            note.put("id", FIRST_NOTE_ID + i);
+            note.put("text", text(recorded.getString("text"), i, textSize));
+            note.put("detailDescriptionFlag", i == 0);
+            note.put("dateCreated", created.plus(i, ChronoUnit.MINUTES).toString());
+            notes.put(note);
+        }
+        return notes.toString();
+    }
+
+    /**
+     * Builds a Symphony ticket synced with the notes of {@link #notesBody(int, int)}: one comment in 10 has been
+     * edited on Symphony, one in 20 is not on ConnectWise yet and one ConnectWise note in 20 is not on Symphony.
+     * @param count number of notes
+     * @param textSize size in characters of each comment text
+     * @return Symphony ticket
+     */
+    static TalTicket ticket(int count, int textSize) {
+        JSONObject recorded = new JSONObject(read("note.json"));
+
+        Set<Comment> comments = new HashSet<>();
+        for (int i = 1; i < count; i++) {
+            if (i % 20 == 19)
+                continue; // only on ConnectWise
+
+            String text = text(recorded.getString("text"), i, textSize);
+            if (i % 10 == 5)
+                text = "Edited on Symphony - " + text;
+            String thirdPartyId = i % 20 == 13 ? null : String.valueOf(FIRST_NOTE_ID + i);
+            comments.add(new Comment("c-" + i, thirdPartyId, "lucap@insightsystems.com.au", text,
+                    1666047731000L + i * 60000L));
+        }
+
+        TalTicket ticket = new TalTicket();
+        ticket.setSymphonyId("482");
+        ticket.setSymphonyLink("https://symphony.example.com/tickets/482");
+        ticket.setThirdPartyId("187204");
+        ticket.setThirdPartyLink("https://connect.example.com/v4_6_release/apis/3.0/service/tickets/187204");
+        ticket.setCustomerId("InsightSystems");
+        ticket.setSubject("Projector in boardroom 3 not detecting HDMI input");
+        ticket.setDescription(text(recorded.getString("text"), 0, textSize));
+        ticket.setStatus("Open");
+        ticket.setPriority("Critical");
+        ticket.setRequester("lucap@insightsystems.com.au");
+        ticket.setAssignedTo("lucap@insightsystems.com.au");
+        ticket.setComments(comments);
+        ticket.setAttachments(new HashSet<>());
+        ticket.setExtraParams(new HashMap<>());
+        return ticket;
+    }
+
+    /**
+     * Repeats the recorded note text up to the requested size, prefixed so that every note is distinct
+     */
+    private static String text(String recorded, int index, int size) {
+        StringBuilder builder = new StringBuilder(size).append('#').append(index).append(' ');
+        while (builder.length() < size)
+            builder.append(recorded).append(' ');
+        builder.setLength(size);
+        return builder.toString();
+    }
+
+    private static String read(String name) {
+        try (InputStream in = Payloads.class.getResourceAsStream("/connectwise/" + name)) {
+            if (in == null)
+                throw new IllegalStateException("Missing recorded payload " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PATCH operation building of {@link SampleTalAdapterImpl#createRequestBody(String, String, String, boolean)}
+ * for each of its outcomes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBodyBenchmark {
+
+    /**
+     * Size in characters of the patched value, from a status name to a long summary
+     */
+    @Param({"8", "128", "1024"})
+    public int valueSize;
+
+    private SampleTalAdapterImpl adapter;
+    private String symphonyValue;
+    private String connectWiseValue;
+
+    @Setup
+    public void setup() {
+        adapter = new SampleTalAdapterImpl();
+        StringBuilder builder = new StringBuilder(valueSize);
+        while (builder.length() < valueSize)
+            builder.append("Projector not detecting HDMI input ");
+        builder.setLength(valueSize);
+        symphonyValue = builder.toString();
+        connectWiseValue = builder.reverse().toString();
+    }
+
+    @Benchmark
+    public String replace() {
+        return adapter.createRequestBody(symphonyValue, connectWiseValue, "summary", true);
+    }
+
+    @Benchmark
+    public String add() {
+        return adapter.createRequestBody(symphonyValue, null, "summary", true);
+    }
+
+    @Benchmark
+    public String unchanged() {
+        return adapter.createRequestBody(symphonyValue, symphonyValue, "summary", true);
+    }
+
+    @Benchmark
+    public String updateSymphony() {
+        return adapter.createRequestBody(null, connectWiseValue, "summary", true);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding of ConnectWise response bodies by {@link ConnectWiseClient#parse(String)}: notes GET responses, which go
+ * through the failed object parse before being wrapped as an array, and a ticket GET response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseDecodeBenchmark {
+
+    @Param({"1", "10", "100", "1000", "5000"})
+    public int comments;
+
+    /**
+     * Size in characters of each note text
+     */
+    @Param({"128", "4096"})
+    public int noteSize;
+
+    private String notesBody;
+
+    @Setup
+    public void setup() {
+        notesBody = Payloads.notesBody(comments, noteSize);
+    }
+
+    @Benchmark
+    public JSONObject notes() {
+        return ConnectWiseClient.parse(notesBody);
+    }
+
+    /**
+     * Ticket GET response, which does not depend on the ticket size parameters
+     */
+    @State(Scope.Thread)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public static class Ticket {
+
+        private String ticketBody;
+
+        @Setup
+        public void setup() {
+            ticketBody = Payloads.ticketBody();
+        }
+
+        @Benchmark
+        public JSONObject ticket() {
+            return ConnectWiseClient.parse(ticketBody);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.concurrent.TimeUnit;
+
+import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.avispl.symphony.api.tal.dto.TicketSystemConfig;
+import com.insightsystems.symphony.tal.mocks.MockTalConfigService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mapping of a ticket to ConnectWise values with the {@link MockTalConfigService} configuration.
+ *
+ * Every invocation maps the ticket to ConnectWise and back, so that the ticket holds Symphony values again
+ * for the next invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TicketMapperBenchmark {
+
+    @Param({"1", "10", "100", "1000", "5000"})
+    public int comments;
+
+    private TicketSystemConfig config;
+    private MappingSnapshot mappings;
+    private TalTicket ticket;
+
+    @Setup
+    public void setup() throws Exception {
+        config = new MockTalConfigService().retrieveTicketSystemConfig(null);
+        mappings = MappingSnapshot.compile(config);
+        ticket = Payloads.ticket(comments, 128);
+    }
+
+    /**
+     * Public entry point, compiles the configuration mappings on every call
+     */
+    @Benchmark
+    public TalTicket mapWithConfig() {
+        TicketMapper.mapSymphonyToThirdParty(ticket, config);
+        return TicketMapper.mapThirdPartyToSymphony(ticket, mappings, null);
+    }
+
+    /**
+     * Entry point used by syncs, with mappings compiled once per configuration
+     */
+    @Benchmark
+    public TalTicket mapWithSnapshot() {
+        TicketMapper.mapSymphonyToThirdParty(ticket, mappings, null);
+        return TicketMapper.mapThirdPartyToSymphony(ticket, mappings, null);
+    }
+}
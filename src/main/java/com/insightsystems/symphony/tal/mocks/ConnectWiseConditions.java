@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.mocks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.json.JSONObject;
+
+/**
+ * Parser of the ConnectWise "conditions" query parameter, used by {@link MockConnectWiseServer} to filter lists.
+ *
+ * Supports the subset of the ConnectWise syntax the adapter uses: comparisons (=, !=, &lt;, &lt;=, &gt;, &gt;=),
+ * like with * wildcards, contains, in and not in lists, combined with and/or and parentheses. Values are numbers,
+ * quoted strings, [dates], true, false and null. Field paths use "/", i.e. "status/name"; fields not found on an
+ * entry are looked up under "_info", i.e. "lastUpdated".
+ */
+final class ConnectWiseConditions {
+
+    private final String text;
+    private int pos;
+
+    private ConnectWiseConditions(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @param conditions value of the conditions parameter, may be null
+     * @return predicate matching the entries satisfying the conditions
+     * @throws IllegalArgumentException if the conditions cannot be parsed
+     */
+    static Predicate<JSONObject> parse(String conditions) {
+        if (conditions == null || conditions.trim().isEmpty())
+            return entry -> true;
+
+        ConnectWiseConditions parser = new ConnectWiseConditions(conditions);
+        Predicate<JSONObject> predicate = parser.or();
+        parser.skipSpaces();
+        if (parser.pos < parser.text.length())
+            throw parser.error("unexpected input");
+        return predicate;
+    }
+
+    private Predicate<JSONObject> or() {
+        Predicate<JSONObject> predicate = and();
+        while (keyword("or"))
+            predicate = predicate.or(and());
+        return predicate;
+    }
+
+    private Predicate<JSONObject> and() {
+        Predicate<JSONObject> predicate = term();
+        while (keyword("and"))
+            predicate = predicate.and(term());
+        return predicate;
+    }
+
+    private Predicate<JSONObject> term() {
+        skipSpaces();
+        if (peek() == '(') {
+            pos++;
+            Predicate<JSONObject> predicate = or();
+            expect(')');
+            return predicate;
+        }
+
+        String field = field();
+        skipSpaces();
+        if (keyword("not")) {
+            if (!keyword("in"))
+                throw error("expected in");
+            List<Object> values = list();
+            return entry -> !contains(values, value(entry, field));
+        }
+        if (keyword("in")) {
+            List<Object> values = list();
+            return entry -> contains(values, value(entry, field));
+        }
+        if (keyword("like")) {
+            Pattern pattern = like(String.valueOf(literal()));
+            return entry -> {
+                Object value = value(entry, field);
+                return value != null && pattern.matcher(String.valueOf(value)).matches();
+            };
+        }
+        if (keyword("contains")) {
+            String part = String.valueOf(literal()).toLowerCase(Locale.ROOT);
+            return entry -> {
+                Object value = value(entry, field);
+                return value != null && String.valueOf(value).toLowerCase(Locale.ROOT).contains(part);
+            };
+        }
+
+        String operator = operator();
+        Object expected = literal();
+        switch (operator) {
+            case "=":
+                return entry -> compare(value(entry, field), expected) == 0;
+            case "!=":
+                return entry -> compare(value(entry, field), expected) != 0;
+            case "<":
+                return entry -> ordered(value(entry, field), expected) && compare(value(entry, field), expected) < 0;
+            case "<=":
+                return entry -> ordered(value(entry, field), expected) && compare(value(entry, field), expected) <= 0;
+            case ">":
+                return entry -> ordered(value(entry, field), expected) && compare(value(entry, field), expected) > 0;
+            default:
+                return entry -> ordered(value(entry, field), expected) && compare(value(entry, field), expected) >= 0;
+        }
+    }
+
+    private String field() {
+        skipSpaces();
+        int start = pos;
+        while (pos < text.length() && (Character.isLetterOrDigit(peek()) || peek() == '/' || peek() == '_'))
+            pos++;
+        if (start == pos)
+            throw error("expected field");
+        return text.substring(start, pos);
+    }
+
+    private String operator() {
+        skipSpaces();
+        for (String operator : new String[]{"!=", "<=", ">=", "=", "<", ">"}) {
+            if (text.startsWith(operator, pos)) {
+                pos += operator.length();
+                return operator;
+            }
+        }
+        throw error("expected operator");
+    }
+
+    private List<Object> list() {
+        expect('(');
+        List<Object> values = new ArrayList<>();
+        skipSpaces();
+        if (peek() == ')') {
+            pos++;
+            return values;
+        }
+        while (true) {
+            values.add(literal());
+            skipSpaces();
+            if (peek() != ',')
+                break;
+            pos++;
+        }
+        expect(')');
+        return values;
+    }
+
+    private Object literal() {
+        skipSpaces();
+        char c = peek();
+        if (c == '"' || c == '\'') {
+            int end = text.indexOf(c, pos + 1);
+            if (end < 0)
+                throw error("unterminated string");
+            String value = text.substring(pos + 1, end);
+            pos = end + 1;
+            return value;
+        }
+        if (c == '[') {
+            int end = text.indexOf(']', pos);
+            if (end < 0)
+                throw error("unterminated date");
+            String value = text.substring(pos + 1, end).trim();
+            pos = end + 1;
+            return value;
+        }
+
+        int start = pos;
+        while (pos < text.length() && (Character.isLetterOrDigit(peek()) || peek() == '.' || peek() == '-'))
+            pos++;
+        String token = text.substring(start, pos);
+        if (token.isEmpty())
+            throw error("expected value");
+        if (token.equalsIgnoreCase("null"))
+            return JSONObject.NULL;
+        if (token.equalsIgnoreCase("true") || token.equalsIgnoreCase("false"))
+            return Boolean.valueOf(token);
+        try {
+            return Double.valueOf(token);
+        } catch (NumberFormatException e) {
+            return token;
+        }
+    }
+
+    private boolean keyword(String keyword) {
+        skipSpaces();
+        int end = pos + keyword.length();
+        if (text.regionMatches(true, pos, keyword, 0, keyword.length()) &&
+                (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)))) {
+            pos = end;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        skipSpaces();
+        if (peek() != c)
+            throw error("expected " + c);
+        pos++;
+    }
+
+    private char peek() {
+        return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+            pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid conditions at " + pos + ": " + message + " - " + text);
+    }
+
+    /**
+     * @return value of a field path on an entry, null if absent
+     */
+    static Object value(JSONObject entry, String field) {
+        Object value = path(entry, field);
+        if (value == null && entry.optJSONObject("_info") != null)
+            value = path(entry.getJSONObject("_info"), field);
+        return value;
+    }
+
+    private static Object path(JSONObject entry, String field) {
+        Object current = entry;
+        for (String part : field.split("/")) {
+            if (!(current instanceof JSONObject))
+                return null;
+            current = ((JSONObject) current).opt(part);
+        }
+        return current;
+    }
+
+    private static boolean contains(List<Object> values, Object value) {
+        for (Object candidate : values) {
+            if (compare(value, candidate) == 0)
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean ordered(Object value, Object expected) {
+        return value != null && value != JSONObject.NULL && expected != JSONObject.NULL;
+    }
+
+    /**
+     * Compares numerically when both values are numbers, case-insensitively otherwise
+     */
+    private static int compare(Object value, Object expected) {
+        if (value == null)
+            value = JSONObject.NULL;
+        if (value == JSONObject.NULL || expected == JSONObject.NULL)
+            return value == expected ? 0 : 1;
+        Double number = number(value);
+        Double expectedNumber = number(expected);
+        if (number != null && expectedNumber != null && (value instanceof Number || expected instanceof Number))
+            return Double.compare(number, expectedNumber);
+        if (value instanceof Boolean || expected instanceof Boolean)
+            return String.valueOf(value).equalsIgnoreCase(String.valueOf(expected)) ? 0 : 1;
+        return String.valueOf(value).compareToIgnoreCase(String.valueOf(expected));
+    }
+
+    private static Double number(Object value) {
+        if (value instanceof Number)
+            return ((Number) value).doubleValue();
+        try {
+            return Double.valueOf(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Pattern like(String pattern) {
+        List<String> parts = new ArrayList<>();
+        for (String part : pattern.split("\\*", -1))
+            parts.add(Pattern.quote(part));
+        return Pattern.compile(String.join(".*", parts), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.mocks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Latency and fault injection of {@link MockConnectWiseServer}.
+ *
+ * Every request is delayed by a sample of the latency distribution, then may fail with a scripted fault
+ * ({@link #failNext(Fault, int)}) or a random one drawn from the configured rates. Faults can be restricted to
+ * the requests matching a scope, i.e. "GET .*&#47;notes.*".
+ */
+public class FaultInjector {
+
+    /**
+     * Fault a request can fail with
+     */
+    public enum Fault {
+        /** 429 Too Many Requests with a Retry-After header */
+        THROTTLE,
+        /** 5xx response */
+        SERVER_ERROR,
+        /** No response until the hang time elapses, then the connection is closed */
+        TIMEOUT,
+        /** Connection closed without a response */
+        RESET
+    }
+
+    /**
+     * Distribution of the latency added to requests
+     */
+    @FunctionalInterface
+    public interface LatencyDistribution {
+
+        /**
+         * @param random random source
+         * @return latency in milliseconds
+         */
+        long sampleMillis(Random random);
+
+        /**
+         * @return no added latency
+         */
+        static LatencyDistribution none() {
+            return random -> 0;
+        }
+
+        /**
+         * @param millis latency of every request
+         * @return constant latency
+         */
+        static LatencyDistribution fixed(long millis) {
+            return random -> millis;
+        }
+
+        /**
+         * @param minMillis lowest latency
+         * @param maxMillis highest latency
+         * @return latency uniformly distributed between the bounds
+         */
+        static LatencyDistribution uniform(long minMillis, long maxMillis) {
+            return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        }
+
+        /**
+         * @param meanMillis mean latency
+         * @return exponentially distributed latency
+         */
+        static LatencyDistribution exponential(double meanMillis) {
+            return random -> Math.round(-meanMillis * Math.log(1 - random.nextDouble()));
+        }
+
+        /**
+         * Long-tailed latency, typical of remote APIs
+         * @param medianMillis median latency
+         * @param sigma standard deviation of the latency logarithm, i.e. 0.5 for a p99 about 3 times the median
+         * @return log-normally distributed latency
+         */
+        static LatencyDistribution logNormal(double medianMillis, double sigma) {
+            return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+
+    private final Random random = new Random();
+    private final Deque<Fault> scripted = new ArrayDeque<>();
+
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile Pattern scope;
+    private volatile double throttleRate;
+    private volatile int retryAfterSeconds = 1;
+    private volatile double serverErrorRate;
+    private volatile int serverErrorStatus = 503;
+    private volatile double timeoutRate;
+    private volatile long hangMillis = 60_000;
+    private volatile double resetRate;
+
+    /**
+     * @param latency latency added to every request
+     * @return this injector
+     */
+    public FaultInjector setLatency(LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param scope regular expression matched against "METHOD path?query" of requests, faults and latency are
+     *              only injected in matching requests; null to inject in every request
+     * @return this injector
+     */
+    public FaultInjector setScope(String scope) {
+        this.scope = scope == null ? null : Pattern.compile(scope);
+        return this;
+    }
+
+    /**
+     * @param rate fraction of requests answered with 429 Too Many Requests
+     * @param retryAfterSeconds value of the Retry-After header
+     * @return this injector
+     */
+    public FaultInjector setThrottleRate(double rate, int retryAfterSeconds) {
+        this.throttleRate = rate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * @param rate fraction of requests answered with a server error
+     * @param status HTTP status code of the error, i.e. 503
+     * @return this injector
+     */
+    public FaultInjector setServerErrorRate(double rate, int status) {
+        this.serverErrorRate = rate;
+        this.serverErrorStatus = status;
+        return this;
+    }
+
+    /**
+     * @param rate fraction of requests never answered
+     * @param hangMillis time after which the connection of an unanswered request is closed
+     * @return this injector
+     */
+    public FaultInjector setTimeoutRate(double rate, long hangMillis) {
+        this.timeoutRate = rate;
+        this.hangMillis = hangMillis;
+        return this;
+    }
+
+    /**
+     * @param rate fraction of requests whose connection is closed without a response
+     * @return this injector
+     */
+    public FaultInjector setResetRate(double rate) {
+        this.resetRate = rate;
+        return this;
+    }
+
+    /**
+     * Fails the next requests in scope, before any random fault
+     * @param fault fault to inject
+     * @param count number of requests to fail
+     * @return this injector
+     */
+    public FaultInjector failNext(Fault fault, int count) {
+        synchronized (scripted) {
+            for (int i = 0; i < count; i++)
+                scripted.add(fault);
+        }
+        return this;
+    }
+
+    /**
+     * @param seed seed of the random source, for reproducible runs
+     * @return this injector
+     */
+    public FaultInjector setSeed(long seed) {
+        synchronized (random) {
+            random.setSeed(seed);
+        }
+        return this;
+    }
+
+    /**
+     * Removes all latency and faults
+     */
+    public void clear() {
+        latency = LatencyDistribution.none();
+        scope = null;
+        throttleRate = 0;
+        serverErrorRate = 0;
+        timeoutRate = 0;
+        resetRate = 0;
+        synchronized (scripted) {
+            scripted.clear();
+        }
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public int getServerErrorStatus() {
+        return serverErrorStatus;
+    }
+
+    public long getHangMillis() {
+        return hangMillis;
+    }
+
+    /**
+     * Applies the latency to a request and picks its fault
+     * @param request "METHOD path?query" of the request
+     * @return fault to inject, null if the request is to be served
+     * @throws InterruptedException if interrupted while delaying the request
+     */
+    Fault before(String request) throws InterruptedException {
+        Pattern scope = this.scope;
+        if (scope != null && !scope.matcher(request).matches())
+            return null;
+
+        long delay;
+        double draw;
+        synchronized (random) {
+            delay = latency.sampleMillis(random);
+            draw = random.nextDouble();
+        }
+        if (delay > 0)
+            Thread.sleep(delay);
+
+        synchronized (scripted) {
+            if (!scripted.isEmpty())
+                return scripted.poll();
+        }
+
+        if ((draw -= throttleRate) < 0)
+            return Fault.THROTTLE;
+        if ((draw -= serverErrorRate) < 0)
+            return Fault.SERVER_ERROR;
+        if ((draw -= timeoutRate) < 0)
+            return Fault.TIMEOUT;
+        if (draw - resetRate < 0)
+            return Fault.RESET;
+        return null;
+    }
+}
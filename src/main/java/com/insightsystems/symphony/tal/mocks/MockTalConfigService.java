@@ -7,6 +7,7 @@ package com.insightsystems.symphony.tal.mocks;
 import com.avispl.symphony.api.tal.TalAdapter;
 import com.avispl.symphony.api.tal.TalConfigService;
 import com.avispl.symphony.api.tal.dto.*;
+import com.insightsystems.symphony.tal.sample.ConnectWiseConfigProperty;
 
 import java.util.HashMap;
 import java.util.List;
@@ -24,6 +25,23 @@ import java.util.function.Consumer;
  */
 public class MockTalConfigService implements TalConfigService {
 
+    /**
+     * Ticket source configuration values replacing the defaults, i.e. to point the adapter to a
+     * {@link MockConnectWiseServer}
+     */
+    private final Map<String, String> ticketSourceConfig;
+
+    public MockTalConfigService() {
+        this(new HashMap<>());
+    }
+
+    /**
+     * @param ticketSourceConfig ticket source configuration values replacing the defaults
+     */
+    public MockTalConfigService(Map<String, String> ticketSourceConfig) {
+        this.ticketSourceConfig = new HashMap<>(ticketSourceConfig);
+    }
+
     @Override
     public TicketSystemConfig retrieveTicketSystemConfig(UUID uuid) throws ExecutionException {
         TicketSystemConfig config = new TicketSystemConfig();
@@ -36,6 +54,10 @@ public class MockTalConfigService implements TalConfigService {
         instanceConfigMapping.put(TicketSourceConfigProperty.API_PATH, null);
         instanceConfigMapping.put(TicketSourceConfigProperty.LOGIN, null); // ConnectWise clientID
         instanceConfigMapping.put(TicketSourceConfigProperty.PASSWORD, null); // ConnectWise Authorization
+        // BOARD example: "Help Desk" or "199", COMPANY example: "InsightSystems" or "250"
+        instanceConfigMapping.put(ConnectWiseConfigProperty.BOARD, null);
+        instanceConfigMapping.put(ConnectWiseConfigProperty.COMPANY, null);
+        instanceConfigMapping.putAll(ticketSourceConfig);
 
         // keys are Symphony priorities and values are third party mapped statuses
         Map<String, String> customerPriorityMappingForThirdParty  = new HashMap<>();
@@ -46,10 +68,10 @@ public class MockTalConfigService implements TalConfigService {
 
         // keys are third party priorities and values are Symphony mapped statuses
         Map<String, String> customerPriorityMappingForSymphony  = new HashMap<>();
-        customerPriorityMappingForThirdParty.put("6", "Critical");
-        customerPriorityMappingForThirdParty.put("91", "Major");
-        customerPriorityMappingForThirdParty.put("8", "Minor");
-        customerPriorityMappingForThirdParty.put("12", "Informational");
+        customerPriorityMappingForSymphony.put("6", "Critical");
+        customerPriorityMappingForSymphony.put("91", "Major");
+        customerPriorityMappingForSymphony.put("8", "Minor");
+        customerPriorityMappingForSymphony.put("12", "Informational");
 
         // keys are third party users and values are Symphony mapped user
         Map<String, String> userMappingForSymphony = new HashMap<>();
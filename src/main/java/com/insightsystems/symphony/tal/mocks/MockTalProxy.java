@@ -9,9 +9,12 @@ import com.avispl.symphony.api.tal.TalProxy;
 import com.avispl.symphony.api.tal.dto.Attachment;
 import com.avispl.symphony.api.tal.dto.Comment;
 import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
 
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -22,6 +25,11 @@ import java.util.concurrent.ExecutionException;
  */
 public class MockTalProxy implements TalProxy {
 
+    /**
+     * Adapters subscribed to ticket updates, by account
+     */
+    private final Map<UUID, TalAdapter> subscribers = new ConcurrentHashMap<>();
+
     @Override
     public void pushUpdatesToTal(TalTicket talTicket) {
 
@@ -83,6 +91,28 @@ public class MockTalProxy implements TalProxy {
 
     @Override
     public void subscribeUpdates(UUID uuid, TalAdapter talAdapter) {
-        // no op
+        subscribers.put(uuid, talAdapter);
+    }
+
+    /**
+     * Delivers a Symphony ticket update to the adapter subscribed for the account, as Symphony does
+     * @param uuid account ID
+     * @param talTicket updated ticket
+     * @return ticket returned by the adapter
+     * @throws TalAdapterSyncException if the adapter fails to sync the ticket
+     * @throws IllegalStateException if no adapter is subscribed for the account
+     */
+    public TalTicket publish(UUID uuid, TalTicket talTicket) throws TalAdapterSyncException {
+        TalAdapter talAdapter = subscribers.get(uuid);
+        if (talAdapter == null)
+            throw new IllegalStateException("No adapter subscribed for account " + uuid);
+        return talAdapter.syncTalTicket(talTicket);
+    }
+
+    /**
+     * @return accounts with a subscribed adapter
+     */
+    public Set<UUID> getSubscribedAccounts() {
+        return subscribers.keySet();
     }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Always-on flight recording of the adapter events only ({@link ConnectWiseCallEvent}, {@link SyncEvent},
+ * {@link SyncDiffEvent} and {@link RetryEvent}), bounded in age and size, that can be dumped to a file after an
+ * incident without having had to start a recording beforehand.
+ */
+public class AdapterFlightRecorder {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AdapterFlightRecorder.class);
+
+    private static final Duration MAX_AGE = Duration.ofHours(1);
+    private static final long MAX_SIZE = 32L * 1024 * 1024;
+
+    private Recording recording;
+
+    /**
+     * Starts the recording, does nothing if the flight recorder is not available on this JVM
+     * @param name recording name, i.e. the account ID
+     */
+    public synchronized void start(String name) {
+        if (recording != null)
+            return;
+
+        try {
+            if (!FlightRecorder.isAvailable()) {
+                logger.info("start: flight recorder not available, adapter events are not recorded");
+                return;
+            }
+
+            Recording recording = new Recording();
+            recording.setName("ConnectWise adapter " + name);
+            recording.enable(ConnectWiseCallEvent.class);
+            recording.enable(SyncEvent.class);
+            recording.enable(SyncDiffEvent.class);
+            recording.enable(RetryEvent.class);
+            recording.setMaxAge(MAX_AGE);
+            recording.setMaxSize(MAX_SIZE);
+            recording.setToDisk(true);
+            recording.start();
+            this.recording = recording;
+        } catch (Exception e) {
+            logger.warn("start: unable to start flight recording - {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the events currently held by the recording
+     * @param destination file the recording is written to
+     * @return true if the recording was written
+     */
+    public synchronized boolean dump(Path destination) {
+        if (recording == null)
+            return false;
+
+        try {
+            recording.dump(destination);
+            return true;
+        } catch (IOException e) {
+            logger.error("dump: unable to write flight recording to {} - {}", destination, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stops the recording and releases its buffers
+     */
+    public synchronized void close() {
+        if (recording == null)
+            return;
+
+        recording.close();
+        recording = null;
+    }
+}
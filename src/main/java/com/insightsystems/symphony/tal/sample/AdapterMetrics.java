@@ -0,0 +1,561 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adapter instrumentation: ConnectWise call latencies and outcomes, sync outcomes and load gauges.
+ *
+ * Recording is lock-free (striped counters and fixed-bucket histograms) and metrics are published as a
+ * platform MXBean, so they can be read with any JMX client.
+ */
+public class AdapterMetrics implements AdapterMetricsMXBean {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AdapterMetrics.class);
+
+    /**
+     * Class of ConnectWise endpoint a call is made to
+     */
+    public enum Endpoint {
+        /** Ticket read or update */
+        TICKET("ticket"),
+        /** Ticket notes read, creation or update */
+        NOTES("notes"),
+        /** Ticket creation */
+        CREATE("create"),
+        /** Any other endpoint, i.e. reference data or members */
+        OTHER("other");
+
+        private final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return lower case name of the endpoint class, i.e. "notes"
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Classifies a call
+         * @param method HTTP method
+         * @param url request URL
+         * @return endpoint class of the call
+         */
+        public static Endpoint of(String method, String url) {
+            if (url == null)
+                return OTHER;
+
+            int query = url.indexOf('?');
+            String path = query < 0 ? url : url.substring(0, query);
+            if (path.contains("/notes"))
+                return NOTES;
+            if (path.endsWith("/service/tickets"))
+                return "POST".equals(method) ? CREATE : TICKET;
+            if (path.contains("/service/tickets/"))
+                return TICKET;
+            return OTHER;
+        }
+    }
+
+    private static final String[] METHODS = {"GET", "POST", "PATCH", "OTHER"};
+
+    private final LatencyHistogram[][] calls = new LatencyHistogram[METHODS.length][Endpoint.values().length];
+    private final Map<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+    private final LongAdder ioErrors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    private final LatencyHistogram syncs = new LatencyHistogram();
+    private final LongAdder syncsSucceeded = new LongAdder();
+    private final LongAdder syncsFailed = new LongAdder();
+    private final LongAdder ticketsCreated = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder ticketBatches = new LongAdder();
+    private final LongAdder batchedTicketReads = new LongAdder();
+    private final LongAdder callbacksReceived = new LongAdder();
+    private final LongAdder callbacksDuplicate = new LongAdder();
+    private final LongAdder callbacksRejected = new LongAdder();
+    private final LongAdder callbackPushes = new LongAdder();
+    private final LongAdder callbackEchoes = new LongAdder();
+    private final LongAdder syncEchoes = new LongAdder();
+    private final LongAdder ticketReadsSkipped = new LongAdder();
+    private final LongAdder connectWiseKept = new LongAdder();
+    private volatile DeadLetterQueue deadLetters;
+
+    private final LongAdder inFlightSyncs = new LongAdder();
+    private final LongAdder inFlightCalls = new LongAdder();
+    private volatile LongSupplier queueDepth = () -> 0;
+    private final LatencyHistogram[] queueWaits = new LatencyHistogram[SyncPriority.values().length];
+
+    private volatile ObjectName objectName;
+
+    public AdapterMetrics() {
+        for (int m = 0; m < METHODS.length; m++) {
+            for (int e = 0; e < Endpoint.values().length; e++)
+                calls[m][e] = new LatencyHistogram();
+        }
+        for (int p = 0; p < queueWaits.length; p++)
+            queueWaits[p] = new LatencyHistogram();
+    }
+
+    /**
+     * Publishes these metrics on the platform MBean server
+     * @param name value of the "name" key of the MBean object name, i.e. the account ID
+     */
+    public void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.insightsystems.symphony.tal:type=ConnectWiseAdapter,name="
+                    + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (Exception e) {
+            // Metrics are still recorded, only not exposed
+            logger.warn("register: unable to register adapter metrics MBean - {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server
+     */
+    public void unregister() {
+        ObjectName objectName = this.objectName;
+        if (objectName == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            logger.debug("unregister: unable to unregister adapter metrics MBean - {}", e.getMessage());
+        }
+        this.objectName = null;
+    }
+
+    /**
+     * @param queueDepth supplies the number of calls waiting for a ConnectWise connection
+     */
+    public void setQueueDepth(LongSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * @param deadLetters dead letter queue published with the metrics
+     */
+    public void setDeadLetters(DeadLetterQueue deadLetters) {
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * Records the wait of a ConnectWise call for a connection
+     * @param priority priority class of the call
+     * @param nanos wait in nanoseconds
+     */
+    public void queueWaited(SyncPriority priority, long nanos) {
+        queueWaits[priority.ordinal()].record(nanos);
+    }
+
+    /**
+     * Marks the start of a ConnectWise call
+     */
+    public void callStarted() {
+        inFlightCalls.increment();
+    }
+
+    /**
+     * Records a ConnectWise call that got a response
+     * @param method HTTP method
+     * @param endpoint endpoint class of the call
+     * @param statusCode HTTP status code of the response
+     * @param nanos call latency in nanoseconds
+     */
+    public void callCompleted(String method, Endpoint endpoint, int statusCode, long nanos) {
+        inFlightCalls.decrement();
+        calls[methodIndex(method)][endpoint.ordinal()].record(nanos);
+        responses.computeIfAbsent(statusCode, k -> new LongAdder()).increment();
+        if (statusCode == 429)
+            throttled.increment();
+    }
+
+    /**
+     * Records a ConnectWise call that failed without a response
+     * @param method HTTP method
+     * @param endpoint endpoint class of the call
+     * @param nanos time until the failure in nanoseconds
+     */
+    public void callFailed(String method, Endpoint endpoint, long nanos) {
+        inFlightCalls.decrement();
+        calls[methodIndex(method)][endpoint.ordinal()].record(nanos);
+        ioErrors.increment();
+    }
+
+    /**
+     * Records a retried sync, i.e. a dead letter handed out for retry; hedged GETs are recorded by
+     * {@link #hedged(boolean)}
+     */
+    public void retried() {
+        retries.increment();
+    }
+
+    /**
+     * Marks the start of a sync
+     */
+    public void syncStarted() {
+        inFlightSyncs.increment();
+    }
+
+    /**
+     * Records the end of a sync
+     * @param succeeded whether the sync completed successfully
+     * @param nanos sync duration in nanoseconds
+     */
+    public void syncCompleted(boolean succeeded, long nanos) {
+        inFlightSyncs.decrement();
+        syncs.record(nanos);
+        if (succeeded)
+            syncsSucceeded.increment();
+        else
+            syncsFailed.increment();
+    }
+
+    /**
+     * Records the creation of a ConnectWise ticket
+     */
+    public void ticketCreated() {
+        ticketsCreated.increment();
+    }
+
+    /**
+     * Records comment sync work left to the next sync because of the sync deadline
+     */
+    public void deferred() {
+        deferred.increment();
+    }
+
+    /**
+     * Records a hedged ConnectWise GET
+     * @param won whether the hedge answered before the first request
+     */
+    public void hedged(boolean won) {
+        hedges.increment();
+        if (won)
+            hedgesWon.increment();
+    }
+
+    /**
+     * Records tickets read with one ConnectWise call
+     * @param tickets number of tickets read together
+     */
+    public void ticketsBatched(int tickets) {
+        ticketBatches.increment();
+        batchedTicketReads.add(tickets);
+    }
+
+    /**
+     * Records a ConnectWise callback notification received
+     * @param duplicate whether the notification was received already, and dropped
+     */
+    public void callbackReceived(boolean duplicate) {
+        callbacksReceived.increment();
+        if (duplicate)
+            callbacksDuplicate.increment();
+    }
+
+    /**
+     * Records a callback notification rejected for failing verification
+     */
+    public void callbackRejected() {
+        callbacksRejected.increment();
+    }
+
+    /**
+     * Records a ticket pushed to Symphony following ConnectWise callbacks
+     */
+    public void callbackPushed() {
+        callbackPushes.increment();
+    }
+
+    /**
+     * Records a callback notification, or the changes gathered for a ticket, dropped as the echo of the adapter's
+     * own writes to ConnectWise
+     */
+    public void callbackEcho() {
+        callbackEchoes.increment();
+    }
+
+    /**
+     * Records a Symphony update answered without ConnectWise calls as the echo of the ticket last exchanged
+     */
+    public void syncEcho() {
+        syncEchoes.increment();
+    }
+
+    /**
+     * Records a sync that wrote the ConnectWise ticket without reading it first, its last exchange standing for it
+     */
+    public void ticketReadSkipped() {
+        ticketReadsSkipped.increment();
+    }
+
+    /**
+     * Records a field, description or comment that kept its ConnectWise value over a stale or earlier Symphony value
+     */
+    public void connectWiseKept() {
+        connectWiseKept.increment();
+    }
+
+    /**
+     * @param method HTTP method
+     * @param endpoint endpoint class
+     * @return latencies of the ConnectWise calls with that method on that endpoint class
+     */
+    LatencyHistogram getCallLatency(String method, Endpoint endpoint) {
+        return calls[methodIndex(method)][endpoint.ordinal()];
+    }
+
+    private static int methodIndex(String method) {
+        for (int i = 0; i < METHODS.length - 1; i++) {
+            if (METHODS[i].equals(method))
+                return i;
+        }
+        return METHODS.length - 1;
+    }
+
+    private <T> Map<String, T> byCall(Function<LatencyHistogram, T> value) {
+        Map<String, T> result = new TreeMap<>();
+        for (int m = 0; m < METHODS.length; m++) {
+            for (Endpoint endpoint : Endpoint.values()) {
+                LatencyHistogram histogram = calls[m][endpoint.ordinal()];
+                if (histogram.getCount() > 0)
+                    result.put(METHODS[m] + " " + endpoint.label, value.apply(histogram));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts() {
+        return byCall(LatencyHistogram::getCount);
+    }
+
+    @Override
+    public Map<String, Double> getCallLatencyP50Millis() {
+        return byCall(h -> h.getPercentileMillis(50));
+    }
+
+    @Override
+    public Map<String, Double> getCallLatencyP99Millis() {
+        return byCall(h -> h.getPercentileMillis(99));
+    }
+
+    @Override
+    public Map<String, Double> getCallLatencyP999Millis() {
+        return byCall(h -> h.getPercentileMillis(99.9));
+    }
+
+    @Override
+    public Map<String, Long> getResponsesByStatus() {
+        Map<String, Long> result = new TreeMap<>();
+        responses.forEach((status, count) -> result.put(String.valueOf(status), count.sum()));
+        return result;
+    }
+
+    @Override
+    public long getIoErrors() {
+        return ioErrors.sum();
+    }
+
+    @Override
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getSyncsSucceeded() {
+        return syncsSucceeded.sum();
+    }
+
+    @Override
+    public long getSyncsFailed() {
+        return syncsFailed.sum();
+    }
+
+    @Override
+    public long getTicketsCreated() {
+        return ticketsCreated.sum();
+    }
+
+    @Override
+    public long getDeferred() {
+        return deferred.sum();
+    }
+
+    @Override
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    @Override
+    public long getHedgesWon() {
+        return hedgesWon.sum();
+    }
+
+    @Override
+    public long getTicketBatches() {
+        return ticketBatches.sum();
+    }
+
+    @Override
+    public long getBatchedTicketReads() {
+        return batchedTicketReads.sum();
+    }
+
+    @Override
+    public long getCallbacksReceived() {
+        return callbacksReceived.sum();
+    }
+
+    @Override
+    public long getCallbacksDuplicate() {
+        return callbacksDuplicate.sum();
+    }
+
+    @Override
+    public long getCallbacksRejected() {
+        return callbacksRejected.sum();
+    }
+
+    @Override
+    public long getCallbackPushes() {
+        return callbackPushes.sum();
+    }
+
+    @Override
+    public long getCallbackEchoes() {
+        return callbackEchoes.sum();
+    }
+
+    @Override
+    public long getSyncEchoes() {
+        return syncEchoes.sum();
+    }
+
+    @Override
+    public long getTicketReadsSkipped() {
+        return ticketReadsSkipped.sum();
+    }
+
+    @Override
+    public long getConnectWiseKept() {
+        return connectWiseKept.sum();
+    }
+
+    @Override
+    public long getDeadLetters() {
+        DeadLetterQueue queue = deadLetters;
+        return queue != null ? queue.size() : 0;
+    }
+
+    @Override
+    public long getDeadLetterAgeMillis() {
+        DeadLetterQueue queue = deadLetters;
+        return queue != null ? queue.getOldestAgeMillis() : 0;
+    }
+
+    @Override
+    public double getSyncLatencyP50Millis() {
+        return syncs.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getSyncLatencyP99Millis() {
+        return syncs.getPercentileMillis(99);
+    }
+
+    @Override
+    public long getInFlightSyncs() {
+        return inFlightSyncs.sum();
+    }
+
+    @Override
+    public long getInFlightCalls() {
+        return inFlightCalls.sum();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return queueDepth.getAsLong();
+    }
+
+    @Override
+    public Map<String, Double> getQueueWaitP99Millis() {
+        Map<String, Double> result = new TreeMap<>();
+        for (SyncPriority priority : SyncPriority.values()) {
+            LatencyHistogram histogram = queueWaits[priority.ordinal()];
+            if (histogram.getCount() > 0)
+                result.put(priority.getSymphonyPriority(), histogram.getPercentileMillis(99));
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram[] byMethod : calls) {
+            for (LatencyHistogram histogram : byMethod)
+                histogram.reset();
+        }
+        responses.clear();
+        ioErrors.reset();
+        throttled.reset();
+        retries.reset();
+        syncs.reset();
+        syncsSucceeded.reset();
+        syncsFailed.reset();
+        ticketsCreated.reset();
+        deferred.reset();
+        hedges.reset();
+        hedgesWon.reset();
+        ticketBatches.reset();
+        batchedTicketReads.reset();
+        callbacksReceived.reset();
+        callbacksDuplicate.reset();
+        callbacksRejected.reset();
+        callbackPushes.reset();
+        callbackEchoes.reset();
+        syncEchoes.reset();
+        ticketReadsSkipped.reset();
+        connectWiseKept.reset();
+        for (LatencyHistogram histogram : queueWaits)
+            histogram.reset();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.Map;
+
+/**
+ * JMX view of the adapter metrics, published by {@link AdapterMetrics}
+ */
+public interface AdapterMetricsMXBean {
+
+    /**
+     * @return number of ConnectWise calls by "METHOD endpoint", i.e. "GET ticket"
+     */
+    Map<String, Long> getCallCounts();
+
+    /**
+     * @return median ConnectWise call latency in milliseconds by "METHOD endpoint"
+     */
+    Map<String, Double> getCallLatencyP50Millis();
+
+    /**
+     * @return 99th percentile ConnectWise call latency in milliseconds by "METHOD endpoint"
+     */
+    Map<String, Double> getCallLatencyP99Millis();
+
+    /**
+     * @return 99.9th percentile ConnectWise call latency in milliseconds by "METHOD endpoint"
+     */
+    Map<String, Double> getCallLatencyP999Millis();
+
+    /**
+     * @return number of ConnectWise responses by HTTP status code
+     */
+    Map<String, Long> getResponsesByStatus();
+
+    /**
+     * @return number of ConnectWise calls that failed without a response
+     */
+    long getIoErrors();
+
+    /**
+     * @return number of ConnectWise calls answered with 429 Too Many Requests
+     */
+    long getThrottled();
+
+    /**
+     * @return number of retried syncs, hedged GETs aside
+     */
+    long getRetries();
+
+    /**
+     * @return number of syncs completed successfully
+     */
+    long getSyncsSucceeded();
+
+    /**
+     * @return number of syncs that failed
+     */
+    long getSyncsFailed();
+
+    /**
+     * @return number of ConnectWise tickets created by syncs
+     */
+    long getTicketsCreated();
+
+    /**
+     * @return number of times comment sync was left to the next sync because of the sync deadline
+     */
+    long getDeferred();
+
+    /**
+     * @return number of ConnectWise GETs sent a second time because the first request was slow
+     */
+    long getHedges();
+
+    /**
+     * @return number of hedged GETs answered first by the second request
+     */
+    long getHedgesWon();
+
+    /**
+     * @return number of ConnectWise calls that read several tickets at once
+     */
+    long getTicketBatches();
+
+    /**
+     * @return number of ticket reads served by those calls
+     */
+    long getBatchedTicketReads();
+
+    /**
+     * @return number of ConnectWise callback notifications received, duplicates included
+     */
+    long getCallbacksReceived();
+
+    /**
+     * @return number of callback notifications dropped as received already
+     */
+    long getCallbacksDuplicate();
+
+    /**
+     * @return number of callback notifications rejected for failing verification
+     */
+    long getCallbacksRejected();
+
+    /**
+     * @return number of tickets pushed to Symphony following callback notifications
+     */
+    long getCallbackPushes();
+
+    /**
+     * @return number of callback notifications, or changes gathered for a ticket, dropped as echoes of the adapter's
+     * own writes to ConnectWise
+     */
+    long getCallbackEchoes();
+
+    /**
+     * @return number of Symphony updates answered without ConnectWise calls as echoes of the ticket last exchanged
+     */
+    long getSyncEchoes();
+
+    /**
+     * @return number of syncs that wrote the ConnectWise ticket without reading it first
+     */
+    long getTicketReadsSkipped();
+
+    /**
+     * @return number of fields, descriptions and comments that kept their ConnectWise value over a stale or earlier
+     * Symphony value
+     */
+    long getConnectWiseKept();
+
+    /**
+     * @return number of tickets whose last sync failed, in whole or in part, waiting for a retry
+     */
+    long getDeadLetters();
+
+    /**
+     * @return time since the oldest dead letter first failed, in milliseconds
+     */
+    long getDeadLetterAgeMillis();
+
+    /**
+     * @return median sync latency in milliseconds
+     */
+    double getSyncLatencyP50Millis();
+
+    /**
+     * @return 99th percentile sync latency in milliseconds
+     */
+    double getSyncLatencyP99Millis();
+
+    /**
+     * @return number of syncs currently running
+     */
+    long getInFlightSyncs();
+
+    /**
+     * @return number of ConnectWise calls currently running
+     */
+    long getInFlightCalls();
+
+    /**
+     * @return number of calls waiting for a ConnectWise connection
+     */
+    long getQueueDepth();
+
+    /**
+     * @return 99th percentile wait for a ConnectWise connection in milliseconds by sync priority, i.e. "Critical"
+     */
+    Map<String, Double> getQueueWaitP99Millis();
+
+    /**
+     * Clears all counters and histograms, gauges are not affected
+     */
+    void reset();
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gradual admission of ConnectWise calls after the adapter starts.
+ *
+ * Right after a start Symphony delivers its open tickets again, all at once. Rather than letting them use every
+ * ConnectWise connection straight away, which ConnectWise answers by throttling, the connections usable grow
+ * linearly from one to all of them over the warm-up period.
+ */
+public final class AdmissionRamp {
+
+    /**
+     * Admission without ramp, every connection usable at once
+     */
+    public static final AdmissionRamp NONE = new AdmissionRamp(0, 0);
+
+    private final long startNanos;
+    private final long periodNanos;
+
+    private AdmissionRamp(long startNanos, long periodNanos) {
+        this.startNanos = startNanos;
+        this.periodNanos = periodNanos;
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} of the adapter start
+     * @param periodMillis warm-up period in milliseconds, 0 or less for none
+     * @return ramp from the start over the warm-up period
+     */
+    public static AdmissionRamp of(long startNanos, long periodMillis) {
+        return periodMillis > 0 ? new AdmissionRamp(startNanos, TimeUnit.MILLISECONDS.toNanos(periodMillis)) : NONE;
+    }
+
+    /**
+     * @param permits connections once warmed up
+     * @return connections usable now, at least one
+     */
+    public int permits(int permits) {
+        if (this == NONE)
+            return permits;
+        long elapsed = System.nanoTime() - startNanos;
+        if (elapsed >= periodNanos)
+            return permits;
+        return 1 + (int) ((permits - 1) * (double) Math.max(0, elapsed) / periodNanos);
+    }
+}
@@ -0,0 +1,521 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.avispl.symphony.api.tal.dto.TicketSourceConfigProperty;
+import com.avispl.symphony.api.tal.dto.TicketSystemConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable, versioned adapter configuration.
+ *
+ * A snapshot bundles everything derived from one {@link TicketSystemConfig}: the ticket source settings,
+ * the compiled mappings and the ConnectWise client. Each sync captures the current snapshot once and uses it
+ * until it completes, so a configuration update never mixes URLs, credentials or mappings within a sync.
+ * A superseded snapshot closes its client once the last sync using it is released.
+ */
+public final class ConfigSnapshot {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ConfigSnapshot.class);
+
+    /**
+     * Number of concurrent ConnectWise calls used when {@link ConnectWiseConfigProperty#MAX_CONNECTIONS}
+     * is not configured
+     */
+    private static final int DEFAULT_MAX_CONNECTIONS = 8;
+
+    /**
+     * Queued call wait in milliseconds after which lower priorities are served first when
+     * {@link ConnectWiseConfigProperty#PRIORITY_MAX_WAIT} is not configured
+     */
+    private static final long DEFAULT_PRIORITY_MAX_WAIT = 5000;
+
+    /**
+     * Time allowed to connect to ConnectWise when {@link ConnectWiseConfigProperty#CONNECT_TIMEOUT} is not configured
+     */
+    private static final long DEFAULT_CONNECT_TIMEOUT = 10_000;
+
+    /**
+     * Time allowed for a ConnectWise response when {@link ConnectWiseConfigProperty#REQUEST_TIMEOUT} is not
+     * configured
+     */
+    private static final long DEFAULT_REQUEST_TIMEOUT = 30_000;
+
+    /**
+     * Time allowed for a whole sync when {@link ConnectWiseConfigProperty#SYNC_DEADLINE} is not configured
+     */
+    private static final long DEFAULT_SYNC_DEADLINE = 120_000;
+
+    /**
+     * Time allowed for running syncs to complete when the adapter stops, when
+     * {@link ConnectWiseConfigProperty#DRAIN_TIMEOUT} is not configured
+     */
+    private static final long DEFAULT_DRAIN_TIMEOUT = 10_000;
+
+    /**
+     * Number of tickets whose last exchange is kept when {@link ConnectWiseConfigProperty#TICKET_STATE_CAPACITY} is
+     * not configured
+     */
+    private static final int DEFAULT_TICKET_STATE_CAPACITY = 10_000;
+
+    /**
+     * Note fingerprints kept per ticket whose last exchange is kept
+     */
+    private static final int NOTES_PER_TICKET = 10;
+
+    /**
+     * Ramp of the ConnectWise connections after the adapter starts when {@link ConnectWiseConfigProperty#WARMUP_PERIOD}
+     * is not configured
+     */
+    private static final long DEFAULT_WARMUP_PERIOD = 60_000;
+
+    /**
+     * Interval at which note fingerprints are saved when {@link ConnectWiseConfigProperty#STATE_SAVE_INTERVAL} is not
+     * configured
+     */
+    private static final long DEFAULT_STATE_SAVE_INTERVAL = 300_000;
+
+    /**
+     * Tickets read together when {@link ConnectWiseConfigProperty#TICKET_BATCH_SIZE} is not configured
+     */
+    private static final int DEFAULT_TICKET_BATCH_SIZE = 25;
+
+    /**
+     * Wait for other tickets to read together when {@link ConnectWiseConfigProperty#TICKET_BATCH_WAIT} is not
+     * configured
+     */
+    private static final long DEFAULT_TICKET_BATCH_WAIT = 5;
+
+    /**
+     * Time callbacks of a ticket are gathered when {@link ConnectWiseConfigProperty#CALLBACK_COALESCE} is not
+     * configured
+     */
+    private static final long DEFAULT_CALLBACK_COALESCE = 1_000;
+
+    /**
+     * Time a ConnectWise ticket read stands for ConnectWise when {@link ConnectWiseConfigProperty#KNOWN_TICKET_MAX_AGE}
+     * is not configured
+     */
+    private static final long DEFAULT_KNOWN_TICKET_MAX_AGE = 300_000;
+
+    /**
+     * Fraction of GETs that may be hedged when {@link ConnectWiseConfigProperty#HEDGE_BUDGET} is not configured
+     */
+    private static final double DEFAULT_HEDGE_BUDGET = 0.05;
+
+    /**
+     * Fraction of syncs traced when {@link ConnectWiseConfigProperty#TRACE_SAMPLE_RATE} is not configured
+     */
+    private static final double DEFAULT_TRACE_SAMPLE_RATE = 0.01;
+
+    private final long version;
+    private final TicketSystemConfig config;
+    private final Map<String, String> ticketSourceConfig;
+    private final MappingSnapshot mappings;
+    private final ConnectWiseClient client;
+    private final TicketBatchReader ticketReader;
+    private final double traceSampleRate;
+    private final long syncDeadlineMillis;
+    private final long drainTimeoutMillis;
+    private final int ticketStateCapacity;
+    private final long stateSaveIntervalMillis;
+    private final long callbackCoalesceMillis;
+    private final long knownTicketMaxAgeMillis;
+
+    /**
+     * Syncs currently using this snapshot
+     */
+    private final AtomicInteger users = new AtomicInteger();
+    private volatile boolean retired;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private ConfigSnapshot(long version, TicketSystemConfig config, Map<String, String> ticketSourceConfig,
+                           MappingSnapshot mappings, ConnectWiseClient client, TicketBatchReader ticketReader,
+                           double traceSampleRate,
+                           long syncDeadlineMillis, long drainTimeoutMillis, int ticketStateCapacity,
+                           long stateSaveIntervalMillis, long callbackCoalesceMillis, long knownTicketMaxAgeMillis) {
+        this.version = version;
+        this.config = config;
+        this.ticketSourceConfig = ticketSourceConfig;
+        this.mappings = mappings;
+        this.client = client;
+        this.ticketReader = ticketReader;
+        this.traceSampleRate = traceSampleRate;
+        this.syncDeadlineMillis = syncDeadlineMillis;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.ticketStateCapacity = ticketStateCapacity;
+        this.stateSaveIntervalMillis = stateSaveIntervalMillis;
+        this.callbackCoalesceMillis = callbackCoalesceMillis;
+        this.knownTicketMaxAgeMillis = knownTicketMaxAgeMillis;
+    }
+
+    /**
+     * Builds the snapshot of a configuration
+     * @param version version number of the snapshot
+     * @param config adapter configuration, may be null
+     * @param metrics metrics ConnectWise calls are recorded to
+     * @return new snapshot
+     */
+    public static ConfigSnapshot compile(long version, TicketSystemConfig config, AdapterMetrics metrics) {
+        return compile(version, config, metrics, System.nanoTime());
+    }
+
+    /**
+     * Builds the snapshot of a configuration
+     * @param version version number of the snapshot
+     * @param config adapter configuration, may be null
+     * @param metrics metrics ConnectWise calls are recorded to
+     * @param startedAt {@link System#nanoTime()} of the adapter start, the ConnectWise connections ramping up from it
+     * @return new snapshot
+     */
+    public static ConfigSnapshot compile(long version, TicketSystemConfig config, AdapterMetrics metrics,
+                                         long startedAt) {
+        Map<String, String> ticketSourceConfig = config != null && config.getTicketSourceConfig() != null ?
+                Collections.unmodifiableMap(new HashMap<>(config.getTicketSourceConfig())) : Collections.emptyMap();
+
+        int maxConnections = (int) Math.max(1, parse(ticketSourceConfig, ConnectWiseConfigProperty.MAX_CONNECTIONS,
+                DEFAULT_MAX_CONNECTIONS));
+        double traceSampleRate = parse(ticketSourceConfig, ConnectWiseConfigProperty.TRACE_SAMPLE_RATE,
+                DEFAULT_TRACE_SAMPLE_RATE);
+        long connectTimeout = (long) parse(ticketSourceConfig, ConnectWiseConfigProperty.CONNECT_TIMEOUT,
+                DEFAULT_CONNECT_TIMEOUT);
+        long requestTimeout = (long) parse(ticketSourceConfig, ConnectWiseConfigProperty.REQUEST_TIMEOUT,
+                DEFAULT_REQUEST_TIMEOUT);
+        long syncDeadline = (long) parse(ticketSourceConfig, ConnectWiseConfigProperty.SYNC_DEADLINE,
+                DEFAULT_SYNC_DEADLINE);
+        long drainTimeout = (long) parse(ticketSourceConfig, ConnectWiseConfigProperty.DRAIN_TIMEOUT,
+                DEFAULT_DRAIN_TIMEOUT);
+        int ticketStateCapacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 1280, parse(ticketSourceConfig,
+                ConnectWiseConfigProperty.TICKET_STATE_CAPACITY, DEFAULT_TICKET_STATE_CAPACITY)));
+        long stateSaveInterval = (long) parse(ticketSourceConfig, ConnectWiseConfigProperty.STATE_SAVE_INTERVAL,
+                DEFAULT_STATE_SAVE_INTERVAL);
+        long callbackCoalesce = (long) parse(ticketSourceConfig, ConnectWiseConfigProperty.CALLBACK_COALESCE,
+                DEFAULT_CALLBACK_COALESCE);
+        long knownTicketMaxAge = (long) parse(ticketSourceConfig, ConnectWiseConfigProperty.KNOWN_TICKET_MAX_AGE,
+                DEFAULT_KNOWN_TICKET_MAX_AGE);
+
+        String clientID = ticketSourceConfig.get(TicketSourceConfigProperty.LOGIN);
+        String authorization = ticketSourceConfig.get(TicketSourceConfigProperty.PASSWORD);
+        PriorityCallLimiter limiter = new PriorityCallLimiter(maxConnections, weights(ticketSourceConfig),
+                (long) parse(ticketSourceConfig, ConnectWiseConfigProperty.PRIORITY_MAX_WAIT,
+                        DEFAULT_PRIORITY_MAX_WAIT),
+                AdmissionRamp.of(startedAt, (long) parse(ticketSourceConfig, ConnectWiseConfigProperty.WARMUP_PERIOD,
+                        DEFAULT_WARMUP_PERIOD)));
+        ConnectWiseClient client = new ConnectWiseClient(clientID, authorization, limiter, metrics,
+                transport(version, ticketSourceConfig, clientID, authorization, duration(connectTimeout)),
+                duration(requestTimeout), hedging(ticketSourceConfig, metrics));
+        String url = ticketSourceConfig.get(TicketSourceConfigProperty.URL);
+        String apiPath = ticketSourceConfig.get(TicketSourceConfigProperty.API_PATH);
+        TicketBatchReader ticketReader = new TicketBatchReader(client, url != null && apiPath != null ?
+                url + apiPath : null,
+                (int) parse(ticketSourceConfig, ConnectWiseConfigProperty.TICKET_BATCH_SIZE, DEFAULT_TICKET_BATCH_SIZE),
+                (long) parse(ticketSourceConfig, ConnectWiseConfigProperty.TICKET_BATCH_WAIT,
+                        DEFAULT_TICKET_BATCH_WAIT), metrics);
+
+        return new ConfigSnapshot(version, config, ticketSourceConfig, MappingSnapshot.compile(config), client, ticketReader,
+                traceSampleRate, syncDeadline, drainTimeout, ticketStateCapacity, stateSaveInterval, callbackCoalesce,
+                knownTicketMaxAge);
+    }
+
+    /**
+     * Parses {@link ConnectWiseConfigProperty#PRIORITY_WEIGHTS}
+     * @param ticketSourceConfig ticket source configuration
+     * @return weight of each sync priority, indexed by {@link SyncPriority#ordinal()}
+     */
+    private static int[] weights(Map<String, String> ticketSourceConfig) {
+        int[] weights = SyncPriority.defaultWeights();
+        String configured = ticketSourceConfig.get(ConnectWiseConfigProperty.PRIORITY_WEIGHTS);
+        if (configured == null)
+            return weights;
+
+        for (String entry : configured.split(",")) {
+            String[] parts = entry.split("=");
+            SyncPriority priority = parts.length == 2 ? SyncPriority.find(parts[0]) : null;
+            try {
+                if (priority == null)
+                    throw new NumberFormatException("unknown priority");
+                weights[priority.ordinal()] = Math.max(1, Integer.parseInt(parts[1].trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("compile: invalid {} entry {} - ignored", ConnectWiseConfigProperty.PRIORITY_WEIGHTS,
+                        entry);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Builds the hedging policy of a configuration
+     * @param ticketSourceConfig ticket source configuration
+     * @param metrics metrics the latencies of ConnectWise calls are read from
+     * @return hedging policy, null if {@link ConnectWiseConfigProperty#HEDGE_PERCENTILE} does not enable hedging
+     */
+    private static HedgePolicy hedging(Map<String, String> ticketSourceConfig, AdapterMetrics metrics) {
+        double percentile = parse(ticketSourceConfig, ConnectWiseConfigProperty.HEDGE_PERCENTILE, 0);
+        if (percentile <= 0)
+            return null;
+        if (percentile >= 100) {
+            logger.warn("compile: invalid {} value {} - hedging disabled", ConnectWiseConfigProperty.HEDGE_PERCENTILE,
+                    percentile);
+            return null;
+        }
+        return new HedgePolicy(percentile,
+                parse(ticketSourceConfig, ConnectWiseConfigProperty.HEDGE_BUDGET, DEFAULT_HEDGE_BUDGET), metrics);
+    }
+
+    /**
+     * Builds the transport of a configuration: replayed from recordings, recorded, or plain HTTP
+     * @param version version number of the snapshot
+     * @param ticketSourceConfig ticket source configuration
+     * @param clientID ConnectWise client ID, masked out of recordings
+     * @param authorization ConnectWise authorization header, masked out of recordings
+     * @param connectTimeout time allowed to connect to ConnectWise, null for none
+     * @return transport of the ConnectWise client
+     */
+    private static ConnectWiseTransport transport(long version, Map<String, String> ticketSourceConfig,
+                                                  String clientID, String authorization, Duration connectTimeout) {
+        String replayFrom = ticketSourceConfig.get(ConnectWiseConfigProperty.REPLAY_FROM);
+        if (replayFrom != null && !replayFrom.trim().isEmpty()) {
+            boolean originalTiming = "original".equalsIgnoreCase(
+                    ticketSourceConfig.get(ConnectWiseConfigProperty.REPLAY_TIMING));
+            try {
+                return ReplayTransport.load(Paths.get(replayFrom.trim()), originalTiming);
+            } catch (IOException | InvalidPathException e) {
+                // Never fall back to the network when a replay is configured
+                logger.error("compile: unable to load recordings from {} - {}", replayFrom, e.getMessage());
+                return ReplayTransport.empty();
+            }
+        }
+
+        ConnectWiseTransport transport = new HttpTransport(connectTimeout);
+        String recordTo = ticketSourceConfig.get(ConnectWiseConfigProperty.RECORD_TO);
+        if (recordTo == null || recordTo.trim().isEmpty())
+            return transport;
+
+        String name = "connectwise-" + System.currentTimeMillis() + "-v" + version;
+        try {
+            return new RecordingTransport(transport, Paths.get(recordTo.trim()), name, clientID, authorization);
+        } catch (IOException | InvalidPathException e) {
+            logger.error("compile: unable to record to {} - not recording: {}", recordTo, e.getMessage());
+            return transport;
+        }
+    }
+
+    /**
+     * @param millis configured time in milliseconds, 0 or less for none
+     * @return the time, null if none
+     */
+    private static Duration duration(long millis) {
+        return millis > 0 ? Duration.ofMillis(millis) : null;
+    }
+
+    /**
+     * Parses a numeric ticket source configuration value
+     * @param ticketSourceConfig ticket source configuration
+     * @param key configuration key
+     * @param defaultValue value used if the key is not set or invalid
+     * @return configured value
+     */
+    private static double parse(Map<String, String> ticketSourceConfig, String key, double defaultValue) {
+        String configured = ticketSourceConfig.get(key);
+        if (configured == null)
+            return defaultValue;
+
+        try {
+            return Double.parseDouble(configured.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("compile: invalid {} value {} - using {}", key, configured, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return version number of this snapshot, increasing with every configuration update
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return configuration this snapshot was built from, may be null
+     */
+    public TicketSystemConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @param key ticket source configuration key, i.e. {@link TicketSourceConfigProperty#URL}
+     * @return configured value, null if not set
+     */
+    public String get(String key) {
+        return ticketSourceConfig.get(key);
+    }
+
+    /**
+     * @return ConnectWise URL, i.e. "https://connect.myCompany.com.au"
+     */
+    public String getUrl() {
+        return ticketSourceConfig.get(TicketSourceConfigProperty.URL);
+    }
+
+    /**
+     * @return tickets API path, i.e. "/v4_6_release/apis/3.0/service/tickets"
+     */
+    public String getApiPath() {
+        return ticketSourceConfig.get(TicketSourceConfigProperty.API_PATH);
+    }
+
+    /**
+     * @return ConnectWise API root URL, null if URL or API_PATH are not configured
+     */
+    public String getApiRoot() {
+        return ReferenceDataResolver.apiRoot(getUrl(), getApiPath());
+    }
+
+    /**
+     * @return compiled mappings
+     */
+    public MappingSnapshot getMappings() {
+        return mappings;
+    }
+
+    /**
+     * @return fraction of syncs traced
+     */
+    public double getTraceSampleRate() {
+        return traceSampleRate;
+    }
+
+    /**
+     * @return time allowed for a whole sync in milliseconds, 0 or less for no deadline
+     */
+    public long getSyncDeadlineMillis() {
+        return syncDeadlineMillis;
+    }
+
+    /**
+     * @return time allowed for running syncs to complete when the adapter stops, in milliseconds
+     */
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    /**
+     * @return number of tickets whose last exchange with Symphony is kept
+     */
+    public int getTicketStateCapacity() {
+        return ticketStateCapacity;
+    }
+
+    /**
+     * @return number of notes whose fingerprints are kept, {@value #NOTES_PER_TICKET} per ticket whose last exchange
+     * is kept
+     */
+    public int getNoteFingerprintCapacity() {
+        return ticketStateCapacity * NOTES_PER_TICKET;
+    }
+
+    /**
+     * @return interval at which note fingerprints are saved, in milliseconds, 0 or less for only when the adapter stops
+     */
+    public long getStateSaveIntervalMillis() {
+        return stateSaveIntervalMillis;
+    }
+
+    /**
+     * @return time callbacks of a ticket are gathered before its changes are fetched, in milliseconds
+     */
+    public long getCallbackCoalesceMillis() {
+        return callbackCoalesceMillis;
+    }
+
+    /**
+     * @return time a ConnectWise ticket read stands for ConnectWise while no change of it is notified, in
+     * milliseconds, 0 or less to read tickets on every sync
+     */
+    public long getKnownTicketMaxAgeMillis() {
+        return knownTicketMaxAgeMillis;
+    }
+
+    /**
+     * @return local port callbacks are received on, -1 for the port of the callback URL
+     */
+    public int getCallbackPort() {
+        return (int) parse(ticketSourceConfig, ConnectWiseConfigProperty.CALLBACK_PORT, -1);
+    }
+
+    /**
+     * @return reader of ConnectWise tickets by ID of this configuration version
+     */
+    public TicketBatchReader getTicketReader() {
+        return ticketReader;
+    }
+
+    /**
+     * @return ConnectWise client of this configuration version
+     */
+    public ConnectWiseClient getClient() {
+        return client;
+    }
+
+    /**
+     * Checks whether another snapshot targets the same ConnectWise instance with the same credentials
+     * @param other other snapshot, may be null
+     * @return true if cached ConnectWise data remains valid under the other snapshot
+     */
+    public boolean sameEndpoint(ConfigSnapshot other) {
+        return other != null && Objects.equals(getApiRoot(), other.getApiRoot()) &&
+                Objects.equals(get(TicketSourceConfigProperty.LOGIN), other.get(TicketSourceConfigProperty.LOGIN)) &&
+                Objects.equals(get(TicketSourceConfigProperty.PASSWORD), other.get(TicketSourceConfigProperty.PASSWORD));
+    }
+
+    /**
+     * Registers a sync using this snapshot
+     * @return this snapshot
+     */
+    public ConfigSnapshot acquire() {
+        users.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Unregisters a sync, closing the client if this snapshot has been superseded and was its last user
+     */
+    public void release() {
+        if (users.decrementAndGet() == 0 && retired)
+            closeClient();
+    }
+
+    /**
+     * Marks this snapshot as superseded, its client is closed as soon as no sync uses it anymore
+     */
+    public void retire() {
+        retired = true;
+        if (users.get() == 0)
+            closeClient();
+    }
+
+    private void closeClient() {
+        if (!closed.compareAndSet(false, true))
+            return;
+
+        logger.debug("closeClient: closing ConnectWise client of configuration version {}", version);
+        client.close();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.avispl.symphony.api.tal.dto.Comment;
+import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.avispl.symphony.api.tal.dto.UpdateSource;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deterministic resolution of the ticket fields, description and comments on which Symphony and ConnectWise disagree
+ * during a sync.
+ *
+ * The values of the last exchange tell which side changed since: the value of a side still holding its last exchanged
+ * value gives way to the other side's. When both sides changed, the later change wins, comparing the Symphony last
+ * modified time of the ticket or comment with the ConnectWise {@code _info.lastUpdated} of the ticket or note. A
+ * Symphony field value older than the ConnectWise change the last exchange took over, i.e. an update Symphony made
+ * before it got the push of that change, gives way too. Symphony wins ties, unknown times and values never exchanged,
+ * as it always did before.
+ */
+public class ConflictResolver {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ConflictResolver.class);
+
+    /**
+     * Resolver without a last exchange, Symphony always winning
+     */
+    public static final ConflictResolver NONE = new ConflictResolver(null, null, null);
+
+    private final SyncedTickets.Synced last;
+    private final TalTicket received;
+    private final NoteFingerprints fingerprints;
+    private final long symphonyModified;
+
+    /**
+     * Texts of the comments last exchanged by ConnectWise note ID, built on the first comment resolved
+     */
+    private Map<String, String> lastComments;
+
+    /**
+     * @param last ticket as last exchanged, null if unknown
+     * @param received ticket as received from Symphony, before its values are mapped to ConnectWise
+     * @param fingerprints fingerprints of the notes written, null to compare note texts once normalized only
+     */
+    public ConflictResolver(SyncedTickets.Synced last, TalTicket received, NoteFingerprints fingerprints) {
+        this.last = last;
+        this.fingerprints = fingerprints;
+        // The values are read before the mapping to ConnectWise changes the received ticket
+        this.received = received != null ? new TalTicket() : null;
+        if (received != null) {
+            this.received.setSubject(received.getSubject());
+            this.received.setPriority(received.getPriority());
+            this.received.setStatus(received.getStatus());
+            this.received.setAssignedTo(received.getAssignedTo());
+        }
+        symphonyModified = received != null && received.getLastModified() != null ? received.getLastModified() : 0;
+    }
+
+    /**
+     * @param field ConnectWise field, one of {@link SyncedTickets#FIELDS}
+     * @param CWTicket ConnectWise ticket, with a value different from the Symphony value
+     * @return side whose value the field takes
+     */
+    public UpdateSource resolveField(String field, JSONObject CWTicket) {
+        if (last == null)
+            return UpdateSource.SYMPHONY;
+
+        SyncedTickets.Origin origin = last.getOrigins().get(field);
+        if (origin == null)
+            return UpdateSource.SYMPHONY;
+        boolean symphonyChanged = received == null ||
+                !Objects.equals(value(received, field), value(last.getTicket(), field));
+        boolean connectWiseChanged = origin.getConnectWiseDigest() !=
+                ConnectWiseKeys.digest(SyncedTickets.connectWiseValue(CWTicket, field));
+        if (!connectWiseChanged && origin.getSource() == UpdateSource.THIRD_PARTY && symphonyModified > 0 &&
+                origin.getModified() > symphonyModified)
+            return UpdateSource.THIRD_PARTY;
+        return resolve(symphonyChanged, connectWiseChanged, symphonyModified, lastUpdated(CWTicket));
+    }
+
+    /**
+     * @param description Symphony description
+     * @param note ConnectWise description note, with a text different from the Symphony description
+     * @return side whose text the description takes
+     */
+    public UpdateSource resolveDescription(String description, JSONObject note) {
+        if (last == null || last.getTicket().getDescription() == null)
+            return UpdateSource.SYMPHONY;
+
+        String lastText = last.getTicket().getDescription();
+        return resolve(!Objects.equals(description, lastText), !sameText(note, lastText), symphonyModified,
+                lastUpdated(note));
+    }
+
+    /**
+     * @param comment Symphony comment
+     * @param note ConnectWise note of the comment, with a text different from the comment text
+     * @return side whose text the comment takes
+     */
+    public UpdateSource resolveComment(Comment comment, JSONObject note) {
+        if (last == null)
+            return UpdateSource.SYMPHONY;
+        if (lastComments == null) {
+            lastComments = new HashMap<>();
+            for (Comment lastComment : last.getTicket().getComments()) {
+                if (lastComment.getThirdPartyId() != null)
+                    lastComments.put(lastComment.getThirdPartyId(), lastComment.getText());
+            }
+        }
+        String lastText = lastComments.get(comment.getThirdPartyId());
+        if (lastText == null)
+            return UpdateSource.SYMPHONY;
+
+        return resolve(!Objects.equals(comment.getText(), lastText), !sameText(note, lastText),
+                comment.getLastModified() != null ? comment.getLastModified() : 0, lastUpdated(note));
+    }
+
+    /**
+     * @param entity ConnectWise ticket or note
+     * @return {@code _info.lastUpdated} of the entity in epoch milliseconds, 0 if missing or invalid
+     */
+    static long lastUpdated(JSONObject entity) {
+        JSONObject info = entity != null ? entity.optJSONObject("_info") : null;
+        String lastUpdated = info != null ? info.optString("lastUpdated", null) : null;
+        if (lastUpdated == null)
+            return 0;
+        try {
+            return Instant.parse(lastUpdated).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            logger.debug("lastUpdated: invalid lastUpdated {} - {}", lastUpdated, e.getMessage());
+            return 0;
+        }
+    }
+
+    private static UpdateSource resolve(boolean symphonyChanged, boolean connectWiseChanged, long symphonyModified,
+                                        long connectWiseModified) {
+        if (!connectWiseChanged)
+            return UpdateSource.SYMPHONY;
+        if (!symphonyChanged)
+            return UpdateSource.THIRD_PARTY;
+        return symphonyModified > 0 && connectWiseModified > symphonyModified ? UpdateSource.THIRD_PARTY :
+                UpdateSource.SYMPHONY;
+    }
+
+    /**
+     * @return true if the note still holds the text last exchanged, ConnectWise rewrites aside
+     */
+    private boolean sameText(JSONObject note, String lastText) {
+        String text = note.optString("text", null);
+        return fingerprints != null ? fingerprints.unchanged(note.optInt("id") + "", lastText, text) :
+                NoteFingerprints.of(lastText) == NoteFingerprints.of(text);
+    }
+
+    /**
+     * @return Symphony value of the ticket field of a ConnectWise field
+     */
+    private static String value(TalTicket ticket, String field) {
+        if ("summary".equals(field))
+            return ticket.getSubject();
+        if ("priority".equals(field))
+            return ticket.getPriority();
+        if ("status".equals(field))
+            return ticket.getStatus();
+        return ticket.getAssignedTo();
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
+import org.json.JSONObject;
+
+/**
+ * Performs a call to the ConnectWise API
+ */
+@FunctionalInterface
+public interface ConnectWiseApi {
+
+    /**
+     * Performs an HTTP request call to ConnectWise API
+     * @param url the HTTP request URI
+     * @param method the HTTP method (i.e. GET)
+     * @param requestBody the HTTP request's body
+     * @return JSON object with the HTTP request response, JSON arrays are wrapped under the "JSONArray" key
+     * @throws TalAdapterSyncException if request fails
+     */
+    JSONObject call(String url, String method, String requestBody) throws TalAdapterSyncException;
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of one ConnectWise API call
+ */
+@Name("com.insightsystems.symphony.tal.ConnectWiseCall")
+@Label("ConnectWise Call")
+@Category({"Symphony TAL", "ConnectWise"})
+@Description("HTTP call made to the ConnectWise API")
+@StackTrace(false)
+class ConnectWiseCallEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Endpoint")
+    @Description("Endpoint class: ticket, notes, create or other")
+    String endpoint;
+
+    @Label("Path")
+    @Description("Request path, without host and query")
+    String path;
+
+    @Label("Status Code")
+    @Description("HTTP status code, 0 if no response was received")
+    int statusCode;
+
+    @Label("Bytes Out")
+    @DataAmount
+    long bytesOut;
+
+    @Label("Bytes In")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Error")
+    String error;
+}
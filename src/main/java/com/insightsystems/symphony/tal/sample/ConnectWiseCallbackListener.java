@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded HTTP receiver of ConnectWise callback notifications for tickets and notes.
+ *
+ * ConnectWise posts a notification to the registered URL on every change of a ticket or of one of its notes. The
+ * URL registered carries a token drawn at random on each start, and notifications without it are rejected, so that
+ * only ConnectWise, which was given the URL, is listened to. Notifications ConnectWise sends again are recognized by
+ * their message ID and dropped, as are notifications of changes the adapter made itself, recognized by the member
+ * ConnectWise reports. Changes to a ticket are gathered for the coalescing time from the first notification, then
+ * handed over once, so that a burst of edits costs one fetch.
+ *
+ * The listener speaks plain HTTP; TLS, if used in the callback URL, is terminated by a proxy in front of it.
+ */
+public class ConnectWiseCallbackListener {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ConnectWiseCallbackListener.class);
+
+    /**
+     * Query parameter of the registered URL carrying the token
+     */
+    static final String TOKEN_PARAMETER = "token";
+
+    /**
+     * Number of recent message IDs remembered to drop duplicates
+     */
+    private static final int RECENT_MESSAGES = 10_000;
+
+    /**
+     * Largest notification body read, in bytes
+     */
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    /**
+     * Change flag of ticket fields
+     */
+    private static final int FIELDS = 1;
+
+    /**
+     * Change flag of ticket notes
+     */
+    private static final int NOTES = 2;
+
+    /**
+     * Receiver of the coalesced changes of a ticket
+     */
+    public interface ChangeHandler {
+        /**
+         * Called on the listener thread as soon as a change is notified, before it is gathered with others
+         * @param ticketId ConnectWise ticket ID
+         */
+        void notified(long ticketId);
+
+        /**
+         * Called on the listener thread, which must not be blocked
+         * @param ticketId ConnectWise ticket ID
+         * @param fields true if the ticket itself changed
+         * @param notes true if notes of the ticket changed
+         */
+        void changed(long ticketId, boolean fields, boolean notes);
+    }
+
+    private final URI callbackUrl;
+    private final int port;
+    private final LongSupplier coalesceMillis;
+    private final Predicate<String> ownMember;
+    private final ChangeHandler handler;
+    private final AdapterMetrics metrics;
+    private final String token;
+
+    /**
+     * Change flags of the tickets whose notifications are being gathered
+     */
+    private final Map<Long, Integer> pending = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> recentMessages = Collections.synchronizedMap(
+            new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > RECENT_MESSAGES;
+                }
+            });
+
+    private HttpServer server;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param callbackUrl URL ConnectWise posts to, its path being the path listened on
+     * @param port local port listened on
+     * @param coalesceMillis time notifications of a ticket are gathered, in milliseconds
+     * @param ownMember tests whether the member of a notification is the member the adapter writes as
+     * @param handler receiver of the changes
+     * @param metrics metrics notifications are recorded to
+     */
+    public ConnectWiseCallbackListener(URI callbackUrl, int port, LongSupplier coalesceMillis,
+                                       Predicate<String> ownMember, ChangeHandler handler, AdapterMetrics metrics) {
+        this.callbackUrl = callbackUrl;
+        this.port = port;
+        this.coalesceMillis = coalesceMillis;
+        this.ownMember = ownMember;
+        this.handler = handler;
+        this.metrics = metrics;
+
+        byte[] random = new byte[24];
+        new SecureRandom().nextBytes(random);
+        this.token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+    }
+
+    /**
+     * Starts listening on all interfaces
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cw-callbacks");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+        String path = callbackUrl.getRawPath();
+        server.createContext(path == null || path.isEmpty() ? "/" : path, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("start: listening for ConnectWise callbacks on port {}", server.getAddress().getPort());
+    }
+
+    /**
+     * Stops listening, dropping the changes still being gathered
+     */
+    public synchronized void stop() {
+        if (server != null)
+            server.stop(0);
+        if (executor != null)
+            executor.shutdownNow();
+        pending.clear();
+    }
+
+    /**
+     * @return URL to register with ConnectWise, the callback URL with the token of this listener
+     */
+    public String getRegisteredUrl() {
+        String url = callbackUrl.toString();
+        return url + (callbackUrl.getRawQuery() == null ? "?" : "&") + TOKEN_PARAMETER + "=" + token;
+    }
+
+    /**
+     * @return port listened on, -1 if not started
+     */
+    public synchronized int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405);
+                return;
+            }
+            if (!verify(exchange.getRequestURI().getRawQuery())) {
+                logger.warn("handle: callback from {} rejected - invalid token", exchange.getRemoteAddress());
+                metrics.callbackRejected();
+                respond(exchange, 401);
+                return;
+            }
+
+            JSONObject notification;
+            try (InputStream in = exchange.getRequestBody()) {
+                notification = new JSONObject(new String(in.readNBytes(MAX_BODY_BYTES), StandardCharsets.UTF_8));
+            } catch (JSONException e) {
+                logger.warn("handle: invalid callback body - {}", e.getMessage());
+                respond(exchange, 400);
+                return;
+            }
+            respond(exchange, 200);
+            receive(notification);
+        } catch (RuntimeException e) {
+            logger.error("handle: unable to handle callback - {}", e.toString());
+            if (exchange.getResponseCode() < 0)
+                respond(exchange, 500);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Records the change a notification reports, gathering it with the other changes of its ticket
+     */
+    private void receive(JSONObject notification) {
+        String messageId = notification.optString("MessageId", null);
+        boolean duplicate = messageId != null && recentMessages.put(messageId, Boolean.TRUE) != null;
+        metrics.callbackReceived(duplicate);
+        if (duplicate) {
+            logger.debug("receive: callback {} received already - dropped", messageId);
+            return;
+        }
+
+        String type = notification.optString("Type", "");
+        String action = notification.optString("Action", "");
+        long ticketId;
+        int change;
+        if ("ticket".equalsIgnoreCase(type)) {
+            ticketId = notification.optLong("ID", -1);
+            change = FIELDS;
+        } else if ("note".equalsIgnoreCase(type)) {
+            ticketId = entity(notification).optLong("ticketId", -1);
+            change = NOTES;
+        } else {
+            logger.debug("receive: {} callback ignored", type);
+            return;
+        }
+        if (ticketId <= 0 || "deleted".equalsIgnoreCase(action)) {
+            logger.debug("receive: {} {} callback of ticket {} ignored", type, action, ticketId);
+            return;
+        }
+        if (ownMember.test(notification.optString("MemberId", null))) {
+            logger.debug("receive: {} {} callback of ticket {} made by the adapter - dropped", type, action,
+                    ticketId);
+            metrics.callbackEcho();
+            return;
+        }
+        handler.notified(ticketId);
+
+        boolean[] first = new boolean[1];
+        pending.compute(ticketId, (id, flags) -> {
+            first[0] = flags == null;
+            return flags == null ? change : flags | change;
+        });
+        if (first[0]) {
+            try {
+                executor.schedule(() -> fire(ticketId), Math.max(0, coalesceMillis.getAsLong()),
+                        TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                pending.remove(ticketId);
+            }
+        }
+    }
+
+    /**
+     * Hands the changes gathered for a ticket over
+     */
+    private void fire(long ticketId) {
+        Integer flags = pending.remove(ticketId);
+        if (flags == null)
+            return;
+        try {
+            handler.changed(ticketId, (flags & FIELDS) != 0, (flags & NOTES) != 0);
+        } catch (RuntimeException e) {
+            logger.error("fire: unable to handle changes of ticket {} - {}", ticketId, e.toString());
+        }
+    }
+
+    /**
+     * @return entity of a notification, sent by ConnectWise as a JSON string; empty if missing or invalid
+     */
+    private static JSONObject entity(JSONObject notification) {
+        Object entity = notification.opt("Entity");
+        if (entity instanceof JSONObject)
+            return (JSONObject) entity;
+        if (entity instanceof String) {
+            try {
+                return new JSONObject((String) entity);
+            } catch (JSONException e) {
+                logger.debug("entity: invalid callback entity - {}", e.getMessage());
+            }
+        }
+        return new JSONObject();
+    }
+
+    /**
+     * @param query raw query of the request, may be null
+     * @return true if the query carries the token of this listener
+     */
+    private boolean verify(String query) {
+        if (query == null)
+            return false;
+        String expected = TOKEN_PARAMETER + "=" + token;
+        for (String parameter : query.split("&")) {
+            if (MessageDigest.isEqual(parameter.getBytes(StandardCharsets.UTF_8),
+                    expected.getBytes(StandardCharsets.UTF_8)))
+                return true;
+        }
+        return false;
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+}
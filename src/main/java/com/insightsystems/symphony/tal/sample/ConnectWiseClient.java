@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+
+/**
+ * ConnectWise API client bound to one configuration version.
+ *
+ * Holds the transport (and so the connection pool) and the limiter of concurrent calls built for that configuration,
+ * which serves waiting calls by the priority of their sync. A new client is built on every configuration update, the
+ * previous one is closed once the syncs still using it are done.
+ *
+ * With a {@link HedgePolicy}, GETs still unanswered after the latency percentile of their endpoint are sent a
+ * second time on a free connection, the first response being used.
+ */
+public class ConnectWiseClient implements ConnectWiseApi {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ConnectWiseClient.class);
+
+    private final String clientID;
+    private final String authorization;
+    private final ConnectWiseTransport transport;
+    private final PriorityCallLimiter limiter;
+    private final AdapterMetrics metrics;
+    private final Duration requestTimeout;
+    private final HedgePolicy hedging;
+    private final ExecutorService hedgeExecutor;
+
+    /**
+     * @param clientID ConnectWise client ID, may be null if not configured
+     * @param authorization ConnectWise authorization header, may be null if not configured
+     * @param maxConnections maximum number of concurrent calls
+     * @param metrics metrics calls are recorded to
+     */
+    public ConnectWiseClient(String clientID, String authorization, int maxConnections, AdapterMetrics metrics) {
+        this(clientID, authorization, new PriorityCallLimiter(maxConnections, SyncPriority.defaultWeights(), 0),
+                metrics, new HttpTransport(), null);
+    }
+
+    /**
+     * @param clientID ConnectWise client ID, may be null if not configured
+     * @param authorization ConnectWise authorization header, may be null if not configured
+     * @param limiter limiter of concurrent calls
+     * @param metrics metrics calls are recorded to
+     * @param transport transport requests are sent through
+     * @param requestTimeout time allowed for a response to each request, null for none
+     */
+    public ConnectWiseClient(String clientID, String authorization, PriorityCallLimiter limiter,
+                             AdapterMetrics metrics, ConnectWiseTransport transport, Duration requestTimeout) {
+        this(clientID, authorization, limiter, metrics, transport, requestTimeout, null);
+    }
+
+    /**
+     * @param clientID ConnectWise client ID, may be null if not configured
+     * @param authorization ConnectWise authorization header, may be null if not configured
+     * @param limiter limiter of concurrent calls
+     * @param metrics metrics calls are recorded to
+     * @param transport transport requests are sent through
+     * @param requestTimeout time allowed for a response to each request, null for none
+     * @param hedging policy of hedged GETs, null to never hedge
+     */
+    public ConnectWiseClient(String clientID, String authorization, PriorityCallLimiter limiter,
+                             AdapterMetrics metrics, ConnectWiseTransport transport, Duration requestTimeout,
+                             HedgePolicy hedging) {
+        this.clientID = clientID;
+        this.authorization = authorization;
+        this.transport = transport;
+        this.limiter = limiter;
+        this.metrics = metrics;
+        this.requestTimeout = requestTimeout;
+        this.hedging = hedging;
+        this.hedgeExecutor = hedging != null ? SyncExecutors.newHedgeExecutor() : null;
+    }
+
+    /**
+     * @return number of threads waiting for a ConnectWise connection
+     */
+    public int getQueueLength() {
+        return limiter.getQueueLength();
+    }
+
+    /**
+     * Performs an HTTP request call to ConnectWise API using the credentials of this client
+     * @param url the HTTP request URI
+     * @param method the HTTP method (i.e. GET)
+     * @param requestBody the HTTP request's body
+     * @return JSON object with the HTTP request response
+     * @throws TalAdapterSyncException if request fails
+     */
+    @Override
+    public JSONObject call(String url, String method, String requestBody) throws TalAdapterSyncException {
+        return call(url, method, requestBody, SyncTrace.NOOP, SyncPriority.DEFAULT, Deadline.NONE);
+    }
+
+    /**
+     * Performs an HTTP request call to ConnectWise API using the credentials of this client
+     * @param url the HTTP request URI
+     * @param method the HTTP method (i.e. GET)
+     * @param requestBody the HTTP request's body
+     * @param trace trace the call is recorded to
+     * @param priority priority class of the call, ordering it among the calls waiting for a connection
+     * @param deadline deadline of the sync making the call, bounding both the wait for a connection and the request
+     * @return JSON object with the HTTP request response, null if the response has no content
+     * @throws TalAdapterSyncException if request fails, with {@link HttpStatus#GATEWAY_TIMEOUT} if it timed out
+     */
+    public JSONObject call(String url, String method, String requestBody, SyncTrace trace, SyncPriority priority,
+                           Deadline deadline) throws TalAdapterSyncException {
+        // Optional: Formalize input error checking on ConnectWiseAPICall
+
+        if (clientID == null || authorization == null) {
+            logger.error("ConnectWiseAPICall: Unable to retrieve client ID and/or authorization from configuration");
+            throw new TalAdapterSyncException("Error retrieving client ID and/or authorization",
+                    HttpStatus.UNAUTHORIZED);
+        }
+
+        if (url == null) {
+            logger.error("ConnectWiseAPICall: URL cannot be null");
+            throw new TalAdapterSyncException("URL for API call cannot be null", HttpStatus.BAD_REQUEST);
+        }
+
+        HttpRequest request = null;
+
+        try {
+            if (requestBody != null) {
+                request = newRequest(url, deadline)
+                        .method(method, HttpRequest.BodyPublishers.ofString(requestBody))
+                        .build();
+            } else if (Objects.equals(method, "GET")) {
+                request = newRequest(url, deadline)
+                        .build();
+            } else {
+                request = newRequest(url, deadline)
+                        .method(method, HttpRequest.BodyPublishers.noBody())
+                        .build();
+            }
+        } catch (Exception e) {
+            logger.error("ConnectWiseAPICall: {}", e.getMessage());
+            throw new TalAdapterSyncException(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+
+        // Response
+        ConnectWiseTransport.Response response = null;
+        AdapterMetrics.Endpoint endpoint = AdapterMetrics.Endpoint.of(method, url);
+        logger.debug("ConnectWiseAPICall: Getting response");
+        try {
+            long waited = limiter.acquire(priority, deadline.remainingNanos());
+            if (waited < 0) {
+                logger.warn("ConnectWiseAPICall: no ConnectWise connection free before the sync deadline - {} {}",
+                        method, endpoint.getLabel());
+                throw Deadline.exceeded(method + " " + endpoint.getLabel());
+            }
+            metrics.queueWaited(priority, waited);
+            metrics.callStarted();
+            ConnectWiseCallEvent event = new ConnectWiseCallEvent();
+            event.begin();
+            long start = System.nanoTime();
+            try {
+                response = hedging != null && "GET".equals(method) && requestBody == null ?
+                        sendHedged(request, endpoint) : transport.send(request, requestBody);
+                long nanos = System.nanoTime() - start;
+                metrics.callCompleted(method, endpoint, response.getStatusCode(), nanos);
+                if (trace.isEnabled()) {
+                    trace.call(method, endpoint, response.getStatusCode(), utf8Length(requestBody),
+                            utf8Length(response.getBody()), nanos);
+                }
+                commit(event, request, endpoint, response.getStatusCode(), requestBody, response.getBody(), null);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                long nanos = System.nanoTime() - start;
+                metrics.callFailed(method, endpoint, nanos);
+                if (trace.isEnabled())
+                    trace.call(method, endpoint, 0, utf8Length(requestBody), 0, nanos);
+                commit(event, request, endpoint, 0, requestBody, null, e.toString());
+                throw e;
+            } finally {
+                limiter.release();
+            }
+        } catch (HttpTimeoutException e) {
+            logger.error("ConnectWiseAPICall: {} call timed out - {}", method, e.getMessage());
+            throw new TalAdapterSyncException(e + " - HTTP request timeout", HttpStatus.GATEWAY_TIMEOUT);
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            throw new TalAdapterSyncException(e + " - HTTP request error");
+        }
+
+        if (response != null && response.getStatusCode() == 204) {
+            logger.debug("ConnectWiseAPICall: {} call successful - no content", method);
+            return null;
+        } else if (response != null && (response.getStatusCode() == 200 || response.getStatusCode() == 201)) {
+            logger.debug("ConnectWiseAPICall: {} call successful - HTTP Code: {}", method, response.getStatusCode());
+        } else {
+            logger.error("ConnectWiseAPICall: {} call unsuccessful - HTTP Code: {}", method,
+                    response != null ? response.getStatusCode() : "not specified");
+            throw new TalAdapterSyncException(method + " Request error",
+                    response != null ? HttpStatus.valueOf(response.getStatusCode()) : null);
+        }
+
+        JSONObject jsonObject = parse(response.getBody());
+        if (jsonObject == null)
+            logger.error("ConnectWiseAPICall: API call object: {}", request);
+        return jsonObject;
+    }
+
+    /**
+     * Sends a GET, sending it again on a free connection if it is still unanswered after the hedging delay
+     * @param request GET request
+     * @param endpoint endpoint class of the request
+     * @return first response received
+     * @throws IOException if neither request got a response
+     * @throws InterruptedException if interrupted while waiting for a response
+     */
+    private ConnectWiseTransport.Response sendHedged(HttpRequest request, AdapterMetrics.Endpoint endpoint)
+            throws IOException, InterruptedException {
+        long delay = hedging.delayNanos(endpoint);
+        if (delay < 0)
+            return transport.send(request, null);
+
+        CompletionService<ConnectWiseTransport.Response> attempts = new ExecutorCompletionService<>(hedgeExecutor);
+        Future<ConnectWiseTransport.Response> first = attempts.submit(() -> transport.send(request, null));
+        Future<ConnectWiseTransport.Response> hedge = null;
+        try {
+            Future<ConnectWiseTransport.Response> done = attempts.poll(delay, TimeUnit.NANOSECONDS);
+            if (done == null && limiter.tryAcquire()) {
+                if (hedging.tryHedge()) {
+                    logger.debug("ConnectWiseAPICall: no response after {}ms - hedging GET {}",
+                            TimeUnit.NANOSECONDS.toMillis(delay), endpoint.getLabel());
+                    RetryEvent.emit("GET " + request.uri().getPath(), 2,
+                            "hedged after " + TimeUnit.NANOSECONDS.toMillis(delay) + "ms");
+                    hedge = attempts.submit(() -> transport.send(request, null));
+                } else {
+                    limiter.release();
+                }
+            }
+            if (done == null)
+                done = attempts.take();
+
+            if (hedge == null)
+                return result(done);
+            try {
+                ConnectWiseTransport.Response response = result(done);
+                metrics.hedged(done == hedge);
+                return response;
+            } catch (IOException e) {
+                // The other request may still succeed
+                logger.debug("ConnectWiseAPICall: hedged GET attempt failed - {}", e.getMessage());
+                done = attempts.take();
+                ConnectWiseTransport.Response response = result(done);
+                metrics.hedged(done == hedge);
+                return response;
+            }
+        } finally {
+            first.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+                limiter.release();
+            }
+        }
+    }
+
+    /**
+     * @return response of a completed request
+     */
+    private static ConnectWiseTransport.Response result(Future<ConnectWiseTransport.Response> attempt)
+            throws IOException, InterruptedException {
+        try {
+            return attempt.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return builder of a request with the credentials of this client and its timeout cut to the deadline
+     */
+    private HttpRequest.Builder newRequest(String url, Deadline deadline) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Content-Type", "application/json")
+                .header("clientID", clientID)
+                .header("Authorization", authorization);
+        Duration timeout = deadline.cap(requestTimeout);
+        if (timeout != null)
+            builder.timeout(timeout);
+        return builder;
+    }
+
+    /**
+     * Decodes a ConnectWise response body
+     * @param body response body
+     * @return JSON object of the body, arrays are put in a JSON object under "JSONArray"; null if the body is not JSON
+     */
+    static JSONObject parse(String body) {
+        JSONObject jsonObject;
+        try {
+            jsonObject = new JSONObject(body);
+        } catch (JSONException e) {
+            try {
+                // It is possible that the response is a JSON array, so it is put in a JSON object under JSONArray
+                jsonObject = new JSONObject("{ \"JSONArray\" : " + body + "}");
+            } catch (JSONException e2) {
+                // If it is also not an Array: give up and report error
+                logger.error("ConnectWiseAPICall: error parsing content to JSON - {}", e2.toString());
+                return null;
+            }
+        }
+        return jsonObject;
+    }
+
+    /**
+     * Commits the flight recorder event of a call, if the event is enabled
+     */
+    private static void commit(ConnectWiseCallEvent event, HttpRequest request, AdapterMetrics.Endpoint endpoint,
+                               int statusCode, String requestBody, String responseBody, String error) {
+        event.end();
+        if (!event.shouldCommit())
+            return;
+
+        event.method = request.method();
+        event.endpoint = endpoint.getLabel();
+        event.path = request.uri().getPath();
+        event.statusCode = statusCode;
+        event.bytesOut = utf8Length(requestBody);
+        event.bytesIn = utf8Length(responseBody);
+        event.error = error;
+        event.commit();
+    }
+
+    private static long utf8Length(String value) {
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Releases the transport of this client
+     */
+    public void close() {
+        if (hedgeExecutor != null)
+            hedgeExecutor.shutdownNow();
+        transport.close();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import com.avispl.symphony.api.tal.dto.TicketSourceConfigProperty;
+
+/**
+ * ConnectWise specific keys of the ticket source configuration, complementing {@link TicketSourceConfigProperty}
+ */
+public interface ConnectWiseConfigProperty {
+    /**
+     * Service board new tickets are created on, either its name or its numeric ID
+     */
+    String BOARD = "board";
+    /**
+     * Company new tickets are created for, either its identifier, its name or its numeric ID
+     */
+    String COMPANY = "company";
+    /**
+     * Maximum number of concurrent calls to ConnectWise
+     */
+    String MAX_CONNECTIONS = "maxConnections";
+    /**
+     * Fraction of syncs traced, between 0 and 1
+     */
+    String TRACE_SAMPLE_RATE = "traceSampleRate";
+    /**
+     * Directory the ConnectWise traffic is recorded to, one file per configuration version; not recorded if unset
+     */
+    String RECORD_TO = "recordTo";
+    /**
+     * Recording file, or directory of recordings, ConnectWise responses are served from instead of the network
+     */
+    String REPLAY_FROM = "replayFrom";
+    /**
+     * Timing of replayed responses: "none" to serve them at once (default), "original" to serve them after their
+     * recorded call duration
+     */
+    String REPLAY_TIMING = "replayTiming";
+    /**
+     * Shares of the ConnectWise connections by sync priority when calls are queued, i.e.
+     * "Critical=8,Major=4,Minor=2,Informational=1"; unlisted priorities keep their default weight
+     */
+    String PRIORITY_WEIGHTS = "priorityWeights";
+    /**
+     * Wait in milliseconds after which a queued ConnectWise call is served before any other priority, 0 to disable
+     */
+    String PRIORITY_MAX_WAIT = "priorityMaxWait";
+    /**
+     * Time allowed to establish a ConnectWise connection in milliseconds, 0 for no timeout
+     */
+    String CONNECT_TIMEOUT = "connectTimeout";
+    /**
+     * Time allowed for the response to each ConnectWise request in milliseconds, 0 for no timeout
+     */
+    String REQUEST_TIMEOUT = "requestTimeout";
+    /**
+     * Time allowed for a whole sync in milliseconds, 0 for no deadline. Calls are cut to the time left, and comment
+     * sync is deferred to the next update of the ticket when too little is left for it
+     */
+    String SYNC_DEADLINE = "syncDeadline";
+    /**
+     * Latency percentile of an endpoint's GETs, i.e. 95, after which a GET still unanswered is sent again, the first
+     * response being used; 0 disables hedging (default)
+     */
+    String HEDGE_PERCENTILE = "hedgePercentile";
+    /**
+     * Maximum fraction of GETs that may be sent again by hedging, between 0 and 1 (default 0.05)
+     */
+    String HEDGE_BUDGET = "hedgeBudget";
+    /**
+     * Maximum number of tickets read with one ConnectWise call when syncs read tickets at the same time (default 25),
+     * 1 to read every ticket on its own
+     */
+    String TICKET_BATCH_SIZE = "ticketBatchSize";
+    /**
+     * Time in milliseconds a sync waits for other syncs to read their ticket in the same call (default 5)
+     */
+    String TICKET_BATCH_WAIT = "ticketBatchWait";
+    /**
+     * Time in milliseconds the adapter waits on stop for running syncs to complete (default 10000), 0 to stop them at
+     * once
+     */
+    String DRAIN_TIMEOUT = "drainTimeout";
+    /**
+     * Directory the syncs still unfinished when the adapter stops are checkpointed to, and resumed from on the next
+     * start; the note fingerprints and the dead letters are kept there as well. None of them survives a restart if
+     * unset
+     */
+    String CHECKPOINT_DIR = "checkpointDir";
+    /**
+     * Number of tickets whose last exchange with Symphony is kept on-heap for echo suppression and conflict
+     * resolution (default 10000); the fingerprints of ten times as many notes are kept off-heap, 32 bytes per note at
+     * most 75% full
+     */
+    String TICKET_STATE_CAPACITY = "ticketStateCapacity";
+    /**
+     * Interval in milliseconds at which the note fingerprints are saved to the checkpoint directory (default 300000),
+     * 0 to save them only when the adapter stops; read when the adapter starts
+     */
+    String STATE_SAVE_INTERVAL = "stateSaveInterval";
+    /**
+     * Time in milliseconds over which the ConnectWise connections usable grow from one to all of them after the
+     * adapter starts (default 60000), 0 to use them all at once
+     */
+    String WARMUP_PERIOD = "warmupPeriod";
+    /**
+     * URL ConnectWise posts ticket and note callbacks to, i.e. "https://symphony-tal.myCompany.com:8443/cw-callback";
+     * callbacks are not received if unset. Read when the adapter starts
+     */
+    String CALLBACK_URL = "callbackUrl";
+    /**
+     * Local port callbacks are received on, when a proxy forwards them from the port of the callback URL (default
+     * the port of the callback URL); read when the adapter starts
+     */
+    String CALLBACK_PORT = "callbackPort";
+    /**
+     * Time in milliseconds callbacks of a ticket are gathered before its changes are fetched and pushed to Symphony
+     * (default 1000)
+     */
+    String CALLBACK_COALESCE = "callbackCoalesce";
+    /**
+     * Time in milliseconds a ConnectWise ticket read by a sync stands for ConnectWise while callbacks notify no change
+     * of it (default 300000), 0 to read tickets on every sync
+     */
+    String KNOWN_TICKET_MAX_AGE = "knownTicketMaxAge";
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+/**
+ * Numeric keys of ConnectWise content: IDs of tickets and notes, and 64-bit digests of values, so that what was
+ * exchanged is remembered without keeping the values themselves.
+ */
+final class ConnectWiseKeys {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ConnectWiseKeys() {
+    }
+
+    /**
+     * Parses a ConnectWise ID, i.e. a Symphony third party ID or a note ID
+     * @param id ConnectWise ticket or note ID as a string, may be null
+     * @return ConnectWise ID, -1 if not a valid ID
+     */
+    static long id(String id) {
+        if (id == null)
+            return -1;
+        try {
+            long parsed = Long.parseLong(id.trim());
+            return parsed > 0 ? parsed : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Digests values in order, null values included
+     * @param values values to digest
+     * @return 64-bit FNV-1a digest of the values
+     */
+    static long digest(CharSequence... values) {
+        long hash = FNV_OFFSET;
+        for (CharSequence value : values) {
+            if (value == null) {
+                hash = (hash ^ 0xff) * FNV_PRIME;
+                continue;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+                hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+            }
+            // Separator, so that ("ab", "c") and ("a", "bc") differ
+            hash = (hash ^ 0xfe) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
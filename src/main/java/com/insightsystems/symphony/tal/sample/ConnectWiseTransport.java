@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+
+/**
+ * Carries ConnectWise requests built by {@link ConnectWiseClient}: over HTTP ({@link HttpTransport}), recorded to
+ * disk ({@link RecordingTransport}) or served from a recording ({@link ReplayTransport}).
+ */
+public interface ConnectWiseTransport {
+
+    /**
+     * Sends a request
+     * @param request request with its URI, method and headers
+     * @param requestBody body of the request, null if none
+     * @return response
+     * @throws IOException if no response is received
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    Response send(HttpRequest request, String requestBody) throws IOException, InterruptedException;
+
+    /**
+     * Releases the resources of this transport
+     */
+    default void close() {
+    }
+
+    /**
+     * ConnectWise response
+     */
+    final class Response {
+        private final int statusCode;
+        private final String body;
+
+        public Response(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+}
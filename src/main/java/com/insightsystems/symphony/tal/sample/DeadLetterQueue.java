@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Tickets whose sync failed, in whole or in part, kept until a sync of the ticket succeeds.
+ *
+ * A failed sync, or a sync whose note PATCHes and POSTs did not all go through, is recorded with the ticket as
+ * received, the reason and HTTP status of the failure. Since a sync compares the whole ticket, resyncing the ticket
+ * redoes exactly the work that was lost; letters are handed out for retry on an exponential backoff, and dropped
+ * when a sync of their ticket succeeds, whoever started it. There is at most one letter per Symphony ticket, the
+ * newest version of the ticket being kept.
+ *
+ * Once opened on a file, the queue is written to it on every change, replaced atomically, so that letters survive a
+ * restart.
+ */
+public class DeadLetterQueue {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterQueue.class);
+
+    /**
+     * Extension of dead letter files, named after the account of the adapter
+     */
+    static final String EXTENSION = ".dead-letters.json";
+
+    /**
+     * Maximum number of letters kept, the oldest being dropped beyond it
+     */
+    static final int CAPACITY = 10_000;
+
+    /**
+     * Wait before the first retry of a letter, doubled on each retry, in milliseconds
+     */
+    private static final long INITIAL_BACKOFF = 60_000;
+
+    /**
+     * Maximum wait between retries of a letter, in milliseconds
+     */
+    private static final long MAX_BACKOFF = 3_600_000;
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Failed sync of a ticket
+     */
+    public static class DeadLetter {
+        private TalTicket ticket;
+        private String operation;
+        private String reason;
+        private Integer httpStatus;
+        private int failures;
+        private int attempts;
+        private long firstFailedAt;
+        private long lastFailedAt;
+        private long nextAttemptAt;
+
+        /**
+         * @return ticket as received, with the ConnectWise ID and link set by the failed sync
+         */
+        public TalTicket getTicket() {
+            return ticket;
+        }
+
+        public void setTicket(TalTicket ticket) {
+            this.ticket = ticket;
+        }
+
+        /**
+         * @return operation that failed last, i.e. "sync" or "note POST"
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        public void setOperation(String operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * @return message of the last failure
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        public void setReason(String reason) {
+            this.reason = reason;
+        }
+
+        /**
+         * @return HTTP status of the last failure, null if not specified
+         */
+        public Integer getHttpStatus() {
+            return httpStatus;
+        }
+
+        public void setHttpStatus(Integer httpStatus) {
+            this.httpStatus = httpStatus;
+        }
+
+        /**
+         * @return number of failed syncs of the ticket since it was recorded
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        public void setFailures(int failures) {
+            this.failures = failures;
+        }
+
+        /**
+         * @return number of retries handed out
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public void setAttempts(int attempts) {
+            this.attempts = attempts;
+        }
+
+        /**
+         * @return time of the first failure, in epoch milliseconds
+         */
+        public long getFirstFailedAt() {
+            return firstFailedAt;
+        }
+
+        public void setFirstFailedAt(long firstFailedAt) {
+            this.firstFailedAt = firstFailedAt;
+        }
+
+        /**
+         * @return time of the last failure, in epoch milliseconds
+         */
+        public long getLastFailedAt() {
+            return lastFailedAt;
+        }
+
+        public void setLastFailedAt(long lastFailedAt) {
+            this.lastFailedAt = lastFailedAt;
+        }
+
+        /**
+         * @return time from which the letter is retried, in epoch milliseconds
+         */
+        public long getNextAttemptAt() {
+            return nextAttemptAt;
+        }
+
+        public void setNextAttemptAt(long nextAttemptAt) {
+            this.nextAttemptAt = nextAttemptAt;
+        }
+    }
+
+    /**
+     * Letters by Symphony ticket ID, oldest first
+     */
+    private final Map<String, DeadLetter> letters = new LinkedHashMap<>();
+    private Path file;
+
+    /**
+     * @param directory directory the queue is kept in
+     * @param accountId account of the adapter
+     * @return dead letter file of the account
+     */
+    public static Path file(Path directory, String accountId) {
+        return directory.resolve(accountId + EXTENSION);
+    }
+
+    /**
+     * Reads the letters kept in a file and keeps the queue in it from now on. Letters recorded already are newer and
+     * replace those read.
+     * @param file dead letter file, created if it does not exist
+     * @return number of letters read
+     * @throws IOException if the file cannot be read or written
+     */
+    public synchronized int open(Path file) throws IOException {
+        int read = 0;
+        if (Files.exists(file)) {
+            DeadLetter[] saved = mapper.readValue(file.toFile(), DeadLetter[].class);
+            Map<String, DeadLetter> merged = new LinkedHashMap<>();
+            for (DeadLetter letter : saved) {
+                if (letter.getTicket() != null && letter.getTicket().getSymphonyId() != null) {
+                    merged.put(letter.getTicket().getSymphonyId(), letter);
+                    read++;
+                }
+            }
+            merged.putAll(letters);
+            letters.clear();
+            letters.putAll(merged);
+            trim();
+        }
+        this.file = file;
+        persist();
+        return read;
+    }
+
+    /**
+     * Records a failure, rescheduling nothing if the ticket already has a letter
+     * @param ticket ticket as received, with the ConnectWise ID and link set by the failed sync
+     * @param operation operation that failed, i.e. "sync" or "note POST"
+     * @param reason message of the failure
+     * @param status HTTP status of the failure, may be null
+     */
+    public synchronized void add(TalTicket ticket, String operation, String reason, HttpStatus status) {
+        String symphonyId = ticket.getSymphonyId();
+        if (symphonyId == null) {
+            logger.warn("add: ticket without Symphony ID - {} failure not recorded", operation);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        DeadLetter letter = letters.get(symphonyId);
+        if (letter == null) {
+            letter = new DeadLetter();
+            letter.setFirstFailedAt(now);
+            letter.setNextAttemptAt(now + backoff(0));
+            letters.put(symphonyId, letter);
+            trim();
+        }
+        // A letter being retried holds an older version of the ticket than a sync Symphony started since
+        if (letter.getTicket() == null || !isOlder(ticket, letter.getTicket()))
+            letter.setTicket(ticket);
+        letter.setOperation(operation);
+        letter.setReason(reason);
+        letter.setHttpStatus(status != null ? status.value() : null);
+        letter.setFailures(letter.getFailures() + 1);
+        letter.setLastFailedAt(now);
+        persist();
+    }
+
+    /**
+     * Drops the letter of a ticket synced successfully
+     * @param symphonyId Symphony ticket ID, may be null
+     * @return true if the ticket had a letter
+     */
+    public synchronized boolean remove(String symphonyId) {
+        if (symphonyId == null || letters.remove(symphonyId) == null)
+            return false;
+        persist();
+        return true;
+    }
+
+    /**
+     * Hands out the letters due for retry, oldest first, and schedules their next retry. Each letter handed out is
+     * recorded as a {@link RetryEvent}
+     * @param max maximum number of letters handed out
+     * @return copies of the tickets of the letters handed out, to sync
+     */
+    public synchronized List<TalTicket> takeDue(int max) {
+        long now = System.currentTimeMillis();
+        List<TalTicket> due = new ArrayList<>();
+        for (DeadLetter letter : letters.values()) {
+            if (due.size() >= max)
+                break;
+            if (letter.getNextAttemptAt() > now)
+                continue;
+            letter.setAttempts(letter.getAttempts() + 1);
+            letter.setNextAttemptAt(now + backoff(letter.getAttempts()));
+            due.add(SyncCheckpoint.copy(letter.getTicket()));
+            // the failed sync was the first attempt
+            RetryEvent.emit("sync " + letter.getTicket().getSymphonyId(), letter.getAttempts() + 1,
+                    letter.getReason());
+        }
+        if (!due.isEmpty())
+            persist();
+        return due;
+    }
+
+    /**
+     * @return number of letters
+     */
+    public synchronized int size() {
+        return letters.size();
+    }
+
+    /**
+     * @return time since the first failure of the oldest letter in milliseconds, 0 if there is none
+     */
+    public synchronized long getOldestAgeMillis() {
+        long oldest = Long.MAX_VALUE;
+        for (DeadLetter letter : letters.values())
+            oldest = Math.min(oldest, letter.getFirstFailedAt());
+        return oldest == Long.MAX_VALUE ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    /**
+     * @param attempts retries handed out so far
+     * @return wait before the next retry in milliseconds, with up to 20% jitter so that letters recorded together
+     * spread out
+     */
+    private static long backoff(int attempts) {
+        long wait = INITIAL_BACKOFF << Math.min(attempts, 16);
+        wait = Math.min(wait, MAX_BACKOFF);
+        return wait - ThreadLocalRandom.current().nextLong(wait / 5 + 1);
+    }
+
+    private static boolean isOlder(TalTicket ticket, TalTicket other) {
+        return ticket.getLastModified() != null && other.getLastModified() != null &&
+                ticket.getLastModified() < other.getLastModified();
+    }
+
+    /**
+     * Drops the oldest letters beyond {@link #CAPACITY}, must hold the lock
+     */
+    private void trim() {
+        Iterator<DeadLetter> iterator = letters.values().iterator();
+        while (letters.size() > CAPACITY && iterator.hasNext()) {
+            DeadLetter dropped = iterator.next();
+            iterator.remove();
+            logger.warn("trim: dead letter queue full - dropping ticket {} failed since {}",
+                    dropped.getTicket().getSymphonyId(), dropped.getFirstFailedAt());
+        }
+    }
+
+    /**
+     * Writes the letters to the file of the queue, if opened, replacing it atomically; must hold the lock
+     */
+    private void persist() {
+        if (file == null)
+            return;
+
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            mapper.writeValue(temporary.toFile(), letters.values());
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The letters are still kept and retried, only not durably until the next successful write
+            logger.error("persist: unable to write {} - {}", file, e.getMessage());
+        }
+    }
+}
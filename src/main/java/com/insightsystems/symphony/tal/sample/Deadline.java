@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Point in time by which a sync must complete.
+ *
+ * A sync gets one deadline when it starts and passes it to every ConnectWise call it makes: waits for a connection
+ * and request timeouts are cut to the time remaining, and optional stages are skipped once too little is left.
+ */
+public final class Deadline {
+
+    /**
+     * Deadline that never expires
+     */
+    public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    /**
+     * {@link System#nanoTime()} of the deadline, {@link Long#MAX_VALUE} if none
+     */
+    private final long nanoTime;
+
+    private Deadline(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @param millis time allowed from now, 0 or less for no deadline
+     * @return deadline expiring after the time allowed
+     */
+    public static Deadline after(long millis) {
+        return millis > 0 ? new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis)) : NONE;
+    }
+
+    /**
+     * @return time remaining in nanoseconds, 0 once expired, {@link Long#MAX_VALUE} if no deadline
+     */
+    public long remainingNanos() {
+        if (this == NONE)
+            return Long.MAX_VALUE;
+        return Math.max(0, nanoTime - System.nanoTime());
+    }
+
+    /**
+     * @return time remaining in milliseconds, 0 once expired, {@link Long#MAX_VALUE} if no deadline
+     */
+    public long remainingMillis() {
+        long remaining = remainingNanos();
+        return remaining == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.NANOSECONDS.toMillis(remaining);
+    }
+
+    /**
+     * @return true once the deadline has passed
+     */
+    public boolean isExpired() {
+        return remainingNanos() == 0;
+    }
+
+    /**
+     * @param millis time a stage needs
+     * @return true if at least that time remains
+     */
+    public boolean hasRemaining(long millis) {
+        return remainingMillis() >= millis;
+    }
+
+    /**
+     * @param timeout timeout of a request, may be null for none
+     * @return the timeout cut to the time remaining, null if neither is set
+     */
+    public Duration cap(Duration timeout) {
+        if (this == NONE)
+            return timeout;
+        Duration remaining = Duration.ofNanos(Math.max(1, remainingNanos()));
+        return timeout == null || remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+
+    /**
+     * @param stage what is about to be done, for the error message
+     * @throws TalAdapterSyncException with {@link HttpStatus#GATEWAY_TIMEOUT} if the deadline has passed
+     */
+    public void check(String stage) throws TalAdapterSyncException {
+        if (isExpired())
+            throw exceeded(stage);
+    }
+
+    /**
+     * @param stage what could not be done, for the error message
+     * @return error of a sync that ran out of time
+     */
+    public static TalAdapterSyncException exceeded(String stage) {
+        return new TalAdapterSyncException("Sync deadline exceeded before " + stage, HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+    /**
+     * @param e error of a sync or call
+     * @return true if the error is a timeout, either of a request or of the sync deadline
+     */
+    public static boolean isTimeout(TalAdapterSyncException e) {
+        return e.getHttpStatus() == HttpStatus.GATEWAY_TIMEOUT;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a ConnectWise GET is hedged, that is sent a second time while the first request is still unanswered.
+ *
+ * The delay before hedging adapts to ConnectWise: it is a percentile of the latency recorded for the endpoint class
+ * of the GET, so only the slow tail of the calls is hedged. Extra load is capped by a budget: every GET earns a
+ * fraction of a hedge, and a hedge can only be sent once a whole one has been earned.
+ */
+public class HedgePolicy {
+
+    /**
+     * Calls recorded for an endpoint before its GETs are hedged, below which the latency percentile is meaningless
+     */
+    private static final long MIN_SAMPLES = 50;
+
+    /**
+     * Shortest delay before hedging, in milliseconds
+     */
+    private static final long MIN_DELAY_MILLIS = 10;
+
+    /**
+     * Hedges that can be saved up while ConnectWise is fast, and so sent in a burst once it slows down
+     */
+    private static final long MAX_SAVED_HEDGES = 10;
+
+    /**
+     * Budget unit: one hedge is worth this many credits
+     */
+    private static final long HEDGE_CREDITS = 1000;
+
+    private final double percentile;
+    private final long creditsPerCall;
+    private final AdapterMetrics metrics;
+    private final AtomicLong credits = new AtomicLong();
+
+    /**
+     * @param percentile latency percentile after which a GET is hedged, i.e. 95
+     * @param budget maximum fraction of GETs hedged, between 0 and 1
+     * @param metrics metrics the latencies of ConnectWise calls are read from
+     */
+    public HedgePolicy(double percentile, double budget, AdapterMetrics metrics) {
+        this.percentile = percentile;
+        this.creditsPerCall = Math.round(Math.max(0, Math.min(1, budget)) * HEDGE_CREDITS);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Credits the budget with one GET and computes when it should be hedged
+     * @param endpoint endpoint class of the GET
+     * @return delay in nanoseconds after which the GET is hedged, -1 if it is not hedged
+     */
+    public long delayNanos(AdapterMetrics.Endpoint endpoint) {
+        credits.accumulateAndGet(creditsPerCall, (current, added) ->
+                Math.min(current + added, MAX_SAVED_HEDGES * HEDGE_CREDITS));
+
+        LatencyHistogram latencies = metrics.getCallLatency("GET", endpoint);
+        if (latencies.getCount() < MIN_SAMPLES)
+            return -1;
+
+        long millis = Math.max(MIN_DELAY_MILLIS, (long) latencies.getPercentileMillis(percentile));
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Takes one hedge from the budget
+     * @return true if the budget allows a hedge
+     */
+    public boolean tryHedge() {
+        long current;
+        do {
+            current = credits.get();
+            if (current < HEDGE_CREDITS)
+                return false;
+        } while (!credits.compareAndSet(current, current - HEDGE_CREDITS));
+        return true;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends ConnectWise requests over HTTP. Holds the HTTP client, and so the connection pool, of one configuration
+ * version.
+ */
+public class HttpTransport implements ConnectWiseTransport {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+
+    private final HttpClient httpClient;
+
+    /**
+     * Transport without connect timeout
+     */
+    public HttpTransport() {
+        this(null);
+    }
+
+    /**
+     * @param connectTimeout time allowed to establish a connection, null for none
+     */
+    public HttpTransport(Duration connectTimeout) {
+        HttpClient.Builder builder = HttpClient.newBuilder();
+        if (connectTimeout != null)
+            builder.connectTimeout(connectTimeout);
+        this.httpClient = builder.build();
+    }
+
+    @Override
+    public Response send(HttpRequest request, String requestBody) throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return new Response(response.statusCode(), response.body());
+    }
+
+    /**
+     * Releases the connection pool
+     */
+    @Override
+    public void close() {
+        // HttpClient is only closeable from Java 21, before that its resources are released once unreachable
+        if (httpClient instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) httpClient).close();
+            } catch (Exception e) {
+                logger.debug("close: unable to close HTTP client - {}", e.getMessage());
+            }
+        }
+    }
+}
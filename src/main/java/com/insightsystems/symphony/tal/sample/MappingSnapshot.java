@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.avispl.symphony.api.tal.dto.TicketSystemConfig;
+import com.avispl.symphony.api.tal.dto.UserIdMapping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable, compiled view of the status, priority and user mappings of a {@link TicketSystemConfig}.
+ *
+ * A snapshot is compiled once whenever the adapter configuration changes and is then shared, read-only, by every
+ * ticket sync. It holds forward (Symphony to ConnectWise) and reverse (ConnectWise to Symphony) tables for each
+ * mapping. Reverse entries missing from the configuration are derived from the forward table, and entries that
+ * do not round-trip are reported when the snapshot is compiled.
+ */
+public final class MappingSnapshot {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MappingSnapshot.class);
+
+    /**
+     * Snapshot used when no configuration is available: every value maps to itself
+     */
+    public static final MappingSnapshot EMPTY = new MappingSnapshot(Collections.emptyMap(), Collections.emptyMap(),
+            Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+    private final Map<String, String> statusForThirdParty;
+    private final Map<String, String> statusForSymphony;
+    private final Map<String, String> priorityForThirdParty;
+    private final Map<String, String> priorityForSymphony;
+    private final Map<String, String> userForThirdParty;
+    private final Map<String, String> userForSymphony;
+
+    private MappingSnapshot(Map<String, String> statusForThirdParty, Map<String, String> statusForSymphony,
+                            Map<String, String> priorityForThirdParty, Map<String, String> priorityForSymphony,
+                            Map<String, String> userForThirdParty, Map<String, String> userForSymphony) {
+        this.statusForThirdParty = statusForThirdParty;
+        this.statusForSymphony = statusForSymphony;
+        this.priorityForThirdParty = priorityForThirdParty;
+        this.priorityForSymphony = priorityForSymphony;
+        this.userForThirdParty = userForThirdParty;
+        this.userForSymphony = userForSymphony;
+    }
+
+    /**
+     * Compiles the mappings of an adapter configuration into an immutable snapshot
+     * @param config adapter configuration, may be null
+     * @return compiled snapshot, {@link #EMPTY} if config is null
+     */
+    public static MappingSnapshot compile(TicketSystemConfig config) {
+        if (config == null)
+            return EMPTY;
+
+        Map<String, String> statusForThirdParty = copyOf(config.getStatusMappingForThirdParty());
+        Map<String, String> priorityForThirdParty = copyOf(config.getPriorityMappingForThirdParty());
+
+        Map<String, String> userForThirdParty = new HashMap<>();
+        if (config.getUserMappingForThirdParty() != null) {
+            for (Map.Entry<String, UserIdMapping> entry : config.getUserMappingForThirdParty().entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null || entry.getValue().getThirdPartyId() == null)
+                    continue;
+                userForThirdParty.put(entry.getKey().intern(), entry.getValue().getThirdPartyId().intern());
+            }
+        }
+
+        return new MappingSnapshot(
+                Collections.unmodifiableMap(statusForThirdParty),
+                reverseOf("status", statusForThirdParty, config.getStatusMappingForSymphony()),
+                Collections.unmodifiableMap(priorityForThirdParty),
+                reverseOf("priority", priorityForThirdParty, config.getPriorityMappingForSymphony()),
+                Collections.unmodifiableMap(userForThirdParty),
+                reverseOf("user", userForThirdParty, config.getUserMappingForSymphony()));
+    }
+
+    /**
+     * Copies a configuration map, interning keys and values and dropping null entries
+     * @param source configuration map, may be null
+     * @return mutable copy of the map
+     */
+    private static Map<String, String> copyOf(Map<String, String> source) {
+        Map<String, String> copy = new HashMap<>();
+        if (source == null)
+            return copy;
+
+        for (Map.Entry<String, String> entry : source.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null)
+                copy.put(entry.getKey().intern(), entry.getValue().intern());
+        }
+        return copy;
+    }
+
+    /**
+     * Builds the reverse (ConnectWise to Symphony) table of a mapping and validates it against the forward table.
+     * Forward entries with no reverse counterpart are added to the reverse table, forward entries whose reverse
+     * maps to a value that does not map back are logged as inconsistent.
+     * @param name mapping name used for logging
+     * @param forward compiled forward table
+     * @param configured reverse table as found on the configuration, may be null
+     * @return immutable reverse table
+     */
+    private static Map<String, String> reverseOf(String name, Map<String, String> forward, Map<String, String> configured) {
+        Map<String, String> reverse = copyOf(configured);
+        int derived = 0;
+        int inconsistent = 0;
+
+        for (Map.Entry<String, String> entry : forward.entrySet()) {
+            String symphonyValue = reverse.get(entry.getValue());
+
+            if (symphonyValue == null) {
+                reverse.put(entry.getValue(), entry.getKey());
+                derived++;
+            } else if (!Objects.equals(forward.get(symphonyValue), entry.getValue())) {
+                logger.warn("compile: {} mapping {} -> {} maps back to {}", name,
+                        entry.getKey(), entry.getValue(), symphonyValue);
+                inconsistent++;
+            }
+        }
+
+        if (derived > 0)
+            logger.info("compile: derived {} reverse {} mapping(s) from forward mapping", derived, name);
+        if (inconsistent > 0)
+            logger.warn("compile: {} mapping has {} inconsistent reverse mapping(s)", name, inconsistent);
+
+        return Collections.unmodifiableMap(reverse);
+    }
+
+    /**
+     * @param status Symphony status
+     * @return mapped ConnectWise status, null if not mapped
+     */
+    public String statusForThirdParty(String status) {
+        return status == null ? null : statusForThirdParty.get(status);
+    }
+
+    /**
+     * @param status ConnectWise status
+     * @return mapped Symphony status, null if not mapped
+     */
+    public String statusForSymphony(String status) {
+        return status == null ? null : statusForSymphony.get(status);
+    }
+
+    /**
+     * @param priority Symphony priority
+     * @return mapped ConnectWise priority, null if not mapped
+     */
+    public String priorityForThirdParty(String priority) {
+        return priority == null ? null : priorityForThirdParty.get(priority);
+    }
+
+    /**
+     * @param priority ConnectWise priority
+     * @return mapped Symphony priority, null if not mapped
+     */
+    public String priorityForSymphony(String priority) {
+        return priority == null ? null : priorityForSymphony.get(priority);
+    }
+
+    /**
+     * @param user Symphony user identifier
+     * @return mapped ConnectWise member identifier, null if not mapped
+     */
+    public String userForThirdParty(String user) {
+        return user == null ? null : userForThirdParty.get(user);
+    }
+
+    /**
+     * @param user ConnectWise member identifier
+     * @return mapped Symphony user identifier, null if not mapped
+     */
+    public String userForSymphony(String user) {
+        return user == null ? null : userForSymphony.get(user);
+    }
+}
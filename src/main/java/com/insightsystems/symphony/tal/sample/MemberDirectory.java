@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local directory of ConnectWise members, used to resolve Symphony users (emails) to member identifiers
+ * and back without API calls.
+ *
+ * Members are bulk-loaded page by page in background on first use, then kept up to date with incremental
+ * refreshes that only fetch members updated since the last load.
+ */
+public class MemberDirectory {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MemberDirectory.class);
+
+    /**
+     * Page size used when loading members
+     */
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * Fields projection of the members endpoint
+     */
+    private static final String FIELDS = "id,identifier,primaryEmail,inactiveFlag,_info/lastUpdated";
+
+    /**
+     * ConnectWise member entry
+     */
+    private static final class Member {
+        private final String identifier;
+        private final String email;
+        private final boolean inactive;
+
+        private Member(String identifier, String email, boolean inactive) {
+            this.identifier = identifier;
+            this.email = email;
+            this.inactive = inactive;
+        }
+    }
+
+    private final ConnectWiseApi api;
+    private final Supplier<String> apiRoot;
+    private final long refreshMillis;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile ScheduledExecutorService executor;
+
+    /**
+     * Members by lower case identifier
+     */
+    private final Map<String, Member> byIdentifier = new ConcurrentHashMap<>();
+
+    /**
+     * Members by lower case email
+     */
+    private final Map<String, Member> byEmail = new ConcurrentHashMap<>();
+
+    /**
+     * Most recent "_info/lastUpdated" seen, null until the first full load completes
+     */
+    private volatile String watermark;
+
+    /**
+     * @param api ConnectWise API used to load members
+     * @param apiRoot supplies the API root URL, i.e. "https://connect.myCompany.com.au/v4_6_release/apis/3.0"
+     * @param refreshMillis interval of incremental refreshes
+     */
+    public MemberDirectory(ConnectWiseApi api, Supplier<String> apiRoot, long refreshMillis) {
+        this.api = api;
+        this.apiRoot = apiRoot;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Resolves a Symphony user to an active ConnectWise member identifier
+     * @param user Symphony user, either an email or a member identifier
+     * @return member identifier, null if no active member matches
+     */
+    public String identifierFor(String user) {
+        if (user == null)
+            return null;
+
+        ensureStarted();
+
+        String key = user.toLowerCase(Locale.ROOT);
+        Member member = byEmail.get(key);
+        if (member == null)
+            member = byIdentifier.get(key);
+
+        return member == null || member.inactive ? null : member.identifier;
+    }
+
+    /**
+     * Resolves a ConnectWise member identifier to the member's email
+     * @param identifier member identifier
+     * @return member email, null if unknown
+     */
+    public String emailFor(String identifier) {
+        if (identifier == null)
+            return null;
+
+        ensureStarted();
+
+        Member member = byIdentifier.get(identifier.toLowerCase(Locale.ROOT));
+        return member == null ? null : member.email;
+    }
+
+    /**
+     * Checks whether a value can be sent to ConnectWise as a member identifier
+     * @param identifier member identifier
+     * @return true if the identifier belongs to an active member, or if members are not loaded yet
+     */
+    public boolean isAssignable(String identifier) {
+        if (identifier == null || watermark == null)
+            return true;
+
+        Member member = byIdentifier.get(identifier.toLowerCase(Locale.ROOT));
+        return member != null && !member.inactive;
+    }
+
+    /**
+     * Drops all members, for instance because the ConnectWise instance changed.
+     * Members are reloaded in background on next use.
+     */
+    public void invalidate() {
+        watermark = null;
+        byIdentifier.clear();
+        byEmail.clear();
+        if (started.get())
+            submit(this::refresh);
+    }
+
+    /**
+     * Stops background refresh
+     */
+    public void close() {
+        ScheduledExecutorService executor = this.executor;
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    private void ensureStarted() {
+        if (started.compareAndSet(false, true)) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "cw-member-directory");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = executor;
+            executor.scheduleWithFixedDelay(this::refresh, 0, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void submit(Runnable task) {
+        ScheduledExecutorService executor = this.executor;
+        if (executor != null && !executor.isShutdown()) {
+            try {
+                executor.execute(task);
+            } catch (Exception e) {
+                logger.debug("submit: member directory task rejected - {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Loads every member on first run, then only members updated since the last run
+     */
+    private void refresh() {
+        if (!refreshing.compareAndSet(false, true))
+            return;
+
+        try {
+            String root = apiRoot.get();
+            if (root == null) {
+                logger.debug("refresh: URL or API_PATH not setup on Config");
+                return;
+            }
+
+            String since = watermark;
+            String url = root + "/system/members?fields=" + FIELDS + "&orderBy=id";
+            // Timestamps are kept to the second: members updated later in the second of the watermark are read
+            // again, those already loaded being replaced by identifier
+            if (since != null)
+                url += "&conditions=" + URLEncoder.encode("lastUpdated >= [" + since + "]", StandardCharsets.UTF_8);
+
+            int loaded = load(url);
+            if (since == null || loaded > 0)
+                logger.info("refresh: {} {} member(s)", since == null ? "loaded" : "updated", loaded);
+        } catch (Exception e) {
+            // Keep serving the previous members, the next refresh will try again
+            logger.warn("refresh: unable to load ConnectWise members - {}", e.getMessage());
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Loads every page of the members endpoint, making each page available as soon as it is received
+     * @param url endpoint URL including fields and conditions
+     * @return number of members loaded new or changed
+     * @throws TalAdapterSyncException if an API call fails
+     */
+    private int load(String url) throws TalAdapterSyncException {
+        int loaded = 0;
+        String latest = watermark;
+
+        for (int page = 1; ; page++) {
+            JSONObject response = api.call(url + "&pageSize=" + PAGE_SIZE + "&page=" + page, "GET", null);
+            if (response == null || !response.has("JSONArray"))
+                break;
+
+            JSONArray members = response.getJSONArray("JSONArray");
+            for (int i = 0; i < members.length(); i++) {
+                JSONObject entry = members.getJSONObject(i);
+                String identifier = entry.optString("identifier", null);
+                if (identifier == null)
+                    continue;
+
+                String email = entry.optString("primaryEmail", null);
+                Member member = new Member(identifier, email, entry.optBoolean("inactiveFlag"));
+                Member previous = byIdentifier.put(identifier.toLowerCase(Locale.ROOT).intern(), member);
+                if (previous != null && previous.email != null)
+                    byEmail.remove(previous.email.toLowerCase(Locale.ROOT), previous);
+                if (email != null)
+                    byEmail.put(email.toLowerCase(Locale.ROOT).intern(), member);
+
+                JSONObject info = entry.optJSONObject("_info");
+                String lastUpdated = info != null ? info.optString("lastUpdated", null) : null;
+                // ConnectWise timestamps are ISO-8601 UTC, so they order lexicographically
+                if (lastUpdated != null && (latest == null || lastUpdated.compareTo(latest) > 0))
+                    latest = lastUpdated;
+                if (previous == null || previous.inactive != member.inactive ||
+                        !Objects.equals(previous.email, member.email))
+                    loaded++;
+            }
+
+            if (members.length() < PAGE_SIZE)
+                break;
+        }
+
+        // An empty directory still counts as loaded
+        watermark = latest != null ? latest : "1970-01-01T00:00:00Z";
+        return loaded;
+    }
+}
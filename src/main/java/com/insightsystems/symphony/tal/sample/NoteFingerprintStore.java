@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact store of {@link NoteWrite}s keyed by ConnectWise note ID, for {@link NoteFingerprints}.
+ *
+ * Records are fixed-width and live off-heap in one direct buffer, as an open-addressing hash table with linear
+ * probing: the heap holds no object per note, so heap use stays flat whatever the number of notes. The table is
+ * sized once for its capacity; when full, the least recently used notes are evicted with the CLOCK algorithm, a
+ * note being referenced by every read and write. At 32 bytes per slot and a load factor of 0.75, a million notes
+ * take about 64 MB of direct memory.
+ *
+ * Operations are synchronized: each is a few memory accesses, far shorter than the sync that makes it.
+ *
+ * The records can be saved to and loaded from a memory-mapped file, so that a restarted adapter does not start from
+ * nothing.
+ */
+public class NoteFingerprintStore {
+
+    /**
+     * Width of a record: key, fingerprints of the text written and stored, and flags, padded to a multiple of 8 bytes
+     */
+    static final int RECORD_BYTES = 32;
+
+    private static final int KEY = 0;
+    private static final int WRITTEN = 8;
+    private static final int STORED = 16;
+    private static final int FLAGS = 24;
+
+    /**
+     * Flag of a record read or written since the clock hand last passed it
+     */
+    private static final int REFERENCED = 1;
+
+    private static final double LOAD_FACTOR = 0.75;
+
+    /**
+     * Extension of saved files, named after the account of the adapter
+     */
+    static final String EXTENSION = ".fingerprints";
+
+    /**
+     * Saved file header: magic number, record width and record count
+     */
+    private static final int FILE_MAGIC = 0x43575331;
+    private static final int FILE_HEADER_BYTES = 12;
+
+    /**
+     * Key of empty slots, ConnectWise IDs being positive
+     */
+    private static final long EMPTY = 0;
+
+    private final ByteBuffer records;
+    private final int capacity;
+    private final int mask;
+    private int size;
+    private int hand;
+    private long evictions;
+
+    /**
+     * @param capacity maximum number of notes kept
+     */
+    public NoteFingerprintStore(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        int slots = Integer.highestOneBit((int) Math.ceil(this.capacity / LOAD_FACTOR) - 1) << 1;
+        this.mask = slots - 1;
+        this.records = ByteBuffer.allocateDirect(Math.multiplyExact(slots, RECORD_BYTES));
+    }
+
+    /**
+     * @param noteId ConnectWise note ID
+     * @return last write of the note, null if not kept
+     */
+    public synchronized NoteWrite get(long noteId) {
+        if (noteId <= 0)
+            return null;
+        int slot = find(noteId);
+        if (slot < 0)
+            return null;
+
+        int base = slot * RECORD_BYTES;
+        records.putInt(base + FLAGS, records.getInt(base + FLAGS) | REFERENCED);
+        return new NoteWrite(records.getLong(base + WRITTEN), records.getLong(base + STORED));
+    }
+
+    /**
+     * Keeps the last write of a note, evicting the least recently used note if the store is full
+     * @param noteId ConnectWise note ID, ignored if not positive
+     * @param write last write of the note
+     */
+    public synchronized void put(long noteId, NoteWrite write) {
+        if (noteId <= 0)
+            return;
+
+        int slot = find(noteId);
+        if (slot < 0) {
+            if (size >= capacity)
+                evict();
+            slot = home(noteId);
+            while (records.getLong(slot * RECORD_BYTES + KEY) != EMPTY)
+                slot = (slot + 1) & mask;
+            size++;
+        }
+
+        int base = slot * RECORD_BYTES;
+        records.putLong(base + KEY, noteId);
+        records.putLong(base + WRITTEN, write.getWritten());
+        records.putLong(base + STORED, write.getStored());
+        records.putInt(base + FLAGS, REFERENCED);
+    }
+
+    /**
+     * @param noteId ConnectWise note ID
+     * @return true if the note was kept
+     */
+    public synchronized boolean remove(long noteId) {
+        int slot = noteId > 0 ? find(noteId) : -1;
+        if (slot < 0)
+            return false;
+        delete(slot);
+        return true;
+    }
+
+    /**
+     * Drops every note, i.e. when the ConnectWise instance changes
+     */
+    public synchronized void clear() {
+        for (int base = 0; base < records.capacity(); base += RECORD_BYTES)
+            records.putLong(base + KEY, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * @return number of notes kept
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return maximum number of notes kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of notes evicted to make room for others
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return direct memory taken by the records, in bytes
+     */
+    public long getOffHeapBytes() {
+        return records.capacity();
+    }
+
+    /**
+     * @param directory directory the store is saved to
+     * @param accountId account of the adapter
+     * @return saved file of the account
+     */
+    public static Path file(Path directory, String accountId) {
+        return directory.resolve(accountId + EXTENSION);
+    }
+
+    /**
+     * Saves the notes kept to a file, replaced atomically
+     * @param file file the notes are saved to
+     * @return number of notes saved
+     * @throws IOException if the file cannot be written
+     */
+    public int save(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int saved;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            synchronized (this) {
+                saved = size;
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        FILE_HEADER_BYTES + (long) saved * RECORD_BYTES);
+                mapped.putInt(FILE_MAGIC).putInt(RECORD_BYTES).putInt(saved);
+                ByteBuffer source = records.duplicate();
+                for (int base = 0; base < records.capacity(); base += RECORD_BYTES) {
+                    if (records.getLong(base + KEY) == EMPTY)
+                        continue;
+                    source.limit(base + RECORD_BYTES).position(base);
+                    mapped.put(source);
+                }
+                mapped.force();
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return saved;
+    }
+
+    /**
+     * Loads notes saved by {@link #save(Path)}. Notes kept already are newer and are left as they are, loaded notes
+     * count as not recently used.
+     * @param file saved file
+     * @return number of notes loaded, 0 if the file does not exist
+     * @throws IOException if the file cannot be read or is not a saved store
+     */
+    public int load(Path file) throws IOException {
+        if (!Files.exists(file))
+            return 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.remaining() < FILE_HEADER_BYTES || mapped.getInt() != FILE_MAGIC ||
+                    mapped.getInt() != RECORD_BYTES)
+                throw new IOException(file + " is not a saved note fingerprint store");
+            int count = mapped.getInt();
+            if (count < 0 || mapped.remaining() < (long) count * RECORD_BYTES)
+                throw new IOException(file + " is truncated");
+
+            int loaded = 0;
+            for (int i = 0; i < count; i++) {
+                if (restore(mapped, FILE_HEADER_BYTES + i * RECORD_BYTES))
+                    loaded++;
+            }
+            return loaded;
+        }
+    }
+
+    /**
+     * Copies a saved record unless its note is kept already
+     * @return true if the record was copied
+     */
+    private synchronized boolean restore(ByteBuffer source, int offset) {
+        long noteId = source.getLong(offset + KEY);
+        if (noteId <= 0 || find(noteId) >= 0)
+            return false;
+        if (size >= capacity)
+            evict();
+
+        int slot = home(noteId);
+        while (records.getLong(slot * RECORD_BYTES + KEY) != EMPTY)
+            slot = (slot + 1) & mask;
+        size++;
+        for (int field = 0; field < RECORD_BYTES; field += 8)
+            records.putLong(slot * RECORD_BYTES + field, source.getLong(offset + field));
+        records.putInt(slot * RECORD_BYTES + FLAGS, 0);
+        return true;
+    }
+
+    private int home(long noteId) {
+        // Murmur3 finalizer: sequential IDs would otherwise fill runs of adjacent slots
+        long h = noteId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    /**
+     * @return slot of the note, -1 if not kept
+     */
+    private int find(long noteId) {
+        int slot = home(noteId);
+        while (true) {
+            long key = records.getLong(slot * RECORD_BYTES + KEY);
+            if (key == noteId)
+                return slot;
+            if (key == EMPTY)
+                return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Evicts one note not referenced since the clock hand last passed it
+     */
+    private void evict() {
+        while (true) {
+            hand = (hand + 1) & mask;
+            int base = hand * RECORD_BYTES;
+            if (records.getLong(base + KEY) == EMPTY)
+                continue;
+
+            int flags = records.getInt(base + FLAGS);
+            if ((flags & REFERENCED) != 0) {
+                records.putInt(base + FLAGS, flags & ~REFERENCED);
+                continue;
+            }
+            delete(hand);
+            evictions++;
+            return;
+        }
+    }
+
+    /**
+     * Empties a slot, shifting back the records probed past it so that lookups need no tombstones
+     */
+    private void delete(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (true) {
+            long key = records.getLong(next * RECORD_BYTES + KEY);
+            if (key == EMPTY)
+                break;
+            // The record can fill the hole unless its home slot lies after the hole, up to its own slot
+            int home = home(key);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                for (int offset = 0; offset < RECORD_BYTES; offset += 8)
+                    records.putLong(hole * RECORD_BYTES + offset, records.getLong(next * RECORD_BYTES + offset));
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        records.putLong(hole * RECORD_BYTES + KEY, EMPTY);
+        size--;
+    }
+}
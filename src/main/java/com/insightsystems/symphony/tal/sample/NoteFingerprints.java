@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.Objects;
+
+import org.json.JSONObject;
+
+/**
+ * Content fingerprints of ConnectWise notes, so that a note is only written when its content really changed.
+ *
+ * ConnectWise does not store note texts exactly as sent: line endings, runs of whitespace, non-breaking spaces and
+ * typographic quotes come back rewritten. Texts are therefore compared on the fingerprint of their normalized form.
+ * For rewrites normalization does not cover, the fingerprints of the text written and of the text ConnectWise stored
+ * are kept per note after every successful write: as long as Symphony and ConnectWise still hold those texts, the
+ * note is unchanged.
+ *
+ * Fingerprints live off-heap in a {@link NoteFingerprintStore} keyed by note ID.
+ */
+public class NoteFingerprints {
+
+    /**
+     * Suffix of the account ID in the saved file name
+     */
+    private static final String FILE_SUFFIX = ".notes";
+
+    private final NoteFingerprintStore store;
+
+    /**
+     * @param capacity maximum number of notes kept
+     */
+    public NoteFingerprints(int capacity) {
+        this.store = new NoteFingerprintStore(capacity);
+    }
+
+    /**
+     * @param directory directory the fingerprints are saved to
+     * @param accountId account of the adapter
+     * @return saved file of the account
+     */
+    public static Path file(Path directory, String accountId) {
+        return NoteFingerprintStore.file(directory, accountId + FILE_SUFFIX);
+    }
+
+    /**
+     * Normalizes a note text the way ConnectWise rewrites it: Unicode composition, line endings, whitespace runs,
+     * blank lines, leading and trailing whitespace, non-breaking and zero-width spaces, typographic quotes
+     * @param text note text, may be null
+     * @return normalized text, empty if null
+     */
+    static String normalize(String text) {
+        if (text == null)
+            return "";
+
+        String composed = Normalizer.normalize(text, Normalizer.Form.NFC);
+        StringBuilder normalized = new StringBuilder(composed.length());
+        boolean space = false;
+        boolean newline = false;
+        for (int i = 0; i < composed.length(); i++) {
+            char c = composed.charAt(i);
+            switch (c) {
+                case '\r':
+                case '\n':
+                    newline = true;
+                    continue;
+                case ' ':
+                case '\t':
+                case '\u00A0':
+                case '\u2007':
+                case '\u202F':
+                    space = true;
+                    continue;
+                case '\u200B':
+                case '\uFEFF':
+                    continue;
+                case '\u2018':
+                case '\u2019':
+                    c = '\'';
+                    break;
+                case '\u201C':
+                case '\u201D':
+                    c = '"';
+                    break;
+                default:
+                    break;
+            }
+            // Whitespace is kept as one separator between content, a line break winning over spaces
+            if (normalized.length() > 0 && (newline || space))
+                normalized.append(newline ? '\n' : ' ');
+            normalized.append(c);
+            space = false;
+            newline = false;
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @param text note text, may be null
+     * @return fingerprint of the normalized text
+     */
+    public static long of(String text) {
+        return ConnectWiseKeys.digest(normalize(text));
+    }
+
+    /**
+     * Checks whether a note needs no write
+     * @param noteId ConnectWise note ID, may be null
+     * @param symphonyText text of the Symphony comment
+     * @param connectWiseText text of the ConnectWise note
+     * @return true if the texts are the same once normalized, or are still the texts of the last write of the note
+     */
+    public boolean unchanged(String noteId, String symphonyText, String connectWiseText) {
+        if (Objects.equals(symphonyText, connectWiseText))
+            return true;
+
+        long symphony = of(symphonyText);
+        long connectWise = of(connectWiseText);
+        if (symphony == connectWise)
+            return true;
+
+        NoteWrite written = store.get(ConnectWiseKeys.id(noteId));
+        return written != null && written.getWritten() == symphony && written.getStored() == connectWise;
+    }
+
+    /**
+     * @param noteId ConnectWise note ID, may be null
+     * @param connectWiseText text of the ConnectWise note
+     * @return true if the note still holds the text the adapter last wrote to it
+     */
+    public boolean isWritten(String noteId, String connectWiseText) {
+        NoteWrite written = store.get(ConnectWiseKeys.id(noteId));
+        return written != null && written.getStored() == of(connectWiseText);
+    }
+
+    /**
+     * Records a successful write of a note
+     * @param noteId ConnectWise note ID, ignored if not valid
+     * @param text text written
+     * @param stored note as returned by ConnectWise, may be null if ConnectWise returned no content
+     */
+    public void written(String noteId, String text, JSONObject stored) {
+        long id = ConnectWiseKeys.id(noteId);
+        if (id < 0)
+            return;
+
+        long fingerprint = of(text);
+        long storedFingerprint = stored != null && stored.has("text") ? of(stored.optString("text")) : fingerprint;
+        store.put(id, new NoteWrite(fingerprint, storedFingerprint));
+    }
+
+    /**
+     * Drops every note, i.e. when the ConnectWise instance changes
+     */
+    public void clear() {
+        store.clear();
+    }
+
+    /**
+     * @return maximum number of notes kept
+     */
+    public int getCapacity() {
+        return store.getCapacity();
+    }
+
+    /**
+     * Saves the fingerprints to a file, replaced atomically
+     * @param file file the fingerprints are saved to
+     * @return number of notes saved
+     * @throws IOException if the file cannot be written
+     */
+    public int save(Path file) throws IOException {
+        return store.save(file);
+    }
+
+    /**
+     * Loads fingerprints saved by {@link #save(Path)}, the notes written since the start being kept
+     * @param file saved file
+     * @return number of notes loaded, 0 if the file does not exist
+     * @throws IOException if the file cannot be read
+     */
+    public int load(Path file) throws IOException {
+        return store.load(file);
+    }
+}
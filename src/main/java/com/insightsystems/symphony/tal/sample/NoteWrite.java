@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+/**
+ * Last write of a ConnectWise note as kept in a {@link NoteFingerprintStore}: the fingerprints of the text written and
+ * of the text ConnectWise stored, see {@link NoteFingerprints}.
+ */
+public final class NoteWrite {
+
+    private final long written;
+    private final long stored;
+
+    /**
+     * @param written fingerprint of the text written
+     * @param stored fingerprint of the text ConnectWise stored
+     */
+    public NoteWrite(long written, long stored) {
+        this.written = written;
+        this.stored = stored;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long getStored() {
+        return stored;
+    }
+}
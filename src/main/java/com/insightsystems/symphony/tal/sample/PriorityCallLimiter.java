@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limiter of concurrent ConnectWise calls that serves waiting calls by priority class.
+ *
+ * While connections are free calls proceed at once. Once they are all busy, calls queue per {@link SyncPriority}
+ * and every freed connection goes to a class picked by weighted fair queuing (stride scheduling): a class with
+ * weight 8 gets 8 connections for each one a class with weight 1 gets, as long as both have calls waiting.
+ * A class that was idle resumes at the current virtual time, without credit for the time it did not use.
+ * To protect low priority classes from starvation when connections free up very slowly, i.e. while ConnectWise
+ * throttles, a call that has waited longer than the maximum wait is served first whatever its class, if its
+ * class has not been served for that long either. Under plain overload every class keeps being served in
+ * proportion to its weight, and the order stays by priority rather than degrading to arrival order.
+ *
+ * After the adapter starts, an {@link AdmissionRamp} can hold back some of the connections for a while: waiting calls
+ * are served by priority all the same, but fewer at once.
+ *
+ * Waiting uses {@link ReentrantLock} conditions rather than monitors, so that waiting virtual threads do not pin
+ * their carrier.
+ */
+public class PriorityCallLimiter {
+
+    private static final long STRIDE = 1L << 20;
+
+    /**
+     * Call waiting for a connection
+     */
+    private static final class Waiter {
+        final long enqueuedAt = System.nanoTime();
+        final Condition condition;
+        boolean granted;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Waiter>[] queues;
+    private final long[] strides;
+    private final long[] passes;
+    private final long[] servedAt;
+    private final long maxWaitNanos;
+    private final int permits;
+    private final AdmissionRamp ramp;
+    private int available;
+    private int waiting;
+    private long virtualTime;
+
+    /**
+     * @param permits maximum number of concurrent calls
+     * @param weights weight of each priority class, indexed by {@link SyncPriority#ordinal()}; at least 1
+     * @param maxWaitMillis wait after which a call is served before any other class, 0 to disable
+     */
+    public PriorityCallLimiter(int permits, int[] weights, long maxWaitMillis) {
+        this(permits, weights, maxWaitMillis, AdmissionRamp.NONE);
+    }
+
+    /**
+     * @param permits maximum number of concurrent calls
+     * @param weights weight of each priority class, indexed by {@link SyncPriority#ordinal()}; at least 1
+     * @param maxWaitMillis wait after which a call is served before any other class, 0 to disable
+     * @param ramp ramp of the concurrent calls allowed after the adapter starts
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityCallLimiter(int permits, int[] weights, long maxWaitMillis, AdmissionRamp ramp) {
+        this.permits = permits;
+        this.ramp = ramp;
+        this.available = permits;
+        this.maxWaitNanos = maxWaitMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(maxWaitMillis) : Long.MAX_VALUE;
+        int classes = SyncPriority.values().length;
+        this.queues = new Deque[classes];
+        this.strides = new long[classes];
+        this.passes = new long[classes];
+        this.servedAt = new long[classes];
+        long now = System.nanoTime();
+        for (int i = 0; i < classes; i++) {
+            queues[i] = new ArrayDeque<>();
+            strides[i] = STRIDE / Math.max(1, weights[i]);
+            servedAt[i] = now;
+        }
+    }
+
+    /**
+     * Waits for a connection
+     * @param priority priority class of the call
+     * @return time waited in nanoseconds
+     * @throws InterruptedException if interrupted while waiting, no connection is then held
+     */
+    public long acquire(SyncPriority priority) throws InterruptedException {
+        return acquire(priority, Long.MAX_VALUE);
+    }
+
+    /**
+     * Waits for a connection, at most the given time
+     * @param priority priority class of the call
+     * @param timeoutNanos maximum wait in nanoseconds
+     * @return time waited in nanoseconds, -1 if no connection was free in time, none being held then
+     * @throws InterruptedException if interrupted while waiting, no connection is then held
+     */
+    public long acquire(SyncPriority priority, long timeoutNanos) throws InterruptedException {
+        int index = priority.ordinal();
+        lock.lock();
+        try {
+            if (available > 0 && waiting == 0 && admits()) {
+                available--;
+                charge(index);
+                return 0;
+            }
+
+            Waiter waiter = new Waiter(lock.newCondition());
+            if (queues[index].isEmpty())
+                passes[index] = Math.max(passes[index], virtualTime);
+            queues[index].addLast(waiter);
+            waiting++;
+            dispatch();
+
+            try {
+                long remaining = timeoutNanos;
+                while (!waiter.granted) {
+                    if (timeoutNanos == Long.MAX_VALUE) {
+                        waiter.condition.await();
+                    } else if (remaining > 0) {
+                        remaining = waiter.condition.awaitNanos(remaining);
+                    } else {
+                        queues[index].remove(waiter);
+                        waiting--;
+                        return -1;
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    // Granted while being interrupted: hand the connection on
+                    available++;
+                    dispatch();
+                } else {
+                    queues[index].remove(waiter);
+                    waiting--;
+                }
+                throw e;
+            }
+            return System.nanoTime() - waiter.enqueuedAt;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a connection only if one is free and no call is waiting, without charging any priority class, for extra
+     * requests that must never delay queued calls
+     * @return true if a connection was taken, to be freed with {@link #release()}
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (available == 0 || waiting > 0 || !admits())
+                return false;
+            available--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees a connection acquired with {@link #acquire(SyncPriority)}
+     */
+    public void release() {
+        lock.lock();
+        try {
+            available++;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of calls waiting for a connection
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param priority priority class
+     * @return number of calls of the class waiting for a connection
+     */
+    public int getQueueLength(SyncPriority priority) {
+        lock.lock();
+        try {
+            return queues[priority.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands free connections to waiting calls, must hold the lock
+     */
+    private void dispatch() {
+        while (available > 0 && waiting > 0 && admits()) {
+            int index = next();
+            Waiter waiter = queues[index].pollFirst();
+            waiting--;
+            available--;
+            charge(index);
+            waiter.granted = true;
+            waiter.condition.signal();
+        }
+    }
+
+    /**
+     * @return true if the admission ramp allows one more connection in use, must hold the lock
+     */
+    private boolean admits() {
+        return permits - available < ramp.permits(permits);
+    }
+
+    /**
+     * @return class served next: the class of a call over the maximum wait whose class was not served within the
+     * maximum wait either, the oldest first; otherwise the class with the lowest pass, the highest priority on ties
+     */
+    private int next() {
+        long now = System.nanoTime();
+        int overdue = -1;
+        long oldest = Long.MAX_VALUE;
+        int fairest = -1;
+        for (int i = 0; i < queues.length; i++) {
+            Waiter head = queues[i].peekFirst();
+            if (head == null)
+                continue;
+            if (now - head.enqueuedAt > maxWaitNanos && now - servedAt[i] > maxWaitNanos && head.enqueuedAt < oldest) {
+                overdue = i;
+                oldest = head.enqueuedAt;
+            }
+            if (fairest < 0 || passes[i] < passes[fairest])
+                fairest = i;
+        }
+        return overdue >= 0 ? overdue : fairest;
+    }
+
+    /**
+     * Advances the pass of the class served, must hold the lock
+     */
+    private void charge(int index) {
+        servedAt[index] = System.nanoTime();
+        virtualTime = Math.max(virtualTime, passes[index]);
+        passes[index] = Math.max(passes[index], virtualTime) + strides[index];
+    }
+}
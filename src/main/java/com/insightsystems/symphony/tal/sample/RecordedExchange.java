@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One ConnectWise request/response pair of a recording.
+ *
+ * Recording files are gzip streams of a magic number followed by exchanges, each written as: start time (epoch ms),
+ * call duration (ns), method, target (path and query, without scheme and host), status code, request body and
+ * response body. Strings are length-prefixed UTF-8, a length of -1 being null. Headers, and so credentials,
+ * are never written.
+ */
+final class RecordedExchange {
+
+    /**
+     * First bytes of a recording, "CWR" and the format version
+     */
+    static final int MAGIC = 0x43575201;
+
+    /**
+     * File name extension of recordings
+     */
+    static final String EXTENSION = ".cwr.gz";
+
+    final long startMillis;
+    final long durationNanos;
+    final String method;
+    final String target;
+    final int statusCode;
+    final String requestBody;
+    final String responseBody;
+
+    RecordedExchange(long startMillis, long durationNanos, String method, String target, int statusCode,
+                     String requestBody, String responseBody) {
+        this.startMillis = startMillis;
+        this.durationNanos = durationNanos;
+        this.method = method;
+        this.target = target;
+        this.statusCode = statusCode;
+        this.requestBody = requestBody;
+        this.responseBody = responseBody;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(startMillis);
+        out.writeLong(durationNanos);
+        writeString(out, method);
+        writeString(out, target);
+        out.writeInt(statusCode);
+        writeString(out, requestBody);
+        writeString(out, responseBody);
+    }
+
+    static RecordedExchange readFrom(DataInputStream in) throws IOException {
+        return new RecordedExchange(in.readLong(), in.readLong(), readString(in), readString(in), in.readInt(),
+                readString(in), readString(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param method HTTP method
+     * @param target path and query of the request
+     * @return key requests are matched to recorded exchanges by
+     */
+    static String key(String method, String target) {
+        return method + " " + target;
+    }
+}
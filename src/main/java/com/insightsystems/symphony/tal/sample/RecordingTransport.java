@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the ConnectWise traffic of another transport to a file, for later replay by {@link ReplayTransport}.
+ *
+ * Only the path and query of requests are kept, and configured secrets are masked out of bodies, so recordings
+ * can be shared without credentials. Each exchange is flushed as it is written, a recording stays readable up to
+ * its last complete exchange if the adapter stops abruptly.
+ */
+public class RecordingTransport implements ConnectWiseTransport {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RecordingTransport.class);
+
+    private static final String MASK = "********";
+
+    private final ConnectWiseTransport delegate;
+    private final Path file;
+    private final String[] secrets;
+    private DataOutputStream out;
+
+    /**
+     * @param delegate transport the requests are sent through
+     * @param directory directory recordings are written to, created if needed
+     * @param name recording name, the file being "name.cwr.gz"
+     * @param secrets values masked out of recorded bodies, i.e. the client ID and authorization; nulls are ignored
+     * @throws IOException if the recording cannot be created
+     */
+    public RecordingTransport(ConnectWiseTransport delegate, Path directory, String name, String... secrets)
+            throws IOException {
+        this.delegate = delegate;
+        this.secrets = secrets;
+        Files.createDirectories(directory);
+        this.file = directory.resolve(name + RecordedExchange.EXTENSION);
+        this.out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file)),
+                true));
+        out.writeInt(RecordedExchange.MAGIC);
+        logger.info("RecordingTransport: recording ConnectWise traffic to {}", file);
+    }
+
+    @Override
+    public Response send(HttpRequest request, String requestBody) throws IOException, InterruptedException {
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        Response response = delegate.send(request, requestBody);
+        long durationNanos = System.nanoTime() - start;
+
+        record(new RecordedExchange(startMillis, durationNanos, request.method(), target(request.uri()),
+                response.getStatusCode(), scrub(requestBody), scrub(response.getBody())));
+        return response;
+    }
+
+    private synchronized void record(RecordedExchange exchange) {
+        if (out == null)
+            return;
+
+        try {
+            exchange.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            // Recording is best effort, it never fails a sync
+            logger.error("record: unable to write to {} - recording stopped: {}", file, e.getMessage());
+            closeRecording();
+        }
+    }
+
+    /**
+     * @return path and query of a request URI, i.e. "/v4_6_release/apis/3.0/service/tickets/187204?fields=id"
+     */
+    static String target(URI uri) {
+        return uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+    }
+
+    private String scrub(String body) {
+        if (body == null)
+            return null;
+
+        for (String secret : secrets) {
+            if (secret != null && !secret.isEmpty() && body.contains(secret))
+                body = body.replace(secret, MASK);
+        }
+        return body;
+    }
+
+    private synchronized void closeRecording() {
+        if (out == null)
+            return;
+
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.debug("close: unable to close {} - {}", file, e.getMessage());
+        }
+        out = null;
+    }
+
+    @Override
+    public void close() {
+        closeRecording();
+        delegate.close();
+    }
+}
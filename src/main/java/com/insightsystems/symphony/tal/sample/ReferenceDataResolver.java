@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves ConnectWise reference data (boards, companies, priorities and board statuses) names to IDs locally.
+ *
+ * Reference data is loaded in background on first use and kept in TTL caches that are refreshed asynchronously,
+ * lookups never perform an API call and return null while a value is not known yet.
+ */
+public class ReferenceDataResolver {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceDataResolver.class);
+
+    /**
+     * Page size used when loading reference data
+     */
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * Suffix of the configured API_PATH, stripped to obtain the API root
+     */
+    private static final String TICKETS_PATH = "/service/tickets";
+
+    private final ConnectWiseApi api;
+    private final Supplier<String> apiRoot;
+    private final long ttlMillis;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile ScheduledExecutorService executor;
+
+    private volatile Map<String, Integer> boards = Collections.emptyMap();
+    private volatile Map<String, Integer> companies = Collections.emptyMap();
+    private volatile Map<String, Integer> priorities = Collections.emptyMap();
+    private final Map<Integer, Map<String, Integer>> statuses = new ConcurrentHashMap<>();
+    private final Map<Integer, Boolean> statusesLoading = new ConcurrentHashMap<>();
+
+    /**
+     * Time of the last successful refresh, 0 if never loaded
+     */
+    private volatile long loadedAt;
+
+    /**
+     * @param api ConnectWise API used to load reference data
+     * @param apiRoot supplies the API root URL, i.e. "https://connect.myCompany.com.au/v4_6_release/apis/3.0"
+     * @param ttlMillis time after which loaded reference data is refreshed
+     */
+    public ReferenceDataResolver(ConnectWiseApi api, Supplier<String> apiRoot, long ttlMillis) {
+        this.api = api;
+        this.apiRoot = apiRoot;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Builds the API root URL out of the configured URL and API_PATH
+     * @param url ConnectWise URL, i.e. "https://connect.myCompany.com.au"
+     * @param apiPath tickets API path, i.e. "/v4_6_release/apis/3.0/service/tickets"
+     * @return API root URL, null if url or apiPath are null
+     */
+    public static String apiRoot(String url, String apiPath) {
+        if (url == null || apiPath == null)
+            return null;
+
+        String path = apiPath.endsWith("/") ? apiPath.substring(0, apiPath.length() - 1) : apiPath;
+        if (path.endsWith(TICKETS_PATH))
+            path = path.substring(0, path.length() - TICKETS_PATH.length());
+
+        return url + path;
+    }
+
+    /**
+     * @param name board name or numeric ID
+     * @return board ID, null if unknown
+     */
+    public Integer boardId(String name) {
+        return resolve(boards, name);
+    }
+
+    /**
+     * @param name company identifier, name or numeric ID
+     * @return company ID, null if unknown
+     */
+    public Integer companyId(String name) {
+        return resolve(companies, name);
+    }
+
+    /**
+     * @param name priority name or numeric ID
+     * @return priority ID, null if unknown
+     */
+    public Integer priorityId(String name) {
+        return resolve(priorities, name);
+    }
+
+    /**
+     * Resolves a status name of a board. Statuses of a board are loaded in background the first time they are
+     * requested.
+     * @param boardId board the status belongs to
+     * @param name status name or numeric ID
+     * @return status ID, null if unknown
+     */
+    public Integer statusId(Integer boardId, String name) {
+        if (boardId == null)
+            return null;
+
+        Map<String, Integer> boardStatuses = statuses.get(boardId);
+        if (boardStatuses == null) {
+            ensureStarted();
+            if (statusesLoading.putIfAbsent(boardId, Boolean.TRUE) == null)
+                submit(() -> loadStatuses(boardId));
+            return parseId(name);
+        }
+
+        return resolve(boardStatuses, name);
+    }
+
+    /**
+     * Drops all reference data, for instance because the ConnectWise instance changed.
+     * Data is reloaded in background on next use.
+     */
+    public void invalidate() {
+        boards = Collections.emptyMap();
+        companies = Collections.emptyMap();
+        priorities = Collections.emptyMap();
+        statuses.clear();
+        statusesLoading.clear();
+        loadedAt = 0;
+        if (started.get())
+            submit(this::refresh);
+    }
+
+    /**
+     * Stops background refresh
+     */
+    public void close() {
+        ScheduledExecutorService executor = this.executor;
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    private Integer resolve(Map<String, Integer> cache, String name) {
+        if (name == null)
+            return null;
+
+        ensureStarted();
+
+        Integer id = parseId(name);
+        if (id != null)
+            return id;
+
+        return cache.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    private static Integer parseId(String value) {
+        if (value == null || value.isEmpty())
+            return null;
+
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i)))
+                return null;
+        }
+
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts the background refresh on first use, and schedules a refresh if the data has expired
+     */
+    private void ensureStarted() {
+        if (started.compareAndSet(false, true)) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "cw-reference-data");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = executor;
+            executor.scheduleWithFixedDelay(this::refresh, 0, ttlMillis, TimeUnit.MILLISECONDS);
+        } else if (loadedAt != 0 && System.currentTimeMillis() - loadedAt > ttlMillis) {
+            submit(this::refresh);
+        }
+    }
+
+    private void submit(Runnable task) {
+        ScheduledExecutorService executor = this.executor;
+        if (executor != null && !executor.isShutdown()) {
+            try {
+                executor.execute(task);
+            } catch (Exception e) {
+                logger.debug("submit: reference data task rejected - {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reloads boards, companies, priorities and the statuses of every board already known
+     */
+    private void refresh() {
+        if (!refreshing.compareAndSet(false, true))
+            return;
+
+        try {
+            String root = apiRoot.get();
+            if (root == null) {
+                logger.debug("refresh: URL or API_PATH not setup on Config");
+                return;
+            }
+
+            boards = load(root + "/service/boards?fields=id,name", "name");
+            companies = load(root + "/company/companies?fields=id,identifier,name", "identifier", "name");
+            priorities = load(root + "/service/priorities?fields=id,name", "name");
+            for (Integer boardId : statuses.keySet())
+                loadStatuses(boardId);
+
+            loadedAt = System.currentTimeMillis();
+            logger.info("refresh: loaded {} boards, {} companies, {} priorities",
+                    boards.size(), companies.size(), priorities.size());
+        } catch (Exception e) {
+            // Keep serving the previous data, the next refresh will try again
+            logger.warn("refresh: unable to load ConnectWise reference data - {}", e.getMessage());
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    private void loadStatuses(Integer boardId) {
+        String root = apiRoot.get();
+        if (root == null)
+            return;
+
+        try {
+            statuses.put(boardId, load(root + "/service/boards/" + boardId + "/statuses?fields=id,name", "name"));
+        } catch (Exception e) {
+            logger.warn("loadStatuses: unable to load statuses of board {} - {}", boardId, e.getMessage());
+            statusesLoading.remove(boardId);
+        }
+    }
+
+    /**
+     * Loads every page of a reference data endpoint
+     * @param url endpoint URL including the fields projection
+     * @param keys names of the fields an entry can be looked up by
+     * @return immutable map of lower case keys to IDs
+     * @throws TalAdapterSyncException if an API call fails
+     */
+    private Map<String, Integer> load(String url, String... keys) throws TalAdapterSyncException {
+        Map<String, Integer> result = new HashMap<>();
+
+        for (int page = 1; ; page++) {
+            JSONObject response = api.call(url + "&pageSize=" + PAGE_SIZE + "&page=" + page, "GET", null);
+            if (response == null || !response.has("JSONArray"))
+                break;
+
+            JSONArray entries = response.getJSONArray("JSONArray");
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.getJSONObject(i);
+                for (String key : keys) {
+                    String value = entry.optString(key, null);
+                    if (value != null)
+                        result.putIfAbsent(value.toLowerCase(Locale.ROOT).intern(), entry.getInt("id"));
+                }
+            }
+
+            if (entries.length() < PAGE_SIZE)
+                break;
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+}
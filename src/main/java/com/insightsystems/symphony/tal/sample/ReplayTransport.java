@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves ConnectWise requests from recordings made by {@link RecordingTransport}, without network access.
+ *
+ * Requests are matched by method, path and query, whatever the host they are sent to. Repeated requests get the
+ * recorded responses in recording order, the last one being served again once they are exhausted, so the same
+ * traffic always gets the same responses. Responses are served at once, or after the recorded call duration to
+ * reproduce the original timing. Requests that were never recorded get a 404 response.
+ */
+public class ReplayTransport implements ConnectWiseTransport {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ReplayTransport.class);
+
+    private final Map<String, List<RecordedExchange>> exchanges;
+    private final Map<String, Integer> served = new HashMap<>();
+    private final boolean originalTiming;
+
+    private ReplayTransport(Map<String, List<RecordedExchange>> exchanges, boolean originalTiming) {
+        this.exchanges = exchanges;
+        this.originalTiming = originalTiming;
+    }
+
+    /**
+     * Loads recordings
+     * @param source recording file, or directory whose recordings are all loaded in file name order
+     * @param originalTiming whether responses are delayed by their recorded call duration
+     * @return transport serving the recordings
+     * @throws IOException if a recording cannot be read
+     */
+    public static ReplayTransport load(Path source, boolean originalTiming) throws IOException {
+        List<Path> files;
+        if (Files.isDirectory(source)) {
+            try (Stream<Path> list = Files.list(source)) {
+                files = list.filter(path -> path.getFileName().toString().endsWith(RecordedExchange.EXTENSION))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        } else {
+            files = List.of(source);
+        }
+
+        Map<String, List<RecordedExchange>> exchanges = new HashMap<>();
+        int count = 0;
+        for (Path file : files)
+            count += read(file, exchanges);
+
+        logger.info("load: {} recorded ConnectWise exchanges loaded from {} file(s)", count, files.size());
+        return new ReplayTransport(exchanges, originalTiming);
+    }
+
+    /**
+     * @return transport without recordings, answering every request with 404
+     */
+    public static ReplayTransport empty() {
+        return new ReplayTransport(new HashMap<>(), false);
+    }
+
+    private static int read(Path file, Map<String, List<RecordedExchange>> exchanges) throws IOException {
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != RecordedExchange.MAGIC)
+                throw new IOException(file + " is not a ConnectWise recording");
+
+            while (true) {
+                RecordedExchange exchange;
+                try {
+                    exchange = RecordedExchange.readFrom(in);
+                } catch (EOFException e) {
+                    // End of the recording, or exchange cut short by an abrupt stop
+                    break;
+                }
+                exchanges.computeIfAbsent(RecordedExchange.key(exchange.method, exchange.target),
+                        k -> new ArrayList<>()).add(exchange);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public Response send(HttpRequest request, String requestBody) throws InterruptedException {
+        String key = RecordedExchange.key(request.method(), RecordingTransport.target(request.uri()));
+        List<RecordedExchange> recorded = exchanges.get(key);
+        if (recorded == null) {
+            logger.warn("send: no recorded exchange for {}", key);
+            return new Response(404, "{\"code\":\"NotFound\",\"message\":\"Not recorded\"}");
+        }
+
+        RecordedExchange exchange;
+        synchronized (served) {
+            int index = served.merge(key, 1, Integer::sum) - 1;
+            exchange = recorded.get(Math.min(index, recorded.size() - 1));
+        }
+
+        if (originalTiming)
+            TimeUnit.NANOSECONDS.sleep(exchange.durationNanos);
+        return new Response(exchange.statusCode, exchange.responseBody);
+    }
+
+    /**
+     * Restarts the replay, repeated requests get the first recorded responses again
+     */
+    public void rewind() {
+        synchronized (served) {
+            served.clear();
+        }
+    }
+}
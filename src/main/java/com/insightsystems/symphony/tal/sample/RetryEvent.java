@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a retried ConnectWise call or sync
+ */
+@Name("com.insightsystems.symphony.tal.Retry")
+@Label("Retry")
+@Category({"Symphony TAL", "Sync"})
+@Description("ConnectWise call or sync attempted again")
+@StackTrace(false)
+class RetryEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Attempt")
+    int attempt;
+
+    @Label("Reason")
+    String reason;
+
+    /**
+     * Emits a retry event
+     * @param operation retried operation, i.e. "sync 1067758"
+     * @param attempt attempt number, starting at 2 for the first retry
+     * @param reason reason of the previous failure
+     */
+    static void emit(String operation, int attempt, String reason) {
+        RetryEvent event = new RetryEvent();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.attempt = attempt;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+}
@@ -5,19 +5,29 @@
 package com.insightsystems.symphony.tal.sample;
 
 import java.io.IOException;
-import java.net.*;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import com.avispl.symphony.api.tal.TalAdapter;
 import com.avispl.symphony.api.tal.dto.Comment;
-import com.avispl.symphony.api.tal.dto.TicketSourceConfigProperty;
 import com.avispl.symphony.api.tal.dto.TicketSystemConfig;
 import com.insightsystems.symphony.tal.mocks.MockTalConfigService;
 import com.insightsystems.symphony.tal.mocks.MockTalProxy;
@@ -27,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import com.avispl.symphony.api.tal.TalConfigService;
 import com.avispl.symphony.api.tal.TalProxy;
 import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.avispl.symphony.api.tal.dto.UpdateSource;
 import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
 
 //import org.apache.logging.log4j.Level;
@@ -35,7 +46,6 @@ import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
 import org.json.JSONObject;
 import org.json.JSONArray;
 import org.json.JSONException;
-
 import org.springframework.http.HttpStatus;
 
 /**
@@ -64,10 +74,171 @@ public class SampleTalAdapterImpl implements TalAdapter {
     private TalProxy talProxy;
 
     /**
-     * Instance of TicketSystemConfig that contains mappings and destination
-     * ticketing system configuration
+     * ConnectWise call and sync metrics, published over JMX
+     */
+    private final AdapterMetrics metrics = new AdapterMetrics();
+
+    /**
+     * Slowest sampled sync traces, published over JMX
+     */
+    private final SyncTraceRecorder traces = new SyncTraceRecorder(SLOWEST_TRACES);
+
+    /**
+     * Always-on recording of the adapter flight recorder events
+     */
+    private final AdapterFlightRecorder flightRecorder = new AdapterFlightRecorder();
+
+    /**
+     * Versioned snapshot of the TicketSystemConfig that contains mappings and destination
+     * ticketing system configuration, replaced as a whole on every configuration update
+     */
+    private volatile ConfigSnapshot snapshot = ConfigSnapshot.compile(0, null, metrics);
+
+    /**
+     * Board ID used for new tickets when {@link ConnectWiseConfigProperty#BOARD} is not configured
+     */
+    private static final int DEFAULT_BOARD_ID = 199;
+
+    /**
+     * Company ID used for new tickets when {@link ConnectWiseConfigProperty#COMPANY} is not configured
+     */
+    private static final int DEFAULT_COMPANY_ID = 250;
+
+    /**
+     * Format of ConnectWise dates, i.e. "2023-05-04T3:07:42Z"; formatters are immutable and shared by all syncs
+     */
+    private static final DateTimeFormatter CONNECTWISE_DATE_TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'H:m:sX");
+
+    /**
+     * Number of slowest sync traces kept
+     */
+    private static final int SLOWEST_TRACES = 50;
+
+    /**
+     * Time after which ConnectWise reference data is refreshed
+     */
+    private static final long REFERENCE_DATA_TTL = TimeUnit.MINUTES.toMillis(15);
+
+    /**
+     * ConnectWise boards, companies, priorities and statuses, loaded in background on first use
+     */
+    private final ReferenceDataResolver referenceData =
+            new ReferenceDataResolver(this::ConnectWiseAPICall, this::getApiRoot, REFERENCE_DATA_TTL);
+
+    /**
+     * Interval of ConnectWise member directory incremental refreshes
+     */
+    private static final long MEMBER_REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * ConnectWise members, used to resolve Symphony users to member identifiers
+     */
+    private final MemberDirectory memberDirectory =
+            new MemberDirectory(this::ConnectWiseAPICall, this::getApiRoot, MEMBER_REFRESH_INTERVAL);
+
+    /**
+     * Time that must remain before the sync deadline to start syncing comments
+     */
+    private static final long COMMENT_SYNC_MIN_MILLIS = 2000;
+
+    /**
+     * Number of platform threads asynchronous syncs share on Java versions without virtual threads
+     */
+    private static final int SYNC_THREADS = 32;
+
+    /**
+     * Executor of {@link #syncTalTicketAsync(TalTicket)}: a virtual thread per sync on Java 21+,
+     * a pool of {@link #SYNC_THREADS} platform threads otherwise
+     */
+    private volatile ExecutorService syncExecutor;
+
+    /**
+     * Fingerprints of the notes written to ConnectWise, replaced when the configured capacity changes
+     */
+    private volatile NoteFingerprints noteFingerprints;
+
+    /**
+     * Saves {@link #noteFingerprints} periodically, started with the adapter
+     */
+    private volatile ScheduledExecutorService stateSaver;
+
+    /**
+     * {@link System#nanoTime()} of the adapter start, ConnectWise connections ramping up from it
+     */
+    private volatile long startedAt = System.nanoTime();
+
+    /**
+     * Syncs not completed yet, checkpointed if the adapter stops before they are
+     */
+    private final SyncCheckpoint unfinished = new SyncCheckpoint();
+
+    /**
+     * Tickets whose last sync failed, in whole or in part, retried in the background
+     */
+    private final DeadLetterQueue deadLetters = new DeadLetterQueue();
+
+    /**
+     * Retries {@link #deadLetters}, started with the adapter
+     */
+    private volatile ScheduledExecutorService deadLetterRetrier;
+
+    /**
+     * Interval at which dead letters due for retry are looked for, in milliseconds
+     */
+    private static final long DEAD_LETTER_RETRY_INTERVAL = 15_000;
+
+    /**
+     * Maximum number of dead letters retried at once
+     */
+    private static final int DEAD_LETTER_BATCH = 20;
+
+    /**
+     * Receiver of ConnectWise callbacks, started with the adapter if {@link ConnectWiseConfigProperty#CALLBACK_URL}
+     * is configured
+     */
+    private volatile ConnectWiseCallbackListener callbackListener;
+
+    /**
+     * ID of the ConnectWise callback registered by the adapter, null if none
+     */
+    private volatile Integer callbackId;
+
+    /**
+     * {@link System#nanoTime()} once {@link #callbackId} was registered: only ConnectWise reads made after it are
+     * followed by notifications of every change
+     */
+    private volatile long callbackRegisteredAt;
+
+    /**
+     * Description of the callbacks registered by the adapter, followed by its account ID
+     */
+    private static final String CALLBACK_DESCRIPTION = "Symphony TAL ";
+
+    /**
+     * Tickets as last exchanged with Symphony, as many as {@link ConfigSnapshot#getTicketStateCapacity()}
+     */
+    private final SyncedTickets syncedTickets = new SyncedTickets(snapshot.getTicketStateCapacity());
+
+    /**
+     * Identifier of the member the adapter writes to ConnectWise as, learned from its writes; null until then
+     */
+    private volatile String ownMember;
+
+    /**
+     * Set once the adapter is stopping, new syncs are then refused
+     */
+    private volatile boolean stopping;
+
+    /**
+     * Interval at which the adapter checks whether running syncs completed while stopping, in milliseconds
+     */
+    private static final long DRAIN_POLL_INTERVAL = 50;
+
+    /**
+     * Time allowed for a periodic save of the note fingerprints to complete when the adapter stops, in milliseconds
      */
-    private TicketSystemConfig config;
+    private static final long STATE_SAVE_TIMEOUT = 5_000;
 
     /**
      * Account identifier - have to be provided to 3rd party adapter implementors by Symphony team
@@ -95,6 +266,15 @@ public class SampleTalAdapterImpl implements TalAdapter {
     @Override
     public void init() {
         logger.info("Initializing Sample TAL adapter");
+        startedAt = System.nanoTime();
+
+        metrics.setQueueDepth(() -> snapshot.getClient().getQueueLength());
+        metrics.setDeadLetters(deadLetters);
+        metrics.register(accountId.toString());
+        traces.register(accountId.toString());
+        flightRecorder.start(accountId.toString());
+        syncExecutor = SyncExecutors.newSyncExecutor(SYNC_THREADS);
+        logger.info("init: asynchronous syncs run on {}", SyncExecutors.describe());
 
         // In order to get ticket updates from Symphony adapter must subscribe to this explicitly here
         // After subscription is done, all updates will come to this adapter instance via calls to syncTalTicket method
@@ -112,15 +292,681 @@ public class SampleTalAdapterImpl implements TalAdapter {
         talConfigService.subscribeForTicketSystemConfigUpdate(accountId,
                 (ticketSystemConfig) -> setConfig(ticketSystemConfig));
 
+        startStateSaver();
+        startDeadLetterRetrier();
+        startCallbacks();
+        resume();
+
     }
 
     /**
      * Called by Symphony when application is about to exit
+     *
+     * New syncs are refused with {@link HttpStatus#SERVICE_UNAVAILABLE}, running syncs get the drain timeout of the
+     * configuration to complete, then the syncs still unfinished are interrupted and checkpointed, to be resumed on
+     * the next start.
      */
     @Override
     public void destroy() {
+        stopping = true;
+        stopCallbacks();
+        ScheduledExecutorService retrier = deadLetterRetrier;
+        if (retrier != null)
+            retrier.shutdownNow();
+        ConfigSnapshot current = snapshot;
+        ExecutorService executor = syncExecutor;
+        if (executor != null)
+            executor.shutdown();
+
+        long drainTimeout = current.getDrainTimeoutMillis();
+        if (drainTimeout <= 0 || !drain(executor, Deadline.after(drainTimeout))) {
+            logger.warn("destroy: {} sync(s) still running after {}ms - stopping them", metrics.getInFlightSyncs(),
+                    Math.max(0, drainTimeout));
+            if (executor != null) {
+                // Syncs still queued are refused at once, completing their futures, and stay tracked for the checkpoint
+                for (Runnable queued : executor.shutdownNow())
+                    queued.run();
+            }
+        }
+        checkpoint(current);
+        stopStateSaver();
+        saveStates();
+
         // destroy any persistent resources
         // such as thread pools or persistent connections
+        referenceData.close();
+        memberDirectory.close();
+        metrics.unregister();
+        traces.unregister();
+        flightRecorder.close();
+        current.retire();
+    }
+
+    /**
+     * Waits for running syncs to complete
+     * @param executor executor of asynchronous syncs, already shut down; null if the adapter was not initialized
+     * @param deadline time by which syncs must have completed
+     * @return true if all syncs completed
+     */
+    private boolean drain(ExecutorService executor, Deadline deadline) {
+        try {
+            if (executor != null && !executor.awaitTermination(deadline.remainingMillis(), TimeUnit.MILLISECONDS))
+                return false;
+
+            // Syncs called directly by Symphony run on its own threads
+            while (metrics.getInFlightSyncs() > 0) {
+                if (deadline.isExpired())
+                    return false;
+                Thread.sleep(DRAIN_POLL_INTERVAL);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the syncs still unfinished to the checkpoint file of the adapter
+     * @param current configuration the checkpoint directory is read from
+     */
+    private void checkpoint(ConfigSnapshot current) {
+        List<TalTicket> tickets = unfinished.getUnfinished();
+        if (tickets.isEmpty())
+            return;
+
+        Path file = checkpointFile(current);
+        if (file == null) {
+            logger.warn("checkpoint: {} unfinished sync(s) dropped - {} not configured", tickets.size(),
+                    ConnectWiseConfigProperty.CHECKPOINT_DIR);
+            return;
+        }
+        try {
+            SyncCheckpoint.write(file, tickets);
+            logger.info("checkpoint: {} unfinished sync(s) checkpointed to {}", tickets.size(), file);
+        } catch (IOException e) {
+            logger.error("checkpoint: unable to write {} - {} unfinished sync(s) dropped: {}", file, tickets.size(),
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Loads, in the background, the note fingerprints saved when the adapter last stopped and the dead letters, then
+     * resumes the syncs checkpointed. Synced tickets are pushed to Symphony, since no caller receives them.
+     */
+    private void resume() {
+        Path directory = checkpointDirectory(snapshot);
+        if (directory == null)
+            return;
+
+        syncExecutor.execute(() -> {
+            loadStates(directory);
+            openDeadLetters(DeadLetterQueue.file(directory, accountId.toString()));
+
+            Path file = SyncCheckpoint.file(directory, accountId.toString());
+            List<TalTicket> tickets;
+            try {
+                tickets = SyncCheckpoint.take(file);
+            } catch (IOException e) {
+                logger.error("resume: unable to read checkpoint {} - {}", file, e.getMessage());
+                return;
+            }
+            if (tickets.isEmpty())
+                return;
+
+            logger.info("resume: resuming {} sync(s) checkpointed to {}", tickets.size(), file);
+            for (TalTicket ticket : tickets)
+                syncInBackground(ticket, "resume");
+        });
+    }
+
+    /**
+     * Syncs a ticket no caller waits for, pushing it to Symphony once synced
+     * @param ticket ticket to sync
+     * @param caller name of the calling method, for logs
+     * @return future completed once the ticket is synced and pushed, or its sync failed
+     */
+    private CompletableFuture<Void> syncInBackground(TalTicket ticket, String caller) {
+        return syncTalTicketAsync(ticket).handle((synced, error) -> {
+            if (error != null) {
+                logger.warn("{}: sync of ticket {} failed - {}", caller, ticket.getSymphonyId(), error.getMessage());
+                return null;
+            }
+            try {
+                talProxy.pushUpdatesToTal(synced);
+            } catch (RuntimeException e) {
+                logger.error("{}: unable to push ticket {} to Symphony - {}", caller, ticket.getSymphonyId(),
+                        e.getMessage());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Starts receiving ConnectWise callbacks if a callback URL is configured, and registers the callback with
+     * ConnectWise in the background
+     */
+    private void startCallbacks() {
+        String configured = snapshot.get(ConnectWiseConfigProperty.CALLBACK_URL);
+        if (configured == null || configured.trim().isEmpty())
+            return;
+
+        URI url;
+        try {
+            url = URI.create(configured.trim());
+        } catch (IllegalArgumentException e) {
+            logger.error("startCallbacks: invalid {} {} - {}", ConnectWiseConfigProperty.CALLBACK_URL, configured,
+                    e.getMessage());
+            return;
+        }
+        if (url.getHost() == null || !("http".equals(url.getScheme()) || "https".equals(url.getScheme()))) {
+            logger.error("startCallbacks: invalid {} {} - not an HTTP URL", ConnectWiseConfigProperty.CALLBACK_URL,
+                    configured);
+            return;
+        }
+
+        int port = snapshot.getCallbackPort();
+        if (port < 0)
+            port = url.getPort() >= 0 ? url.getPort() : "https".equals(url.getScheme()) ? 443 : 80;
+        ConnectWiseCallbackListener listener = new ConnectWiseCallbackListener(url, port,
+                () -> snapshot.getCallbackCoalesceMillis(), member -> member != null && member.equals(ownMember),
+                new ConnectWiseCallbackListener.ChangeHandler() {
+                    @Override
+                    public void notified(long ticketId) {
+                        syncedTickets.notified(ticketId);
+                    }
+
+                    @Override
+                    public void changed(long ticketId, boolean fields, boolean notes) {
+                        callbackReceived(ticketId, fields, notes);
+                    }
+                }, metrics);
+        try {
+            listener.start();
+        } catch (IOException e) {
+            logger.error("startCallbacks: unable to listen on port {} - ConnectWise callbacks not received: {}", port,
+                    e.getMessage());
+            return;
+        }
+        callbackListener = listener;
+        syncExecutor.execute(() -> registerCallback(listener));
+    }
+
+    /**
+     * Registers the callback of the listener with ConnectWise, replacing the callbacks left by a previous run of the
+     * adapter
+     * @param listener started listener
+     */
+    private void registerCallback(ConnectWiseCallbackListener listener) {
+        // Still queued when the adapter stopped: nothing would remove the callback
+        if (stopping) {
+            logger.debug("registerCallback: adapter stopping - callback not registered");
+            return;
+        }
+        String apiRoot = getApiRoot();
+        if (apiRoot == null) {
+            logger.warn("registerCallback: URL or API_PATH not setup on Config - callback not registered");
+            return;
+        }
+
+        String description = CALLBACK_DESCRIPTION + accountId;
+        try {
+            // A run that did not stop cleanly left its callback, with a token no longer accepted
+            JSONObject stale = ConnectWiseAPICall(apiRoot + "/system/callbacks?conditions=" +
+                    URLEncoder.encode("description=\"" + description + "\"", StandardCharsets.UTF_8), "GET", null);
+            JSONArray callbacks = stale != null ? stale.optJSONArray("JSONArray") : null;
+            for (int i = 0; callbacks != null && i < callbacks.length(); i++) {
+                int id = callbacks.getJSONObject(i).getInt("id");
+                ConnectWiseAPICall(apiRoot + "/system/callbacks/" + id, "DELETE", null);
+                logger.info("registerCallback: stale callback {} removed", id);
+            }
+
+            JSONObject callback = new JSONObject()
+                    .put("description", description)
+                    .put("url", listener.getRegisteredUrl())
+                    .put("objectId", 1)
+                    .put("type", "Ticket")
+                    .put("level", "owner")
+                    .put("inactiveFlag", false);
+            JSONObject registered = ConnectWiseAPICall(apiRoot + "/system/callbacks", "POST", callback.toString());
+            int id = registered.getInt("id");
+            callbackRegisteredAt = System.nanoTime();
+            callbackId = id;
+            logger.info("registerCallback: callback {} registered", id);
+            if (stopping && callbackId != null) {
+                // The adapter stopped during the registration, possibly before the callback could be removed
+                ConnectWiseAPICall(apiRoot + "/system/callbacks/" + id, "DELETE", null);
+                callbackId = null;
+                logger.info("registerCallback: adapter stopping - callback {} removed", id);
+            }
+        } catch (TalAdapterSyncException | JSONException e) {
+            logger.error("registerCallback: unable to register ConnectWise callback - {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stops receiving ConnectWise callbacks and removes the callback registered with ConnectWise
+     */
+    private void stopCallbacks() {
+        ConnectWiseCallbackListener listener = callbackListener;
+        if (listener == null)
+            return;
+
+        listener.stop();
+        callbackListener = null;
+        Integer id = callbackId;
+        String apiRoot = getApiRoot();
+        if (id == null || apiRoot == null)
+            return;
+        try {
+            ConnectWiseAPICall(apiRoot + "/system/callbacks/" + id, "DELETE", null);
+            callbackId = null;
+            logger.info("stopCallbacks: callback {} removed", id);
+        } catch (TalAdapterSyncException e) {
+            // Removed by the next start, its token is not accepted in the meantime
+            logger.warn("stopCallbacks: unable to remove callback {} - {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * Fetches, in the background, the changes ConnectWise notified for a ticket
+     * @param ticketId ConnectWise ticket ID
+     * @param fields true if the ticket itself changed
+     * @param notes true if notes of the ticket changed
+     */
+    private void callbackReceived(long ticketId, boolean fields, boolean notes) {
+        if (stopping)
+            return;
+        try {
+            syncExecutor.execute(() -> pushConnectWiseChanges(ticketId, fields, notes));
+        } catch (RejectedExecutionException e) {
+            logger.debug("callbackReceived: adapter stopped - changes of ticket {} dropped", ticketId);
+        }
+    }
+
+    /**
+     * Reads the changed parts of a ConnectWise ticket and pushes the ticket to Symphony if they differ from its last
+     * exchange. ConnectWise reports note changes as ticket updates too, so notes are read as well when a ticket update
+     * changed none of its fields.
+     * @param ticketId ConnectWise ticket ID
+     * @param fields true if the ticket itself changed
+     * @param notes true if notes of the ticket changed
+     */
+    private void pushConnectWiseChanges(long ticketId, boolean fields, boolean notes) {
+        // Still queued when the adapter stopped: not run on the stopping thread
+        if (stopping) {
+            logger.debug("pushConnectWiseChanges: adapter stopping - changes of ticket {} dropped", ticketId);
+            return;
+        }
+        SyncedTickets.Synced synced = syncedTickets.get(ticketId);
+        if (synced == null) {
+            // Symphony sends the ticket with its next update, the changes are synced then
+            logger.debug("pushConnectWiseChanges: ticket {} not synced since the start - not pushed", ticketId);
+            return;
+        }
+
+        TalTicket ticket = synced.getTicket();
+        Map<String, SyncedTickets.Origin> origins = new HashMap<>(synced.getOrigins());
+        ConfigSnapshot snapshot = acquireSnapshot();
+        MappingSnapshot mappings = snapshot.getMappings();
+        SyncContext context = new SyncContext(snapshot, SyncTrace.NOOP, SyncPriority.of(ticket.getPriority()),
+                Deadline.after(snapshot.getSyncDeadlineMillis()));
+        long readAt = System.nanoTime();
+        try {
+            boolean changed = false;
+            JSONObject CWTicket = synced.getConnectWise();
+            if (fields) {
+                CWTicket = context.getTicket(ticket.getThirdPartyLink());
+                // A field still holding the ConnectWise value last exchanged was not changed on ConnectWise, whatever
+                // its mapping to Symphony: it keeps its Symphony value. Priorities are compared by name but mapped
+                // by ID
+                TalTicket fromConnectWise = new TalTicket();
+                for (String field : SyncedTickets.FIELDS) {
+                    String value = SyncedTickets.connectWiseValue(CWTicket, field);
+                    long digest = ConnectWiseKeys.digest(value);
+                    SyncedTickets.Origin origin = origins.get(field);
+                    if (origin != null && origin.getConnectWiseDigest() == digest)
+                        continue;
+                    origins.put(field, new SyncedTickets.Origin(UpdateSource.THIRD_PARTY, digest,
+                            ConflictResolver.lastUpdated(CWTicket)));
+                    if ("summary".equals(field))
+                        fromConnectWise.setSubject(value);
+                    else if ("priority".equals(field))
+                        fromConnectWise.setPriority(priorityId(CWTicket, value));
+                    else if ("status".equals(field))
+                        fromConnectWise.setStatus(value);
+                    else
+                        fromConnectWise.setAssignedTo(value);
+                }
+                TicketMapper.mapThirdPartyToSymphony(fromConnectWise, mappings, memberDirectory);
+
+                changed = mergeField(fromConnectWise.getSubject(), ticket.getSubject(), ticket::setSubject);
+                changed |= mergeField(fromConnectWise.getPriority(), ticket.getPriority(), ticket::setPriority);
+                changed |= mergeField(fromConnectWise.getStatus(), ticket.getStatus(), ticket::setStatus);
+                changed |= mergeField(fromConnectWise.getAssignedTo(), ticket.getAssignedTo(),
+                        ticket::setAssignedTo);
+            }
+            if (notes || !changed) {
+                JSONArray CWComments = context.call(ticket.getThirdPartyLink() + "/notes", "GET", null)
+                        .getJSONArray("JSONArray");
+                changed |= mergeNotes(ticket, CWComments, mappings);
+            }
+
+            if (changed) {
+                talProxy.pushUpdatesToTal(ticket);
+                metrics.callbackPushed();
+                logger.debug("pushConnectWiseChanges: ConnectWise changes of ticket {} pushed to Symphony", ticketId);
+            } else {
+                // i.e. the adapter's own note writes, which ConnectWise notifies under the note creator
+                logger.debug("pushConnectWiseChanges: ticket {} unchanged since its last exchange", ticketId);
+                metrics.callbackEcho();
+            }
+            syncedTickets.put(ticket, CWTicket, origins, readAt, synced.isSettled());
+        } catch (TalAdapterSyncException e) {
+            logger.error("pushConnectWiseChanges: unable to read ticket {} - {}", ticketId, e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("pushConnectWiseChanges: unable to push ticket {} to Symphony - {}", ticketId,
+                    e.getMessage());
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * @param CWTicket ConnectWise ticket
+     * @param name name of the ticket priority
+     * @return ID of the ticket priority, which the priority mapping to Symphony is keyed by; the name if missing
+     */
+    private static String priorityId(JSONObject CWTicket, String name) {
+        JSONObject priority = CWTicket.optJSONObject("priority");
+        return priority != null && priority.has("id") ? priority.getInt("id") + "" : name;
+    }
+
+    /**
+     * @param talTicket synced ticket
+     * @param CWTicket ConnectWise ticket, as last returned by ConnectWise
+     * @param context state of the sync
+     * @return origins of the ticket fields: the side the sync took each value from and when that side modified the
+     * ticket, or for values both sides agreed on the origin of the previous exchange; the origins of the previous
+     * exchange themselves when they all still hold
+     */
+    private Map<String, SyncedTickets.Origin> fieldOrigins(TalTicket talTicket, JSONObject CWTicket,
+                                                           SyncContext context) {
+        Map<String, SyncedTickets.Origin> previous =
+                syncedTickets.origins(ConnectWiseKeys.id(talTicket.getThirdPartyId()));
+        Map<String, SyncedTickets.Origin> origins = new HashMap<>();
+        boolean unchanged = true;
+        for (String field : SyncedTickets.FIELDS) {
+            long digest = ConnectWiseKeys.digest(SyncedTickets.connectWiseValue(CWTicket, field));
+            UpdateSource source = context.getFieldSource(field);
+            unchanged &= source == null && previous.containsKey(field) &&
+                    previous.get(field).getConnectWiseDigest() == digest;
+            if (source == null && previous.containsKey(field)) {
+                source = previous.get(field).getSource();
+                origins.put(field, new SyncedTickets.Origin(source, digest, previous.get(field).getModified()));
+            } else if (source == UpdateSource.THIRD_PARTY) {
+                origins.put(field, new SyncedTickets.Origin(source, digest, ConflictResolver.lastUpdated(CWTicket)));
+            } else {
+                origins.put(field, new SyncedTickets.Origin(UpdateSource.SYMPHONY, digest,
+                        talTicket.getLastModified() != null ? talTicket.getLastModified() : 0));
+            }
+        }
+        return unchanged ? previous : origins;
+    }
+
+    /**
+     * Resolves a ticket field Symphony and ConnectWise disagree on, see {@link ConflictResolver}
+     * @param requestResult result of {@link #createRequestBody(String, String, String, boolean)} for the field
+     * @param field ConnectWise field, one of {@link SyncedTickets#FIELDS}
+     * @param CWTicket ConnectWise ticket
+     * @param context state of the sync
+     * @return "Update Symphony" if the field takes the ConnectWise value, the request result otherwise
+     */
+    private String resolveConflict(String requestResult, String field, JSONObject CWTicket, SyncContext context) {
+        if (requestResult == null || Objects.equals(requestResult, "Update Symphony") ||
+                context.getResolver().resolveField(field, CWTicket) != UpdateSource.THIRD_PARTY)
+            return requestResult;
+        logger.debug("resolveConflict: {} changed on ConnectWise after Symphony - keeping the ConnectWise value",
+                field);
+        metrics.connectWiseKept();
+        return "Update Symphony";
+    }
+
+    /**
+     * Learns the member the adapter writes to ConnectWise as, from a ticket it wrote
+     * @param written ticket as returned by ConnectWise after the write, may be null
+     */
+    private void learnOwnMember(JSONObject written) {
+        JSONObject info = written != null ? written.optJSONObject("_info") : null;
+        String member = info != null ? info.optString("updatedBy", null) : null;
+        if (member != null && !member.equals(ownMember)) {
+            ownMember = member;
+            logger.info("learnOwnMember: ConnectWise changes made by {} are taken as the adapter's own", member);
+        }
+    }
+
+    /**
+     * Takes a ConnectWise value over on the Symphony ticket
+     * @param connectWiseValue value on ConnectWise, mapped to Symphony; ignored if null
+     * @param symphonyValue value on the Symphony ticket
+     * @param setter setter of the value on the Symphony ticket
+     * @return true if the value changed
+     */
+    private static boolean mergeField(String connectWiseValue, String symphonyValue,
+                                      Consumer<String> setter) {
+        if (connectWiseValue == null || Objects.equals(connectWiseValue, symphonyValue))
+            return false;
+        setter.accept(connectWiseValue);
+        return true;
+    }
+
+    /**
+     * Takes the ConnectWise notes over on the Symphony ticket: the description, the text of known comments and the
+     * notes Symphony does not have yet
+     * @param ticket Symphony ticket, as last synced
+     * @param CWComments JSONArray with all comments found on the ConnectWise ticket
+     * @param mappings mappings the comment creators are mapped with
+     * @return true if the ticket changed
+     */
+    private boolean mergeNotes(TalTicket ticket, JSONArray CWComments, MappingSnapshot mappings) {
+        boolean changed = false;
+        // Notes still holding the text the adapter wrote are its own changes, Symphony has the text they came from
+        JSONObject descriptionCW = findDescription(CWComments);
+        if (descriptionCW != null &&
+                !noteFingerprints.isWritten(descriptionCW.getInt("id") + "", descriptionCW.getString("text")) &&
+                !noteFingerprints.unchanged(descriptionCW.getInt("id") + "", ticket.getDescription(),
+                        descriptionCW.getString("text"))) {
+            ticket.setDescription(descriptionCW.getString("text"));
+            changed = true;
+        }
+
+        Map<String, Comment> byId = new HashMap<>();
+        for (Comment comment : ticket.getComments()) {
+            if (comment.getThirdPartyId() != null)
+                byId.put(comment.getThirdPartyId(), comment);
+        }
+        TalTicket added = new TalTicket();
+        added.setComments(new HashSet<>());
+        for (int i = 0; i < CWComments.length(); i++) {
+            JSONObject commentCW = CWComments.getJSONObject(i);
+            if (commentCW == descriptionCW)
+                continue;
+            Comment comment = byId.get(commentCW.getInt("id") + "");
+            if (comment == null) {
+                added.getComments().add(commentFromConnectWise(commentCW));
+            } else if (!noteFingerprints.isWritten(comment.getThirdPartyId(), commentCW.getString("text")) &&
+                    !noteFingerprints.unchanged(comment.getThirdPartyId(), comment.getText(),
+                            commentCW.getString("text"))) {
+                // Comments are hashed on their text: replaced rather than changed in the set
+                ticket.getComments().remove(comment);
+                comment.setText(commentCW.getString("text"));
+                ticket.getComments().add(comment);
+                changed = true;
+            }
+        }
+        if (!added.getComments().isEmpty()) {
+            TicketMapper.mapThirdPartyToSymphony(added, mappings, memberDirectory);
+            ticket.getComments().addAll(added.getComments());
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Reads the dead letters kept when the adapter last stopped, and keeps the queue in the checkpoint directory
+     * @param file dead letter file
+     */
+    private void openDeadLetters(Path file) {
+        try {
+            int read = deadLetters.open(file);
+            if (read > 0)
+                logger.info("openDeadLetters: {} dead letter(s) read from {}", read, file);
+        } catch (IOException e) {
+            logger.error("openDeadLetters: unable to read {} - dead letters kept in memory only: {}", file,
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Starts retrying the dead letters due
+     */
+    private void startDeadLetterRetrier() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cw-dead-letters");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::retryDeadLetters, DEAD_LETTER_RETRY_INTERVAL,
+                DEAD_LETTER_RETRY_INTERVAL, TimeUnit.MILLISECONDS);
+        deadLetterRetrier = executor;
+    }
+
+    /**
+     * Resyncs a batch of the dead letters due and waits for it, a successful sync dropping its letter
+     */
+    private void retryDeadLetters() {
+        if (stopping)
+            return;
+
+        List<TalTicket> due = deadLetters.takeDue(DEAD_LETTER_BATCH);
+        if (due.isEmpty())
+            return;
+
+        logger.info("retryDeadLetters: retrying {} of {} dead letter(s)", due.size(), deadLetters.size());
+        List<CompletableFuture<Void>> retries = new ArrayList<>(due.size());
+        try {
+            for (TalTicket ticket : due) {
+                retries.add(syncInBackground(ticket, "retryDeadLetters"));
+                metrics.retried();
+            }
+        } catch (IllegalStateException e) {
+            logger.debug("retryDeadLetters: adapter stopped - {}", e.getMessage());
+        }
+        try {
+            CompletableFuture.allOf(retries.toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // each retry handles its own failure
+        }
+    }
+
+    /**
+     * Loads saved note fingerprints, those of notes written since the start being kept.
+     *
+     * Ticket states are not saved: ConnectWise notifies no change made while the adapter was down, notes included,
+     * so the first sync of a ticket after a restart reads it in full whatever its saved state
+     * @param directory checkpoint directory
+     */
+    private void loadStates(Path directory) {
+        Path file = NoteFingerprints.file(directory, accountId.toString());
+        try {
+            int loaded = noteFingerprints.load(file);
+            if (loaded > 0)
+                logger.info("loadStates: {} note fingerprint(s) loaded from {}", loaded, file);
+        } catch (IOException e) {
+            logger.error("loadStates: unable to read {} - {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the note fingerprints to the checkpoint directory, if configured
+     */
+    private void saveStates() {
+        Path directory = checkpointDirectory(snapshot);
+        NoteFingerprints fingerprints = noteFingerprints;
+        if (directory == null || fingerprints == null)
+            return;
+
+        Path file = NoteFingerprints.file(directory, accountId.toString());
+        try {
+            int saved = fingerprints.save(file);
+            logger.debug("saveStates: {} note fingerprint(s) saved to {}", saved, file);
+        } catch (IOException e) {
+            logger.error("saveStates: unable to write {} - {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Starts saving the note fingerprints at the interval of the configuration
+     */
+    private void startStateSaver() {
+        long interval = snapshot.getStateSaveIntervalMillis();
+        if (interval <= 0)
+            return;
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cw-state-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::saveStates, interval, interval, TimeUnit.MILLISECONDS);
+        stateSaver = executor;
+    }
+
+    /**
+     * Stops saving the note fingerprints periodically, waiting for a save in progress so that it does not race the
+     * final one
+     */
+    private void stopStateSaver() {
+        ScheduledExecutorService executor = stateSaver;
+        if (executor == null)
+            return;
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(STATE_SAVE_TIMEOUT, TimeUnit.MILLISECONDS))
+                logger.warn("stopStateSaver: note fingerprint save still in progress");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param current configuration the checkpoint directory is read from
+     * @return checkpoint file of this adapter, null if no checkpoint directory is configured
+     */
+    private Path checkpointFile(ConfigSnapshot current) {
+        Path directory = checkpointDirectory(current);
+        return directory != null ? SyncCheckpoint.file(directory, accountId.toString()) : null;
+    }
+
+    /**
+     * @param current configuration the checkpoint directory is read from
+     * @return checkpoint directory, null if not configured
+     */
+    private Path checkpointDirectory(ConfigSnapshot current) {
+        String directory = current.get(ConnectWiseConfigProperty.CHECKPOINT_DIR);
+        if (directory == null || directory.trim().isEmpty())
+            return null;
+
+        try {
+            return Paths.get(directory.trim());
+        } catch (InvalidPathException e) {
+            logger.error("checkpointDirectory: invalid {} {} - {}", ConnectWiseConfigProperty.CHECKPOINT_DIR,
+                    directory, e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -131,14 +977,73 @@ public class SampleTalAdapterImpl implements TalAdapter {
      */
     @Override
     public TalTicket syncTalTicket(TalTicket talTicket) throws TalAdapterSyncException {
+        return sync(talTicket, unfinished.track(talTicket));
+    }
+
+    /**
+     * Syncs a ticket, tracked until it completes so that it is checkpointed if the adapter stops first
+     * @param talTicket instance of ticket that contains updated data
+     * @param id identifier of the sync in {@link #unfinished}
+     * @return synced ticket
+     * @throws TalAdapterSyncException if the sync fails, with {@link HttpStatus#SERVICE_UNAVAILABLE} if the adapter
+     * is stopping
+     */
+    private TalTicket sync(TalTicket talTicket, long id) throws TalAdapterSyncException {
+        if (stopping) {
+            logger.warn("syncTalTicket: adapter stopping - ticket {} not synced", talTicket.getSymphonyId());
+            throw new TalAdapterSyncException("Adapter is stopping", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        // capture the configuration once so that a configuration update cannot change it mid-sync
+        ConfigSnapshot snapshot = acquireSnapshot();
+        MappingSnapshot mappings = snapshot.getMappings();
+        // the Symphony priority, before its mapping to ConnectWise, orders the calls of the sync when queued
+        SyncContext context = new SyncContext(snapshot,
+                traces.start(talTicket.getSymphonyId(), snapshot.getTraceSampleRate()),
+                SyncPriority.of(talTicket.getPriority()), Deadline.after(snapshot.getSyncDeadlineMillis()));
+        SyncTrace trace = context.getTrace();
+        boolean succeeded = false;
+        boolean blind = false;
+        // ConnectWise reads stand for ConnectWise only while callbacks are registered
+        boolean callbacks = callbackId != null;
+        long registeredAt = callbackRegisteredAt;
+        long knownMaxAge = TimeUnit.MILLISECONDS.toNanos(snapshot.getKnownTicketMaxAgeMillis());
+        TalAdapterSyncException failure = null;
+        long start = System.nanoTime();
+        metrics.syncStarted();
+        SyncEvent event = new SyncEvent();
+        event.begin();
         try {
+            // Symphony resending the ticket last exchanged, i.e. echoing a push, while ConnectWise notified no change
+            // since: there is nothing to sync
+            if (callbacks && syncedTickets.isEcho(talTicket, registeredAt, knownMaxAge)) {
+                logger.debug("syncTalTicket: ticket {} unchanged since its last exchange - not synced",
+                        talTicket.getSymphonyId());
+                trace.decision("echo");
+                metrics.syncEcho();
+                succeeded = true;
+                return talTicket;
+            }
+
+            // The last exchange of the ticket tells which side changed a value both sides disagree on; with no
+            // ConnectWise change notified since, the ConnectWise ticket as then read stands for ConnectWise
+            SyncedTickets.Synced last = syncedTickets.last(ConnectWiseKeys.id(talTicket.getThirdPartyId()));
+            if (last != null && (talTicket.getThirdPartyLink() == null ||
+                    !talTicket.getThirdPartyLink().equals(last.getTicket().getThirdPartyLink())))
+                last = null;
+            context.resolveWith(new ConflictResolver(last, talTicket, noteFingerprints));
+            JSONObject known = callbacks && last != null && last.isFresh(registeredAt, knownMaxAge) ?
+                    last.getConnectWise() : null;
+
             // map status, priorities, users to comply with 3rd party ticketing system
+            long stage = trace.begin();
             try {
-                TicketMapper.mapSymphonyToThirdParty(talTicket, config);
+                TicketMapper.mapSymphonyToThirdParty(talTicket, mappings, memberDirectory);
             } catch (NullPointerException e) {
                 logger.error("syncTalTicket: error mapping Ticket info to CW equivalent");
                 throw e;
             }
+            trace.span("map", stage);
 
             // 1. make call to 3rd party ticketing system
 
@@ -153,32 +1058,48 @@ public class SampleTalAdapterImpl implements TalAdapter {
             boolean createTicket = true; // If adapter needs to create ConnectWise ticket
             boolean connectionFailed = false; // If connection was attempted but failed
 
-            if (config.getTicketSourceConfig().get(TicketSourceConfigProperty.URL) == null) {
+            if (snapshot.getUrl() == null) {
                 logger.warn("syncTalTicket: URL not setup on Config");
             }
-            if (config.getTicketSourceConfig().get(TicketSourceConfigProperty.API_PATH) == null) {
+            if (snapshot.getApiPath() == null) {
                 logger.warn("syncTalTicket: API_PATH not setup on Config");
             }
 
             // If ticket has Third Party ID and Third Party Link (already exists in ConnectWise)
             if (talTicket.getThirdPartyId() != null || talTicket.getThirdPartyLink() != null) {
-                logger.info("syncTalTicket: Ticket has ID or Third Party link");
+                logger.debug("syncTalTicket: Ticket has ID or Third Party link");
 
                 // Try to access ticket via Third Party Link
                 url = talTicket.getThirdPartyLink();
 
                 // API call body
-                logger.info("syncTalTicket: Attempting API call using Third Party Link");
+                logger.debug("syncTalTicket: Attempting API call using Third Party Link");
+                stage = trace.begin();
                 try {
-                    CWTicket = ConnectWiseAPICall(url, "GET", null);
+                    if (known != null) {
+                        // Only the fields Symphony changed since the last exchange differ: they are written blind
+                        CWTicket = known;
+                        blind = true;
+                        context.connectedBy("known");
+                        metrics.ticketReadSkipped();
+                    } else {
+                        CWTicket = context.getTicket(url);
+                        context.connectedBy("link");
+                    }
                     connectionByLink = true; // Connection was successful using ThirdPartyLink
+                } catch (TalAdapterSyncException e) {
+                    logger.error("syncTalTicket: Attempt failed - {}", e.getMessage());
+                    // A timeout says nothing about the ticket existing: never go on to create a duplicate
+                    if (Deadline.isTimeout(e))
+                        throw e;
                 } catch (Exception e) {
-                    logger.error("syncTalTicket: Attempt failed - " + e.getMessage());
+                    logger.error("syncTalTicket: Attempt failed - {}", e.getMessage());
                 }
+                trace.span(blind ? "known" : "link GET", stage);
 
                 // If response is null API call resulted in error: try manually building url
                 if (CWTicket == null) {
-                    logger.info("syncTalTicket: Attempting API call using Third Party ID");
+                    logger.debug("syncTalTicket: Attempting API call using Third Party ID");
 
                     // Build url from config and ticket Third Party ID:
                     // URL example: "https://connect.myCompany.com.au"
@@ -186,15 +1107,22 @@ public class SampleTalAdapterImpl implements TalAdapter {
                     // ThirdPartyId example: "187204"
                     // url example: "https://connect.myCompany.com.au/v4_6_release/apis/3.0/service/tickets/187204"
 
-                    url = config.getTicketSourceConfig().get(TicketSourceConfigProperty.URL) +
-                            config.getTicketSourceConfig().get(TicketSourceConfigProperty.API_PATH) +
+                    url = snapshot.getUrl() +
+                            snapshot.getApiPath() +
                             "/" + talTicket.getThirdPartyId();
 
+                    stage = trace.begin();
                     try {
-                        CWTicket = ConnectWiseAPICall(url, "GET", null);
+                        CWTicket = context.getTicket(url);
+                        context.connectedBy("id");
+                    } catch (TalAdapterSyncException e) {
+                        logger.error("syncTalTicket: Attempt failed - {}", e.getMessage());
+                        if (Deadline.isTimeout(e))
+                            throw e;
                     } catch (Exception e) {
-                        logger.error("syncTalTicket: Attempt failed - " + e.getMessage());
+                        logger.error("syncTalTicket: Attempt failed - {}", e.getMessage());
                     }
+                    trace.span("ID GET", stage);
                 }
 
                 // if response is still null API calls failed
@@ -204,11 +1132,11 @@ public class SampleTalAdapterImpl implements TalAdapter {
 
                     // Check if a connectionFailed already happen to prevent creating multiple tickets
                     if (Objects.equals(talTicket.getExtraParams().get("connectionFailed"), "true")) {
-                        logger.info("synTalTicket: Ticket has failed before - not creating new ticket");
+                        logger.debug("synTalTicket: Ticket has failed before - not creating new ticket");
                         //createTicket = false;
                         throw new TalAdapterSyncException("Cannot sync TAL ticket");
                     } else {
-                        logger.info("syncTalTicket: Attempting to create new ticket");
+                        logger.debug("syncTalTicket: Attempting to create new ticket");
                         connectionFailed = true;
                     }
 
@@ -216,7 +1144,7 @@ public class SampleTalAdapterImpl implements TalAdapter {
                 // if response has value it means API call was successful
                 else {
                     createTicket = false;
-                    logger.info("syncTalTicket: Attempt successful");
+                    logger.debug("syncTalTicket: Attempt successful");
 
                     // Add extra parameter to show connection was successful
                     if (talTicket.getExtraParams().putIfAbsent("connectionFailed", "false") != null) {
@@ -229,10 +1157,10 @@ public class SampleTalAdapterImpl implements TalAdapter {
             // If ticket does not exist in ConnectWise: Create ticket in ConnectWise
             if (createTicket) {
                 if (!connectionFailed) {
-                    logger.info("syncTalTicket: Ticket has no ID and Third Party Link");
+                    logger.debug("syncTalTicket: Ticket has no ID and Third Party Link");
                 } else {
                     // Add extra parameter to not duplicate ticket in case it happens again
-                    System.out.println("Setting the connectionFailed parameter: true");
+                    logger.debug("syncTalTicket: Setting the connectionFailed parameter: true");
                     if (talTicket.getExtraParams().putIfAbsent("connectionFailed", "true") != null) {
                         // "putIfAbsent" returns null if "put" worked, and returns the value found otherwise
                         talTicket.getExtraParams().replace("connectionFailed","true");
@@ -246,34 +1174,36 @@ public class SampleTalAdapterImpl implements TalAdapter {
                 }
 
                 // Create new ticket on ConnectWise
-                logger.info("syncTalTicket: Attempting to create ticket on ConnectWise");
+                logger.debug("syncTalTicket: Attempting to create ticket on ConnectWise");
 
                 // Check if URL and API_PATH are not null
-                if (config.getTicketSourceConfig().get(TicketSourceConfigProperty.URL) == null ||
-                        config.getTicketSourceConfig().get(TicketSourceConfigProperty.API_PATH) == null) {
+                if (snapshot.getUrl() == null ||
+                        snapshot.getApiPath() == null) {
                     logger.error("syncTalTicket: URL or API_PATH not setup on Config");
                     throw new TalAdapterSyncException("Cannot create a new ticket: URL or API_PATH not setup on config");
                 }
 
-                url = config.getTicketSourceConfig().get(TicketSourceConfigProperty.URL) +
-                        config.getTicketSourceConfig().get(TicketSourceConfigProperty.API_PATH);
+                url = snapshot.getUrl() +
+                        snapshot.getApiPath();
 
                 // Body of the request
-                // FIXME: Get board and company from ticketSourceConfig
-                String requestBody = "{\n" +
-                        "    \"summary\" : \"" + talTicket.getSubject() + "\",\n" +
-                        "    \"board\" : {\n" +
-                        "        \"id\": 199\n" +
-                        "    },\n" +
-                        "    \"company\": {\n" +
-                        "        \"id\": 250\n" +
-                        "    },\n" +
-                        //      "    \"contactEmailAddress\" : \"" + talTicket.getRequester() + "\"\n" +
-                        "}";
+                // Board and company are sent by ID when known locally, otherwise ConnectWise resolves them by name
+                String board = snapshot.get(ConnectWiseConfigProperty.BOARD);
+                String company = snapshot.get(ConnectWiseConfigProperty.COMPANY);
+                JSONObject createBody = new JSONObject();
+                createBody.put("summary", talTicket.getSubject());
+                createBody.put("board", createReference(board, referenceData.boardId(board),
+                        "name", DEFAULT_BOARD_ID));
+                createBody.put("company", createReference(company, referenceData.companyId(company),
+                        "identifier", DEFAULT_COMPANY_ID));
+                String requestBody = createBody.toString();
 
                 // Writing the body
+                context.connectedBy("create");
+                stage = trace.begin();
                 try {
-                    CWTicket = ConnectWiseAPICall(url, "POST", requestBody);
+                    CWTicket = context.call(url, "POST", requestBody);
+                    learnOwnMember(CWTicket);
                 } catch (TalAdapterSyncException e) {
                     logger.error("syncTalTicket: Unable to POST ticket - {}", e.getMessage());
                     throw e;
@@ -283,11 +1213,15 @@ public class SampleTalAdapterImpl implements TalAdapter {
                     throw new RuntimeException(e.getMessage());
                 }
 
+                trace.span("create POST", stage);
+
                 // Setting URL to proper value with ticket id
                 if (CWTicket != null) {
-                    logger.info("syncTalTicket: setting TalTicket id");
-                    url += "/" + CWTicket.get("id");
-                    talTicket.setThirdPartyId(CWTicket.get("id") + "");
+                    metrics.ticketCreated();
+                    logger.debug("syncTalTicket: setting TalTicket id");
+                    long ticketId = CWTicket.getLong("id");
+                    url += "/" + ticketId;
+                    talTicket.setThirdPartyId(Long.toString(ticketId));
                 }
             }
 
@@ -298,7 +1232,7 @@ public class SampleTalAdapterImpl implements TalAdapter {
             if (url == null) {
                 throw new RuntimeException("An unexpected error occurred: URL not set properly");
             } else {
-                logger.info("syncTalTicket: Connection set to: " + url);
+                logger.debug("syncTalTicket: Connection set to: {}", url);
             }
 
 
@@ -311,7 +1245,7 @@ public class SampleTalAdapterImpl implements TalAdapter {
 
             // Check if connection was established correctly
             if (CWTicket == null) {
-                logger.info("syncTalTicket: ConnectWise ticket error");
+                logger.debug("syncTalTicket: ConnectWise ticket error");
                 throw new RuntimeException("ConnectWise ticket error");
             }
 
@@ -325,20 +1259,20 @@ public class SampleTalAdapterImpl implements TalAdapter {
 
                 if (!Objects.equals(IDFromLink, talTicket.getThirdPartyId())) {
                     // If ID is incorrect: fix it
-                    logger.info("syncTalTicket: Fixing ThirdPartyID from: " +
-                            talTicket.getThirdPartyId() + " to: " + IDFromLink);
+                    logger.debug("syncTalTicket: Fixing ThirdPartyID from: {} to: {}",
+                            talTicket.getThirdPartyId(), IDFromLink);
                     talTicket.setThirdPartyId(IDFromLink);
                 }
             } else {
                 // This means Link is not functional but connection was successful using ThirdPartyID
 
-                String testUrl = config.getTicketSourceConfig().get(TicketSourceConfigProperty.URL) +
-                        config.getTicketSourceConfig().get(TicketSourceConfigProperty.API_PATH) +
+                String testUrl = snapshot.getUrl() +
+                        snapshot.getApiPath() +
                         "/" + talTicket.getThirdPartyId();
 
                 if (!Objects.equals(testUrl, talTicket.getThirdPartyLink())) {
                     // If Url is incorrect: fix it
-                    logger.info("syncTalTicket: Fixing ThirdPartyLink");
+                    logger.debug("syncTalTicket: Fixing ThirdPartyLink");
                     talTicket.setThirdPartyLink(testUrl);
                 }
             }
@@ -355,7 +1289,7 @@ public class SampleTalAdapterImpl implements TalAdapter {
             try { // try to get ConnectWise value
                 ConnectWiseValue = CWTicket.getString(path);
             } catch (JSONException e) { // It is possible that it does not exist on GET/POST response
-                logger.info("syncTalTicket: {} not found on ConnectWise", path);
+                logger.debug("syncTalTicket: {} not found on ConnectWise", path);
                 ConnectWiseValue = null;
             }
 
@@ -365,48 +1299,67 @@ public class SampleTalAdapterImpl implements TalAdapter {
                     // If ticket summary does not exist (Symphony or CW), use description instead
                     SymphonyValue = talTicket.getDescription();
                     talTicket.setSubject(SymphonyValue);
-                    logger.info("SampleTalAdapter: syncTalTicket: Setting ticket summary to ticket description");
+                    logger.debug("SampleTalAdapter: syncTalTicket: Setting ticket summary to ticket description");
                 } else {
                     // If ticket description also does not exist, use pre-set value for ticket summary
-                    logger.info("SampleTalAdapter: syncTalTicket: Symphony ticket does not have summary or description. Using standard summary.");
+                    logger.debug("SampleTalAdapter: syncTalTicket: Symphony ticket does not have summary or description. Using standard summary.");
                     // FIXME: Hard coded summary standard
                     SymphonyValue = "<Symphony> NEW Ticket";
                     talTicket.setSubject(SymphonyValue);
                 }
             }
 
-            String requestResult = createRequestBody(SymphonyValue, ConnectWiseValue, path, true);
+            String requestResult = resolveConflict(createRequestBody(SymphonyValue, ConnectWiseValue, path, true),
+                    "summary", CWTicket, context);
             if (requestResult != null)  { // So, if an update is needed:
                 if (Objects.equals(requestResult, "Update Symphony")) {
                     // This means there is a CW value but no Symphony value
-                    logger.info("syncTalTicket: Updating Symphony using ConnectWise value");
+                    logger.debug("syncTalTicket: Updating Symphony using ConnectWise value");
                     talTicket.setSubject(ConnectWiseValue);
+                    context.fieldFromConnectWise(path);
                 } else {
                     requestBody += requestResult;
+                    context.fieldPatched(path);
                 }
             }
 
 
             // Ticket priority
+            // Priorities are sent by ID, mapped priority names are resolved locally
             path = "priority/id";
             SymphonyValue = talTicket.getPriority();
+            boolean priorityIsString = false;
+            if (SymphonyValue != null) {
+                Integer priorityId = referenceData.priorityId(SymphonyValue);
+                if (priorityId != null) {
+                    SymphonyValue = priorityId + "";
+                } else {
+                    // Unknown priority name: let ConnectWise resolve it
+                    path = "priority/name";
+                    priorityIsString = true;
+                }
+            }
             try {
-                ConnectWiseValue = CWTicket.getJSONObject("priority").getInt("id") + "";
+                ConnectWiseValue = priorityIsString ? CWTicket.getJSONObject("priority").getString("name") :
+                        CWTicket.getJSONObject("priority").getInt("id") + "";
             } catch (JSONException e) {
-                logger.info("syncTalTicket: {} not found on ConnectWise", path);
+                logger.debug("syncTalTicket: {} not found on ConnectWise", path);
                 ConnectWiseValue = null;
             }
-            requestResult = createRequestBody(SymphonyValue, ConnectWiseValue, path, false);
+            requestResult = resolveConflict(createRequestBody(SymphonyValue, ConnectWiseValue, path,
+                    priorityIsString), "priority", CWTicket, context);
             if (requestResult != null) {
                 if (Objects.equals(requestResult, "Update Symphony")) {
-                    // This means there is a CW value but no Symphony value
-                    logger.info("syncTalTicket: Updating Symphony using CW value");
+                    // This means there is a CW value but no Symphony value, or a newer one
+                    logger.debug("syncTalTicket: Updating Symphony using CW value");
                     talTicket.setPriority(ConnectWiseValue);
+                    context.fieldFromConnectWise(path);
                 } else {
                     if (!requestBody.isEmpty()) {
                         requestBody += ",\n";
                     }
                     requestBody += requestResult;
+                    context.fieldPatched(path);
                 }
             }
 
@@ -416,20 +1369,35 @@ public class SampleTalAdapterImpl implements TalAdapter {
             try {
                 ConnectWiseValue = CWTicket.getJSONObject("status").getString("name");
             } catch (JSONException e) {
-                logger.info("syncTalTicket: {} not found on ConnectWise", path);
+                logger.debug("syncTalTicket: {} not found on ConnectWise", path);
                 ConnectWiseValue = null;
             }
-            requestResult = createRequestBody(SymphonyValue, ConnectWiseValue, path, true);
+            // Statuses are compared by name but sent by ID when the ticket board's statuses are known locally
+            Integer statusId = null;
+            if (SymphonyValue != null && !Objects.equals(SymphonyValue, ConnectWiseValue)) {
+                statusId = referenceData.statusId(CWTicket.has("board") ?
+                        CWTicket.getJSONObject("board").optInt("id") : null, SymphonyValue);
+            }
+            if (statusId != null) {
+                requestResult = createRequestBody(statusId + "",
+                        CWTicket.has("status") ? CWTicket.getJSONObject("status").optInt("id") + "" : null,
+                        "status/id", false);
+            } else {
+                requestResult = createRequestBody(SymphonyValue, ConnectWiseValue, path, true);
+            }
+            requestResult = resolveConflict(requestResult, "status", CWTicket, context);
             if (requestResult!= null) {
                 if (Objects.equals(requestResult, "Update Symphony")) {
                     // This means there is a CW value but no Symphony value
-                    logger.info("syncTalTicket: Updating Symphony using CW value");
+                    logger.debug("syncTalTicket: Updating Symphony using CW value");
                     talTicket.setStatus(ConnectWiseValue);
+                    context.fieldFromConnectWise(path);
                 } else {
                     if (!requestBody.isEmpty()) {
                         requestBody += ",\n";
                     }
                     requestBody += requestResult;
+                    context.fieldPatched(path);
                 }
             }
 
@@ -439,25 +1407,35 @@ public class SampleTalAdapterImpl implements TalAdapter {
             try {
                 ConnectWiseValue = CWTicket.getJSONObject("owner").getString("identifier");
             } catch (JSONException e) {
-                logger.info("syncTalTicket: {} not found on ConnectWise", path);
+                logger.debug("syncTalTicket: {} not found on ConnectWise", path);
                 ConnectWiseValue = null;
             }
-            requestResult = createRequestBody(SymphonyValue, ConnectWiseValue, path, true);
+            if (memberDirectory.isAssignable(SymphonyValue)) {
+                requestResult = resolveConflict(createRequestBody(SymphonyValue, ConnectWiseValue, path, true),
+                        "owner", CWTicket, context);
+            } else {
+                // Sending an unknown member would fail the whole PATCH
+                logger.warn("syncTalTicket: {} is not an active ConnectWise member - not updating {}",
+                        SymphonyValue, path);
+                requestResult = null;
+            }
             if (requestResult != null)  {
                 if (Objects.equals(requestResult, "Update Symphony")) {
                     // This means there is a CW value but no Symphony value
-                    logger.info("syncTalTicket: Updating Symphony using CW value");
+                    logger.debug("syncTalTicket: Updating Symphony using CW value");
                     talTicket.setAssignedTo(ConnectWiseValue);
+                    context.fieldFromConnectWise(path);
                 } else {
                     if (!requestBody.isEmpty()) {
                         requestBody += ",\n";
                     }
                     requestBody += requestResult;
+                    context.fieldPatched(path);
                 }
             }
 
             // Attachments
-            //logger.info("syncTalTicket: Updating ticket attachments");
+            //logger.debug("syncTalTicket: Updating ticket attachments");
             // TODO: Place to add attachments to ticket sync PATCH
 
             //System.out.println(requestBody);
@@ -465,244 +1443,262 @@ public class SampleTalAdapterImpl implements TalAdapter {
             // PATCH
             if (!requestBody.isEmpty()) {
                 requestBody = "[" + requestBody + "]"; // Final request formatting
-                logger.info("syncTalTicket: Making PATCH request");
-                ConnectWiseAPICall(url, "PATCH", requestBody);
+                logger.debug("syncTalTicket: Making PATCH request");
+                stage = trace.begin();
+                JSONObject patched = context.call(url, "PATCH", requestBody);
+                if (patched != null) {
+                    CWTicket = patched;
+                    learnOwnMember(patched);
+                }
+                trace.span("field PATCH", stage);
             } else {
-                logger.info("syncTalTicket: No API call made");
+                logger.debug("syncTalTicket: No API call made");
+                trace.decision("skip PATCH");
             }
 
             // Comments
-            logger.info("syncTalTicket: Updating ticket comments");
-            syncComments(talTicket);
+            // Comments are compared in full on every sync, so when the deadline is too close they are left to the
+            // next update of the ticket rather than failing the fields already synced
+            if (blind && last.sameNotes(talTicket)) {
+                // Neither side changed a note since the last exchange
+                logger.debug("syncTalTicket: Comments unchanged since the last exchange - not read");
+                trace.decision("skip notes");
+            } else if (context.getDeadline().hasRemaining(COMMENT_SYNC_MIN_MILLIS)) {
+                logger.debug("syncTalTicket: Updating ticket comments");
+                syncComments(talTicket, context);
+            } else {
+                logger.warn("syncTalTicket: {}ms left before the sync deadline - deferring comments of ticket {}",
+                        context.getDeadline().remainingMillis(), talTicket.getSymphonyId());
+                trace.decision("defer comments");
+                context.noteFailed("comments", Deadline.exceeded("comments"));
+                metrics.deferred();
+            }
+
 
+            // map values taken from ConnectWise back to their Symphony equivalent
+            TicketMapper.mapThirdPartyToSymphony(talTicket, mappings, memberDirectory);
+
+            // ConnectWise was read after the start of the sync, or known unchanged since it was last read
+            syncedTickets.put(talTicket, CWTicket, fieldOrigins(talTicket, CWTicket, context),
+                    blind ? last.getReadAt() : start, context.getNoteFailure() == null);
 
             // 4. return updated instance using "return statement" to the caller
-            logger.info("synTalTicket: Synchronization complete");
+            logger.debug("synTalTicket: Synchronization complete");
+            succeeded = true;
             return talTicket;
 
         }
         catch (TalAdapterSyncException e) {
             // If process results in a TalAdapterSyncException the HTTP info will be carried over
             logger.warn("Failed to sync ticket from TAL to InMemory Ticket System {}", talTicket);
+            failure = e;
             throw e;
         }
         catch (Exception e) {
             // Otherwise the method will change the error to a TalAdapterSyncException and add the information to the
             //error description
             logger.warn("Failed to sync ticket from TAL to InMemory Ticket System {}", talTicket);
-            throw new TalAdapterSyncException(String.format("Cannot sync TAL ticket: %s - %s",
+            failure = new TalAdapterSyncException(String.format("Cannot sync TAL ticket: %s - %s",
                     e.getClass().getSimpleName(), e.getMessage()), e);
+            throw failure;
+        }
+        finally {
+            // a blind write that failed leaves the ConnectWise ticket unknown: the retry reads it
+            if (blind && !succeeded)
+                syncedTickets.forget(ConnectWiseKeys.id(talTicket.getThirdPartyId()));
+            // a sync cut short by the adapter stopping is left to the checkpoint
+            if (succeeded || !stopping) {
+                deadLetter(talTicket, unfinished.getUnfinished(id), succeeded, failure, context);
+                unfinished.finish(id);
+            }
+            metrics.syncCompleted(succeeded, System.nanoTime() - start);
+            traces.finish(trace, succeeded ? "ok" : "failed");
+            context.commitDiff(talTicket.getSymphonyId());
+            event.end();
+            if (event.shouldCommit()) {
+                event.symphonyId = talTicket.getSymphonyId();
+                event.thirdPartyId = talTicket.getThirdPartyId();
+                event.connection = context.getConnection();
+                event.outcome = succeeded ? "ok" : "failed";
+                event.configVersion = snapshot.getVersion();
+                event.commit();
+            }
+            snapshot.release();
         }
     }
 
     /**
-     * Performs an HTTP request call to ConnectWise API using credentials set in config
-     * @param url the HTTP request URI
-     * @param method the HTTP method (i.e. GET)
-     * @param requestBody the HTTP request's body
-     * @return JSON object with the HTTP request response
-     * @throws TalAdapterSyncException if request fails
+     * Records a sync that failed, or whose note writes did not all go through, in the dead letter queue; drops the
+     * letter of a ticket synced in full
+     * @param talTicket synced ticket
+     * @param received ticket as received, with the ConnectWise ID and link set by the sync
+     * @param succeeded true if the sync succeeded
+     * @param failure error of the failed sync, null if it succeeded or failed with an unchecked error
+     * @param context state of the sync
      */
-    public JSONObject ConnectWiseAPICall(String url, String method, String requestBody) throws TalAdapterSyncException {
-        // Optional: Formalize input error checking on ConnectWiseAPICall
-
-        String clientID = config.getTicketSourceConfig().get(TicketSourceConfigProperty.LOGIN);
-        String authorization = config.getTicketSourceConfig().get(TicketSourceConfigProperty.PASSWORD);
-
-        if (clientID == null || authorization == null) {
-            logger.error("ConnectWiseAPICall: Unable to retrieve client ID and/or authorization from configuration");
-            throw new TalAdapterSyncException("Error retrieving client ID and/or authorization",
-                    HttpStatus.UNAUTHORIZED);
-        }
-
-        if (url == null) {
-            logger.error("ConnectWiseAPICall: URL cannot be null");
-            throw new TalAdapterSyncException("URL for API call cannot be null", HttpStatus.BAD_REQUEST);
+    private void deadLetter(TalTicket talTicket, TalTicket received, boolean succeeded,
+                            TalAdapterSyncException failure, SyncContext context) {
+        if (succeeded && context.getNoteFailure() == null) {
+            if (deadLetters.remove(talTicket.getSymphonyId()))
+                logger.info("deadLetter: ticket {} synced - dead letter dropped", talTicket.getSymphonyId());
+            return;
         }
+        if (received == null)
+            return;
+
+        String operation = succeeded ? context.getFailedNoteOperation() : "sync";
+        TalAdapterSyncException e = succeeded ? context.getNoteFailure() : failure;
+        deadLetters.add(received, operation, e != null ? e.getMessage() : "unexpected error",
+                e != null ? e.getHttpStatus() : null);
+        logger.info("deadLetter: {} of ticket {} failed - ticket dead-lettered for retry", operation,
+                talTicket.getSymphonyId());
+    }
 
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = null;
+    /**
+     * Syncs a ticket without blocking the caller, on a virtual thread of its own on Java 21+ or on the
+     * platform thread pool of the adapter otherwise
+     * @param talTicket instance of ticket that contains updated data
+     * @return future completed with the synced ticket, or exceptionally with the {@link TalAdapterSyncException}
+     * of a failed sync
+     * @throws IllegalStateException if the adapter is not initialized or has stopped
+     */
+    public CompletableFuture<TalTicket> syncTalTicketAsync(TalTicket talTicket) {
+        ExecutorService executor = syncExecutor;
+        if (executor == null)
+            throw new IllegalStateException("syncTalTicketAsync: adapter not initialized");
 
+        long id = unfinished.track(talTicket);
         try {
-            if (requestBody != null) {
-                request = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .method(method, HttpRequest.BodyPublishers.ofString(requestBody))
-                        .header("Content-Type", "application/json")
-                        .header("clientID", clientID)
-                        .header("Authorization", authorization)
-                        .build();
-            } else if (Objects.equals(method, "GET")) {
-                request = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .header("Content-Type", "application/json")
-                        .header("clientID", clientID)
-                        .header("Authorization", authorization)
-                        .build();
-            }
-        } catch (Exception e) {
-            logger.error("ConnectWiseAPICall: " + e.getMessage());
-            throw new TalAdapterSyncException(e.getMessage(), HttpStatus.BAD_REQUEST);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return sync(talTicket, id);
+                } catch (TalAdapterSyncException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            unfinished.finish(id);
+            throw new IllegalStateException("syncTalTicketAsync: adapter stopped", e);
         }
+    }
 
-        // Response
-        HttpResponse<String> response = null;
-        logger.info("ConnectWiseAPICall: Getting response");
-        try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            if (response != null) {
-                throw new TalAdapterSyncException(e + " - HTTP request error",
-                        HttpStatus.valueOf(response.statusCode()));
-            } else throw new TalAdapterSyncException(e + " - HTTP request error");
-        }
+    /**
+     * @return the slowest sampled sync traces, slowest first
+     */
+    public String dumpSlowestTraces() {
+        return traces.dumpTraces();
+    }
 
-        if (response != null && (response.statusCode() == 200 || response.statusCode() == 201)) {
-            logger.info("ConnectWiseAPICall: "+method+" call successful - HTTP Code:"+
-                    response.statusCode());
-        } else {
-            logger.error("ConnectWiseAPICall: {} call unsuccessful - HTTP Code: {}", method,
-                    response != null ? response.statusCode() : "not specified");
-            throw new TalAdapterSyncException(method + " Request error",
-                    response != null ? HttpStatus.valueOf(response.statusCode()) : null);
-        }
+    /**
+     * Writes the recent adapter flight recorder events to a file, for analysis with JDK Mission Control or jfr
+     * @param destination file the recording is written to
+     * @return true if the recording was written
+     */
+    public boolean dumpFlightRecording(Path destination) {
+        return flightRecorder.dump(destination);
+    }
 
-        JSONObject jsonObject;
+    /**
+     * Performs an HTTP request call to ConnectWise API using credentials set in the current config
+     * @param url the HTTP request URI
+     * @param method the HTTP method (i.e. GET)
+     * @param requestBody the HTTP request's body
+     * @return JSON object with the HTTP request response
+     * @throws TalAdapterSyncException if request fails
+     */
+    public JSONObject ConnectWiseAPICall(String url, String method, String requestBody) throws TalAdapterSyncException {
+        ConfigSnapshot snapshot = acquireSnapshot();
         try {
-            //System.out.println(response.body());
-            jsonObject = new JSONObject(response.body());
-        } catch (JSONException e) {
-            try {
-                // It is possible that the response is a JSON array, so it is put in a JSON object under JSONArray
-                jsonObject = new JSONObject("{ \"JSONArray\" : " + response.body() + "}");
-            } catch (JSONException e2) {
-                // If it is also not an Array: give up and report error
-                logger.error("ConnectWiseAPICall: error parsing content to JSON - " + e2);
-                logger.error("ConnectWiseAPICall: API call object: " + response.request());
-                return null;
-            }
+            return snapshot.getClient().call(url, method, requestBody);
+        } finally {
+            snapshot.release();
         }
-        return jsonObject;
     }
 
     /**
      * Performs the synchronization of comments between Symphony and ConnectWise
      * @param talTicket the Symphony ticket being synced
+     * @param context state of the sync
      * @throws TalAdapterSyncException if retrieval of ConnectWise comments fail
      */
-    public void syncComments(TalTicket talTicket) throws TalAdapterSyncException {
+    public void syncComments(TalTicket talTicket, SyncContext context) throws TalAdapterSyncException {
         // Getting an array of ConnectWise comments
-        logger.info("syncComments: Getting ConnectWise comments");
+        logger.debug("syncComments: Getting ConnectWise comments");
 
         String url = talTicket.getThirdPartyLink() + "/notes"; // + "/notes" to get ticket comments on CW
         JSONArray ConnectWiseComments;
 
         // API Call
+        SyncTrace trace = context.getTrace();
+        long stage = trace.begin();
         try {
-            ConnectWiseComments = ConnectWiseAPICall(url, "GET", null).getJSONArray("JSONArray");
+            ConnectWiseComments = context.call(url, "GET", null).getJSONArray("JSONArray");
         } catch (TalAdapterSyncException e) {
             logger.error("syncComments: Unable to retrieve comments from ConnectWise");
             throw e;
         }
+        trace.span("notes GET", stage);
 
         // Sync description - returns the comment with the description
         // (on ConnectWise the description is the oldest discussion comment)
-        JSONObject descriptionCW = syncDescription(talTicket, url, ConnectWiseComments);
+        stage = trace.begin();
+        JSONObject descriptionCW = syncDescription(talTicket, url, ConnectWiseComments, context);
+        trace.span("syncDescription", stage);
 
         // Compare each talTicket comment to CW comment
         Set<Comment> commentsToPatch = new HashSet<>();
         Set<Comment> commentsToPost = new HashSet<>();
-        Iterator<Comment> itr = talTicket.getComments().iterator();
-        Comment talComment;
-
-        // for each TalTicket comment:
-        logger.info("syncComments: Comparing Symphony comments to ConnectWise");
-        while (itr.hasNext()) {
-            talComment = itr.next();
-
-            // Base case
-            boolean ticketNeedsPatching = true;
-            boolean ticketExists = false;
-
-            // Ignore the description comment - it should already be synced by the syncDescription method
-            if (descriptionCW != null &&
-                    Objects.equals(talComment.getThirdPartyId(), descriptionCW.getInt("id") + "")) {
-                continue;
-            }
-
-            // Check if comment is in CW
-            for (int i = 0; i < ConnectWiseComments.length(); i++) {
-                // If TAL comment is found on ConnectWise (by matching IDs)
-                if (talComment.getThirdPartyId() != null &&
-                        Objects.equals(talComment.getThirdPartyId(), ConnectWiseComments.getJSONObject(i).get("id")+"")) {
-
-                    ticketExists = true;
-                    JSONObject cwComment = ConnectWiseComments.getJSONObject(i);
-
-                    // Compare text to check if ticket needs patching
-                    ticketNeedsPatching = (!Objects.equals(talComment.getText(), cwComment.get("text")));
-                    break;
-                }
-            }
-
-            if (ticketNeedsPatching) {
-                if (ticketExists) {
-                    commentsToPatch.add(talComment);
-                }
-                else {
-                    commentsToPost.add(talComment);
-                }
+        diffComments(talTicket.getComments(), ConnectWiseComments, descriptionCW, commentsToPatch, commentsToPost,
+                noteFingerprints);
+
+        // Notes changed on ConnectWise since the last exchange are taken over rather than overwritten, unless
+        // Symphony changed the comment later
+        for (Iterator<Comment> toPatch = commentsToPatch.iterator(); toPatch.hasNext(); ) {
+            Comment comment = toPatch.next();
+            JSONObject note = findNote(ConnectWiseComments, comment.getThirdPartyId());
+            if (note != null && context.getResolver().resolveComment(comment, note) == UpdateSource.THIRD_PARTY) {
+                logger.debug("syncComments: Comment {} changed on ConnectWise after Symphony - updating Symphony",
+                        comment.getThirdPartyId());
+                toPatch.remove();
+                // Comments are hashed on their text: replaced rather than changed in the set
+                talTicket.getComments().remove(comment);
+                comment.setText(note.getString("text"));
+                talTicket.getComments().add(comment);
+                metrics.connectWiseKept();
             }
         }
 
-        // If there are tickets in CW that are NOT in Symphony (Direction CW -> Symphony)
-        logger.info("syncComments: Comparing ConnectWise comments to Symphony");
-        DateTimeFormatter ConnectWiseDateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'H:m:sX");
-        boolean commentNotInSymphony;
-
-        // for each ConnectWise comment:
-        for (int i = 0; i < ConnectWiseComments.length(); i++) {
-            JSONObject commentCW = ConnectWiseComments.getJSONObject(i);
-
-            commentNotInSymphony = true;
-
-            // Check if CW ticket is in TAL
-            itr = talTicket.getComments().iterator();
-            while (itr.hasNext()) {
-                talComment = itr.next();
-                // If CW comment is found on Symphony
-                if (Objects.equals(talComment.getThirdPartyId(), commentCW.getInt("id") + "")) {
-                    commentNotInSymphony = false;
-                }
-            }
-
-            if (commentNotInSymphony) {
-                logger.info("syncComments: ConnectWise comment not found in Symphony - Updating Symphony");
-                LocalDateTime commentDate = LocalDateTime.parse(commentCW.getString("dateCreated"),
-                        ConnectWiseDateTimeFormatter);
-                ZonedDateTime zdt = ZonedDateTime.of(commentDate, ZoneId.systemDefault());
-                long lastModified = zdt.toInstant().toEpochMilli();
+        int commentsFromSymphony = talTicket.getComments().size();
 
-                Comment newComment = new Comment(null, commentCW.getInt("id") + "",
-                        commentCW.getString("createdBy"), commentCW.getString("text"),
-                        lastModified);
+        // If there are tickets in CW that are NOT in Symphony (Direction CW -> Symphony)
+        logger.debug("syncComments: Comparing ConnectWise comments to Symphony");
 
-                talTicket.getComments().add(newComment);
-            }
+        // for each ConnectWise comment not found on Symphony:
+        for (JSONObject commentCW : commentsMissingFromSymphony(talTicket.getComments(), ConnectWiseComments)) {
+            logger.debug("syncComments: ConnectWise comment not found in Symphony - Updating Symphony");
+            talTicket.getComments().add(commentFromConnectWise(commentCW));
         }
 
+        context.commentsDiffed(commentsToPatch.size(), commentsToPost.size(),
+                talTicket.getComments().size() - commentsFromSymphony);
+
         // PATCH comments
+        stage = trace.begin();
+        Iterator<Comment> itr;
+        Comment talComment;
         if (!commentsToPatch.isEmpty()) {
-            logger.info("syncComments: Patching {} comments", commentsToPatch.size());
+            logger.debug("syncComments: Patching {} comments", commentsToPatch.size());
             itr = commentsToPatch.iterator();
             String requestBody = "";
 
             while (itr.hasNext()) {
+                if (deferredByDeadline(context, "comment PATCH"))
+                    break;
                 talComment = itr.next();
                 String noteUrl = url + "/" + talComment.getThirdPartyId();
 
                 requestBody = "[\n" +
-                        (talComment.getCreator() != null ? // Ensure comment has creator
+                        (hasMember(talComment.getCreator()) ? // Ensure comment has a valid creator
                         "    {\n" + // ticket creator
                         "        \"op\": \"replace\",\n" +
                         "        \"path\": \"member/identifier\",\n" +
@@ -716,34 +1712,38 @@ public class SampleTalAdapterImpl implements TalAdapter {
                         "]";
 
                 try {
-                    ConnectWiseAPICall(noteUrl, "PATCH", requestBody);
+                    JSONObject stored = context.call(noteUrl, "PATCH", requestBody);
+                    noteFingerprints.written(talComment.getThirdPartyId(), talComment.getText(), stored);
                 } catch (TalAdapterSyncException e) {
-                    // Does not throw an error as to not interrupt sync process
+                    // Does not throw an error as to not interrupt sync process, the ticket is dead-lettered instead
                     logger.error("syncComments: Unable to PATCH comment Symphony ID: {}. HTTP error: {}",
                             talComment.getSymphonyId(),
                             e.getHttpStatus() != null ? e.getHttpStatus() : "not specified");
+                    context.noteFailed("note PATCH", e);
                 }
             }
-            logger.info("syncComments: Finished PATCHing comments");
+            logger.debug("syncComments: Finished PATCHing comments");
         } else {
-            logger.info("syncComments: No comments to patch");
+            logger.debug("syncComments: No comments to patch");
         }
 
         // POST comments
         if (!commentsToPost.isEmpty()) {
-            logger.info("syncComments: Posting {} new comments to ConnectWise",
+            logger.debug("syncComments: Posting {} new comments to ConnectWise",
                     commentsToPost.size());
 
             itr = commentsToPost.iterator();
             String requestBody = "";
 
             while (itr.hasNext()) {
+                if (deferredByDeadline(context, "comment POST"))
+                    break;
                 talComment = itr.next();
 
                 requestBody = "{\n" +
                         "    \"text\" : \"" + talComment.getText() + "\",\n" +
                         "    \"internalAnalysisFlag\": true" + // Set to default internal notes
-                        (talComment.getCreator() != null ? // Make sure comment creator is not null
+                        (hasMember(talComment.getCreator()) ? // Make sure comment creator is a valid member
                         ",\n" +
                         "    \"member\": {\n" +
                         "        \"identifier\": \"" + talComment.getCreator() + "\"\n" +
@@ -751,42 +1751,172 @@ public class SampleTalAdapterImpl implements TalAdapter {
                         "}";
 
                 try {
-                    JSONObject jsonObject = ConnectWiseAPICall(url, "POST", requestBody);
+                    JSONObject jsonObject = context.call(url, "POST", requestBody);
                     // Add ThirdParty ticket ID to ticket
-                    logger.info("syncComments: POST Successful. Updating Comment ID on Symphony");
+                    logger.debug("syncComments: POST Successful. Updating Comment ID on Symphony");
                     talComment.setThirdPartyId(jsonObject.getInt("id") + "");
+                    noteFingerprints.written(talComment.getThirdPartyId(), talComment.getText(), jsonObject);
                 } catch (TalAdapterSyncException e) {
-                    logger.error("syncComments: Unable to PATCH comment Symphony ID: {}. HTTP error: {}",
+                    logger.error("syncComments: Unable to POST comment Symphony ID: {}. HTTP error: {}",
                             talComment.getSymphonyId(),
                             e.getHttpStatus() != null ? e.getHttpStatus() : "not specified");
+                    context.noteFailed("note POST", e);
                 }
             }
-            logger.info("syncComments: Finished POSTing comments");
+            logger.debug("syncComments: Finished POSTing comments");
         } else {
-            logger.info("syncComments: No comments to post");
+            logger.debug("syncComments: No comments to post");
         }
+        trace.span("note writes", stage);
     }
 
     /**
-     * Performs the synchronization of the ticket's description
-     * @param talTicket the Symphony ticket being synced
-     * @param url the URI to connect with the ticket's ConnectWise API
+     * Builds the Symphony comment of a ConnectWise note, its creator not mapped yet
+     * @param commentCW ConnectWise note
+     * @return new comment, without Symphony ID
+     */
+    private static Comment commentFromConnectWise(JSONObject commentCW) {
+        LocalDateTime commentDate = LocalDateTime.parse(commentCW.getString("dateCreated"),
+                CONNECTWISE_DATE_TIME_FORMATTER);
+        ZonedDateTime zdt = ZonedDateTime.of(commentDate, ZoneId.systemDefault());
+        long lastModified = zdt.toInstant().toEpochMilli();
+
+        return new Comment(null, commentCW.getInt("id") + "", commentCW.getString("createdBy"),
+                commentCW.getString("text"), lastModified);
+    }
+
+    /**
+     * Checks the deadline before a comment write, the remaining comments being left to the next sync once it passed
+     * @param context state of the sync
+     * @param stage comment write about to be done
+     * @return true if the deadline has passed
+     */
+    private boolean deferredByDeadline(SyncContext context, String stage) {
+        if (!context.getDeadline().isExpired())
+            return false;
+
+        logger.warn("syncComments: sync deadline exceeded before {} - remaining comments deferred", stage);
+        context.getTrace().decision("defer " + stage);
+        context.noteFailed(stage, Deadline.exceeded(stage));
+        metrics.deferred();
+        return true;
+    }
+
+    /**
+     * Compares Symphony comments to ConnectWise notes (Direction Symphony -> CW)
+     * @param talComments comments of the Symphony ticket
      * @param CWComments JSONArray with all comments found on the ConnectWise ticket
-     * @return if found, JSONObject with ConnectWise's comment that contains its description - null otherwise
+     * @param descriptionCW ConnectWise comment that contains the ticket description, may be null
+     * @param commentsToPatch receives the comments found on ConnectWise with a different text
+     * @param commentsToPost receives the comments not found on ConnectWise
+     * @param fingerprints fingerprints of the notes written, null to compare texts once normalized only
      */
-    public JSONObject syncDescription(TalTicket talTicket, String url, JSONArray CWComments) {
-        /*
-        This method attempts to sync the Symphony and CW descriptions.
+    static void diffComments(Collection<Comment> talComments, JSONArray CWComments, JSONObject descriptionCW,
+                             Collection<Comment> commentsToPatch, Collection<Comment> commentsToPost,
+                             NoteFingerprints fingerprints) {
+        logger.debug("diffComments: Comparing Symphony comments to ConnectWise");
 
-        Inputs:
-            - talTicket: The ticket to sync
-            - url: URL for API call to POST/PATCH the ticket.
-                i.e.: "https://connect.myCompany.com.au/api/ticket/v4_6_release/apis/3.0/service/tickets/187204/notes"
-            - CWComments: JSONArray of all comments for this ticket currently present in CW
-         */
+        // for each TalTicket comment:
+        for (Comment talComment : talComments) {
+            // Base case
+            boolean ticketNeedsPatching = true;
+            boolean ticketExists = false;
+
+            // Ignore the description comment - it should already be synced by the syncDescription method
+            if (descriptionCW != null &&
+                    Objects.equals(talComment.getThirdPartyId(), descriptionCW.getInt("id") + "")) {
+                continue;
+            }
+
+            // Check if comment is in CW
+            for (int i = 0; i < CWComments.length(); i++) {
+                // If TAL comment is found on ConnectWise (by matching IDs)
+                if (talComment.getThirdPartyId() != null &&
+                        Objects.equals(talComment.getThirdPartyId(), CWComments.getJSONObject(i).get("id")+"")) {
+
+                    ticketExists = true;
+                    JSONObject cwComment = CWComments.getJSONObject(i);
+
+                    // Compare text to check if ticket needs patching, ConnectWise rewrites of the text aside
+                    ticketNeedsPatching = !sameNoteText(fingerprints, talComment.getThirdPartyId(),
+                            talComment.getText(), cwComment.optString("text", null));
+                    break;
+                }
+            }
+
+            if (ticketNeedsPatching) {
+                if (ticketExists) {
+                    commentsToPatch.add(talComment);
+                }
+                else {
+                    commentsToPost.add(talComment);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param fingerprints fingerprints of the notes written, null to compare texts once normalized only
+     * @param noteId ConnectWise note ID
+     * @param symphonyText text on Symphony
+     * @param connectWiseText text on ConnectWise
+     * @return true if the note needs no write
+     */
+    private static boolean sameNoteText(NoteFingerprints fingerprints, String noteId, String symphonyText,
+                                        String connectWiseText) {
+        return fingerprints != null ? fingerprints.unchanged(noteId, symphonyText, connectWiseText) :
+                NoteFingerprints.of(symphonyText) == NoteFingerprints.of(connectWiseText);
+    }
+
+    /**
+     * @param CWComments JSONArray with all comments found on the ConnectWise ticket
+     * @param noteId ConnectWise note ID, may be null
+     * @return ConnectWise note with the ID, null if not found
+     */
+    private static JSONObject findNote(JSONArray CWComments, String noteId) {
+        for (int i = 0; noteId != null && i < CWComments.length(); i++) {
+            if (noteId.equals(CWComments.getJSONObject(i).optInt("id") + ""))
+                return CWComments.getJSONObject(i);
+        }
+        return null;
+    }
+
+    /**
+     * Finds the ConnectWise notes that are not on the Symphony ticket (Direction CW -> Symphony)
+     * @param talComments comments of the Symphony ticket
+     * @param CWComments JSONArray with all comments found on the ConnectWise ticket
+     * @return ConnectWise notes whose ID matches no Symphony comment, in ConnectWise order
+     */
+    static List<JSONObject> commentsMissingFromSymphony(Collection<Comment> talComments, JSONArray CWComments) {
+        List<JSONObject> missing = new ArrayList<>();
+
+        // for each ConnectWise comment:
+        for (int i = 0; i < CWComments.length(); i++) {
+            JSONObject commentCW = CWComments.getJSONObject(i);
+
+            boolean commentNotInSymphony = true;
+
+            // Check if CW ticket is in TAL
+            for (Comment talComment : talComments) {
+                // If CW comment is found on Symphony
+                if (Objects.equals(talComment.getThirdPartyId(), commentCW.getInt("id") + "")) {
+                    commentNotInSymphony = false;
+                }
+            }
 
-        logger.info("syncDescription: Searching for ticket description on ConnectWise");
-        DateTimeFormatter ConnectWiseDateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'H:m:sX");
+            if (commentNotInSymphony)
+                missing.add(commentCW);
+        }
+        return missing;
+    }
+
+    /**
+     * Finds the ConnectWise comment that holds the ticket description
+     * (on ConnectWise the description is the oldest discussion comment)
+     * @param CWComments JSONArray with all comments found on the ConnectWise ticket
+     * @return description comment, null if the ticket has no discussion comment
+     */
+    static JSONObject findDescription(JSONArray CWComments) {
         LocalDateTime descriptionCWDate = null;
         JSONObject descriptionCW = null;
 
@@ -797,10 +1927,10 @@ public class SampleTalAdapterImpl implements TalAdapter {
             if (comment.getBoolean("detailDescriptionFlag")) {
                 //get date created
                 LocalDateTime commentDate = LocalDateTime.parse(comment.getString("dateCreated"),
-                        ConnectWiseDateTimeFormatter);
+                        CONNECTWISE_DATE_TIME_FORMATTER);
 
                 if (descriptionCWDate == null) {
-                    logger.info("syncDescription: Ticked description comment found");
+                    logger.debug("findDescription: Ticked description comment found");
                     descriptionCWDate = commentDate;
                     descriptionCW = comment;
                 }
@@ -811,6 +1941,30 @@ public class SampleTalAdapterImpl implements TalAdapter {
                 }
             }
         }
+        return descriptionCW;
+    }
+
+    /**
+     * Performs the synchronization of the ticket's description
+     * @param talTicket the Symphony ticket being synced
+     * @param url the URI to connect with the ticket's ConnectWise API
+     * @param CWComments JSONArray with all comments found on the ConnectWise ticket
+     * @param context state of the sync
+     * @return if found, JSONObject with ConnectWise's comment that contains its description - null otherwise
+     */
+    public JSONObject syncDescription(TalTicket talTicket, String url, JSONArray CWComments, SyncContext context) {
+        /*
+        This method attempts to sync the Symphony and CW descriptions.
+
+        Inputs:
+            - talTicket: The ticket to sync
+            - url: URL for API call to POST/PATCH the ticket.
+                i.e.: "https://connect.myCompany.com.au/api/ticket/v4_6_release/apis/3.0/service/tickets/187204/notes"
+            - CWComments: JSONArray of all comments for this ticket currently present in CW
+         */
+
+        logger.debug("syncDescription: Searching for ticket description on ConnectWise");
+        JSONObject descriptionCW = findDescription(CWComments);
 
         // If there is no ConnectWise description comment
         if (descriptionCW == null) {
@@ -818,7 +1972,7 @@ public class SampleTalAdapterImpl implements TalAdapter {
             if (talTicket.getDescription() == null) {
                 // But has a subject (summary)
                 if (talTicket.getSubject() != null) {
-                    logger.info("syncDescription: Symphony ticket has no description - using ticket summary as description");
+                    logger.debug("syncDescription: Symphony ticket has no description - using ticket summary as description");
                     talTicket.setDescription(talTicket.getSubject());
                 } else {
                     // If Symphony doesn't have either, no valid description could be found
@@ -831,29 +1985,42 @@ public class SampleTalAdapterImpl implements TalAdapter {
             String requestBody = "{\n" +
                     "    \"text\" : \"" + talTicket.getDescription() + "\",\n" +
                     "    \"detailDescriptionFlag\": true" + // Set to default internal notes
-                (talTicket.getRequester() != null ? // make sure ticket requester is not null
+                (hasMember(talTicket.getRequester()) ? // make sure ticket requester is a valid member
                     "    ,\n" +
                     "    \"member\": {\n" +
                     "        \"identifier\": \"" + talTicket.getRequester() + "\"\n" +
                     "    }\n"
                     : "\n") +
                 "}";
-            logger.info("syncDescription: ConnectWise description comment not found. Creating new comment");
+            logger.debug("syncDescription: ConnectWise description comment not found. Creating new comment");
             try {
-                ConnectWiseAPICall(url, "POST", requestBody);
+                JSONObject stored = context.call(url, "POST", requestBody);
+                if (stored != null)
+                    noteFingerprints.written(stored.optInt("id") + "", talTicket.getDescription(), stored);
             } catch (TalAdapterSyncException e) {
                 logger.error("syncDescription: CW API Call error - unable to sync description. Http error code: {}",
                         e.getHttpStatus() != null ? e.getHttpStatus() : "not specified");
+                context.noteFailed("description POST", e);
                 return null;
             }
         } else { // If ConnectWise has a description comment:
             // If Symphony does not have a description: use ConnectWise description
             if (talTicket.getDescription() == null) {
                 talTicket.setDescription(descriptionCW.getString("text"));
-                logger.info("syncDescription: Symphony description not found. Using description on ConnectWise");
+                logger.debug("syncDescription: Symphony description not found. Using description on ConnectWise");
             }
-            // If CW description exists, and it's not the same as the one on Symphony:
-            else if (!Objects.equals(descriptionCW.getString("text"), talTicket.getDescription())) {
+            // If CW description exists, and it's not the same as the one on Symphony, ConnectWise rewrites aside:
+            else if (!noteFingerprints.unchanged(descriptionCW.getInt("id") + "", talTicket.getDescription(),
+                    descriptionCW.getString("text"))) {
+                if (context.getResolver().resolveDescription(talTicket.getDescription(), descriptionCW) ==
+                        UpdateSource.THIRD_PARTY) {
+                    logger.debug("syncDescription: Description changed on ConnectWise after Symphony - " +
+                            "updating Symphony");
+                    talTicket.setDescription(descriptionCW.getString("text"));
+                    metrics.connectWiseKept();
+                    return descriptionCW;
+                }
+
                 // Needs to PATCH ConnectWise description
                 String descriptionUrl = url + "/" + descriptionCW.getInt("id");
                 String requestBody = "[\n{" +
@@ -862,17 +2029,19 @@ public class SampleTalAdapterImpl implements TalAdapter {
                         "   \"value\": \""+ talTicket.getDescription() +"\"\n" +
                         "}\n]";
                 // API CALL
-                logger.info("syncDescription: Updating ConnectWise ticket description");
+                logger.debug("syncDescription: Updating ConnectWise ticket description");
                 try {
-                    ConnectWiseAPICall(descriptionUrl, "PATCH", requestBody);
+                    JSONObject stored = context.call(descriptionUrl, "PATCH", requestBody);
+                    noteFingerprints.written(descriptionCW.getInt("id") + "", talTicket.getDescription(), stored);
                 } catch (TalAdapterSyncException e) {
                     logger.error("syncDescription: CW API Call error - unable to sync description. Http error: {}",
                             e.getHttpStatus() != null ? e.getHttpStatus() : "not specified");
+                    context.noteFailed("description PATCH", e);
                     return descriptionCW;
                 }
 
             } else { // if CW and Symphony description exist and are the same
-                logger.info("syncDescription: No update required for ticket description");
+                logger.debug("syncDescription: No update required for ticket description");
             }
         }
 
@@ -907,7 +2076,7 @@ public class SampleTalAdapterImpl implements TalAdapter {
 
         // Check for null values
         if (SymphonyValue == null) {
-            logger.info("createRequestBody: Symphony value {} does not exist",
+            logger.debug("createRequestBody: Symphony value {} does not exist",
                     requestPath);
 
             if (ConnectWiseValue != null && !Objects.equals(ConnectWiseValue, "null")) {
@@ -919,9 +2088,9 @@ public class SampleTalAdapterImpl implements TalAdapter {
         else if (ConnectWiseValue == null) {
             // ConnectWiseValue will ONLY be null if it does not appear at all on the API GET call
             // For this reason it is safe to use "add" as the operation
-            logger.info("createRequestBody: ConnectWise value {} does not exist",
+            logger.debug("createRequestBody: ConnectWise value {} does not exist",
                     requestPath);
-            logger.info("createRequestBody: Updating ticket " + requestPath);
+            logger.debug("createRequestBody: Updating ticket {}", requestPath);
 
             requestBody =  " {\n" +
                     "        \"op\": \"add\",\n" +
@@ -930,19 +2099,70 @@ public class SampleTalAdapterImpl implements TalAdapter {
                     "    }\n";
         }
         else if (!Objects.equals(SymphonyValue, ConnectWiseValue)) { // Check if there is a need for update
-            logger.info("createRequestBody: Updating ticket {}", requestPath);
+            logger.debug("createRequestBody: Updating ticket {}", requestPath);
             requestBody = " {\n" +
                     "        \"op\": \"replace\",\n" +
                     "        \"path\": \"" + requestPath + "\",\n" +
                     "        \"value\": " + (isString ? "\"" + SymphonyValue + "\"" : SymphonyValue) + " \n" +
                     "    }\n";
         } else {
-            logger.info("createRequestBody: No update in ticket " + requestPath);
+            logger.debug("createRequestBody: No update in ticket {}", requestPath);
         }
 
         return requestBody;
     }
 
+    /**
+     * Checks whether a user can be sent to ConnectWise as a member identifier
+     * @param identifier member identifier, may be null
+     * @return true if the identifier is set and is not known to be invalid
+     */
+    private boolean hasMember(String identifier) {
+        return identifier != null && memberDirectory.isAssignable(identifier);
+    }
+
+    /**
+     * Builds a ConnectWise reference object for a configured value
+     * @param configured configured name, identifier or ID, may be null
+     * @param id locally resolved ID of the configured value, may be null
+     * @param nameKey field ConnectWise resolves the configured value by, i.e. "name"
+     * @param defaultId ID used if no value is configured
+     * @return JSON reference object, i.e. {"id": 199}
+     */
+    private static JSONObject createReference(String configured, Integer id, String nameKey, int defaultId) {
+        JSONObject reference = new JSONObject();
+        if (configured == null) {
+            logger.warn("createReference: {} not setup on Config - using {}", nameKey, defaultId);
+            reference.put("id", defaultId);
+        } else if (id != null) {
+            reference.put("id", id);
+        } else {
+            reference.put(nameKey, configured);
+        }
+        return reference;
+    }
+
+    /**
+     * @return ConnectWise API root URL built out of the current configuration, null if not configured
+     */
+    private String getApiRoot() {
+        return snapshot.getApiRoot();
+    }
+
+    /**
+     * Captures the current configuration snapshot, to be released once no longer used
+     * @return current configuration snapshot
+     */
+    private ConfigSnapshot acquireSnapshot() {
+        while (true) {
+            ConfigSnapshot current = snapshot.acquire();
+            // A concurrent update may have retired the snapshot before it was acquired
+            if (current == snapshot)
+                return current;
+            current.release();
+        }
+    }
+
     public void setTalConfigService(TalConfigService talConfigService) {
         this.talConfigService = talConfigService;
     }
@@ -959,11 +2179,49 @@ public class SampleTalAdapterImpl implements TalAdapter {
         return this.talProxy;
     }
 
+    public void setAccountId(UUID accountId) {
+        this.accountId = accountId;
+    }
+
+    public UUID getAccountId() {
+        return this.accountId;
+    }
+
+    /**
+     * @return ConnectWise call and sync metrics of this adapter
+     */
+    public AdapterMetricsMXBean getMetrics() {
+        return metrics;
+    }
+
     public TicketSystemConfig getConfig() {
-        return config;
+        return snapshot.getConfig();
     }
 
-    public void setConfig(TicketSystemConfig config) {
-        this.config = config;
+    /**
+     * Replaces the configuration. A new snapshot (mappings and ConnectWise client) is built and swapped in,
+     * syncs already running complete on the previous one.
+     * @param config new adapter configuration
+     */
+    public synchronized void setConfig(TicketSystemConfig config) {
+        ConfigSnapshot previous = snapshot;
+        ConfigSnapshot next = ConfigSnapshot.compile(previous.getVersion() + 1, config, metrics, startedAt);
+        snapshot = next;
+        previous.retire();
+
+        syncedTickets.setCapacity(next.getTicketStateCapacity());
+        if (noteFingerprints == null || noteFingerprints.getCapacity() != next.getNoteFingerprintCapacity()) {
+            noteFingerprints = new NoteFingerprints(next.getNoteFingerprintCapacity());
+        } else if (!next.sameEndpoint(previous)) {
+            noteFingerprints.clear();
+        }
+        if (!next.sameEndpoint(previous)) {
+            // Cached ConnectWise data belongs to the previous instance or credentials
+            syncedTickets.clear();
+            ownMember = null;
+            referenceData.invalidate();
+            memberDirectory.invalidate();
+        }
+        logger.info("setConfig: configuration version {} applied", next.getVersion());
     }
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.avispl.symphony.api.tal.dto.Comment;
+import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Syncs of an adapter that have not completed, checkpointed to a file when the adapter stops so that the next start
+ * resumes them instead of waiting for Symphony to update every ticket again.
+ *
+ * Each sync is tracked from its submission with a copy of its ticket as received, since syncing maps the fields
+ * of the ticket in place. The ConnectWise ID and link the sync may have set before it stopped are kept, so that a
+ * resumed sync updates the ticket it created rather than creating another one.
+ */
+public class SyncCheckpoint {
+
+    /**
+     * Extension of checkpoint files, named after the account of the adapter
+     */
+    static final String EXTENSION = ".checkpoint.json";
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Tracked sync: the ticket as received and the ticket being synced
+     */
+    private static final class Tracked {
+        final TalTicket received;
+        final TalTicket syncing;
+
+        Tracked(TalTicket received, TalTicket syncing) {
+            this.received = received;
+            this.syncing = syncing;
+        }
+    }
+
+    private final Map<Long, Tracked> unfinished = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Tracks a sync until {@link #finish(long)}
+     * @param ticket ticket to sync
+     * @return identifier of the sync
+     */
+    public long track(TalTicket ticket) {
+        long id = sequence.incrementAndGet();
+        unfinished.put(id, new Tracked(copy(ticket), ticket));
+        return id;
+    }
+
+    /**
+     * Stops tracking a sync that completed, or that failed in a way resuming it would not fix
+     * @param id identifier of the sync
+     */
+    public void finish(long id) {
+        unfinished.remove(id);
+    }
+
+    /**
+     * @return number of syncs tracked
+     */
+    public int size() {
+        return unfinished.size();
+    }
+
+    /**
+     * @return tickets of the syncs still tracked, as received with the ConnectWise ID and link set so far
+     */
+    public List<TalTicket> getUnfinished() {
+        List<TalTicket> tickets = new ArrayList<>(unfinished.size());
+        for (Tracked tracked : unfinished.values())
+            tickets.add(resumable(tracked));
+        return tickets;
+    }
+
+    /**
+     * @param id identifier of the sync
+     * @return ticket of the sync as received with the ConnectWise ID and link set so far, null if not tracked
+     */
+    public TalTicket getUnfinished(long id) {
+        Tracked tracked = unfinished.get(id);
+        return tracked != null ? resumable(tracked) : null;
+    }
+
+    private static TalTicket resumable(Tracked tracked) {
+        TalTicket ticket = copy(tracked.received);
+        if (ticket.getThirdPartyId() == null)
+            ticket.setThirdPartyId(tracked.syncing.getThirdPartyId());
+        if (ticket.getThirdPartyLink() == null)
+            ticket.setThirdPartyLink(tracked.syncing.getThirdPartyLink());
+        return ticket;
+    }
+
+    /**
+     * @param directory checkpoint directory
+     * @param accountId account of the adapter
+     * @return checkpoint file of the account
+     */
+    public static Path file(Path directory, String accountId) {
+        return directory.resolve(accountId + EXTENSION);
+    }
+
+    /**
+     * Writes tickets to a checkpoint file, replacing it atomically so that a crash never leaves half a checkpoint
+     * @param file checkpoint file
+     * @param tickets tickets of the unfinished syncs
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public static void write(Path file, List<TalTicket> tickets) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        mapper.writeValue(temporary.toFile(), tickets);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads and removes a checkpoint file, so that its syncs are resumed only once
+     * @param file checkpoint file
+     * @return tickets of the checkpointed syncs, empty if there is no checkpoint
+     * @throws IOException if the checkpoint cannot be read
+     */
+    public static List<TalTicket> take(Path file) throws IOException {
+        if (!Files.exists(file))
+            return Collections.emptyList();
+
+        TalTicket[] tickets = mapper.readValue(file.toFile(), TalTicket[].class);
+        Files.delete(file);
+        return Arrays.asList(tickets);
+    }
+
+    /**
+     * @param ticket ticket to copy
+     * @return copy of the ticket, with copies of its comments and extra parameters, which the sync changes, and a
+     * copy of its attachment set
+     */
+    static TalTicket copy(TalTicket ticket) {
+        Set<Comment> comments = null;
+        if (ticket.getComments() != null) {
+            comments = new HashSet<>();
+            for (Comment comment : ticket.getComments())
+                comments.add(new Comment(comment.getSymphonyId(), comment.getThirdPartyId(), comment.getCreator(),
+                        comment.getText(), comment.getLastModified()));
+        }
+        return new TalTicket(ticket.getSymphonyId(), ticket.getSymphonyLink(), ticket.getThirdPartyId(),
+                ticket.getThirdPartyLink(), ticket.getCustomerId(), ticket.getPriority(), ticket.getStatus(),
+                ticket.getSubject(), ticket.getDescription(), ticket.getRequester(), ticket.getAssignedTo(),
+                comments, ticket.getAttachments() != null ? new HashSet<>(ticket.getAttachments()) : null,
+                ticket.getExtraParams() != null ? new HashMap<>(ticket.getExtraParams()) : null,
+                ticket.getLastModified());
+    }
+}
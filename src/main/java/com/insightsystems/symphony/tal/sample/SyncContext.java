@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.avispl.symphony.api.tal.dto.UpdateSource;
+import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
+import org.json.JSONObject;
+
+/**
+ * State of one sync: the configuration snapshot captured when it started, its trace, its priority class and its
+ * deadline
+ */
+public class SyncContext {
+
+    private final ConfigSnapshot snapshot;
+    private final SyncTrace trace;
+    private final SyncPriority priority;
+    private final Deadline deadline;
+    private final SyncDiffEvent diff = new SyncDiffEvent();
+    private final Map<String, UpdateSource> fieldSources = new HashMap<>();
+    private ConflictResolver resolver = ConflictResolver.NONE;
+    private String connection;
+    private String failedNoteOperation;
+    private TalAdapterSyncException noteFailure;
+
+    /**
+     * @param snapshot configuration captured by the sync
+     * @param trace trace of the sync, {@link SyncTrace#NOOP} if not sampled
+     */
+    public SyncContext(ConfigSnapshot snapshot, SyncTrace trace) {
+        this(snapshot, trace, SyncPriority.DEFAULT, Deadline.NONE);
+    }
+
+    /**
+     * @param snapshot configuration captured by the sync
+     * @param trace trace of the sync, {@link SyncTrace#NOOP} if not sampled
+     * @param priority priority class of the sync, from the Symphony priority of its ticket
+     * @param deadline deadline of the sync, bounding all its ConnectWise calls
+     */
+    public SyncContext(ConfigSnapshot snapshot, SyncTrace trace, SyncPriority priority, Deadline deadline) {
+        this.snapshot = snapshot;
+        this.trace = trace;
+        this.priority = priority;
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return configuration captured by the sync
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return trace of the sync
+     */
+    public SyncTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * @return priority class of the sync
+     */
+    public SyncPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return deadline of the sync
+     */
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return resolver of the values Symphony and ConnectWise disagree on, {@link ConflictResolver#NONE} if not set
+     */
+    public ConflictResolver getResolver() {
+        return resolver;
+    }
+
+    /**
+     * @param resolver resolver of the values Symphony and ConnectWise disagree on
+     */
+    public void resolveWith(ConflictResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Records how the ConnectWise ticket was reached
+     * @param connection "link", "id", "create", or "known" if taken from the last exchange without reading it
+     */
+    public void connectedBy(String connection) {
+        this.connection = connection;
+        trace.decision(connection);
+    }
+
+    /**
+     * @return how the ConnectWise ticket was reached, null if it was not reached
+     */
+    public String getConnection() {
+        return connection;
+    }
+
+    /**
+     * Records a ConnectWise ticket field PATCHed with the Symphony value
+     * @param path ConnectWise API path of the field, i.e. "status/name"
+     */
+    public void fieldPatched(String path) {
+        fieldSources.put(field(path), UpdateSource.SYMPHONY);
+        if (diff.isEnabled())
+            diff.patchedFields = diff.patchedFields == null ? path : diff.patchedFields + "," + path;
+    }
+
+    /**
+     * Records a Symphony ticket field updated with the ConnectWise value
+     * @param path ConnectWise API path of the field, i.e. "status/name"
+     */
+    public void fieldFromConnectWise(String path) {
+        fieldSources.put(field(path), UpdateSource.THIRD_PARTY);
+        if (diff.isEnabled())
+            diff.symphonyFields = diff.symphonyFields == null ? path : diff.symphonyFields + "," + path;
+    }
+
+    /**
+     * @param field ConnectWise field, i.e. "status"
+     * @return side whose value the sync gave the field, null if both sides had the same value
+     */
+    public UpdateSource getFieldSource(String field) {
+        return fieldSources.get(field);
+    }
+
+    /**
+     * @param path ConnectWise API path of a field, i.e. "status/name"
+     * @return field of the path, i.e. "status"
+     */
+    private static String field(String path) {
+        int slash = path.indexOf('/');
+        return slash < 0 ? path : path.substring(0, slash);
+    }
+
+    /**
+     * Records the result of the comments comparison
+     * @param toPatch number of comments to PATCH on ConnectWise
+     * @param toPost number of comments to POST on ConnectWise
+     * @param fromConnectWise number of ConnectWise comments added to the Symphony ticket
+     */
+    public void commentsDiffed(int toPatch, int toPost, int fromConnectWise) {
+        diff.commentsToPatch = toPatch;
+        diff.commentsToPost = toPost;
+        diff.commentsFromConnectWise = fromConnectWise;
+    }
+
+    /**
+     * Records a note write that failed or was not made, the ticket then having to be synced again
+     * @param operation note operation, i.e. "note POST"
+     * @param e error of the operation
+     */
+    public void noteFailed(String operation, TalAdapterSyncException e) {
+        failedNoteOperation = operation;
+        noteFailure = e;
+    }
+
+    /**
+     * @return note operation that failed last, null if none did
+     */
+    public String getFailedNoteOperation() {
+        return failedNoteOperation;
+    }
+
+    /**
+     * @return error of the note operation that failed last, null if none did
+     */
+    public TalAdapterSyncException getNoteFailure() {
+        return noteFailure;
+    }
+
+    /**
+     * Emits the flight recorder event of the differences found by the sync
+     * @param symphonyId Symphony ID of the synced ticket
+     */
+    void commitDiff(String symphonyId) {
+        if (diff.shouldCommit()) {
+            diff.symphonyId = symphonyId;
+            diff.commit();
+        }
+    }
+
+    /**
+     * Performs an HTTP request call to ConnectWise API with the client of the captured configuration
+     * @param url the HTTP request URI
+     * @param method the HTTP method (i.e. GET)
+     * @param requestBody the HTTP request's body
+     * @return JSON object with the HTTP request response
+     * @throws TalAdapterSyncException if request fails
+     */
+    public JSONObject call(String url, String method, String requestBody) throws TalAdapterSyncException {
+        return snapshot.getClient().call(url, method, requestBody, trace, priority, deadline);
+    }
+
+    /**
+     * Reads a ConnectWise ticket, batched with the reads of concurrent syncs if the URL is the URL of a ticket by ID
+     * @param url ticket URL
+     * @return JSON object of the ticket
+     * @throws TalAdapterSyncException if the ticket cannot be read
+     * @see TicketBatchReader
+     */
+    public JSONObject getTicket(String url) throws TalAdapterSyncException {
+        return snapshot.getTicketReader().read(url, this);
+    }
+}
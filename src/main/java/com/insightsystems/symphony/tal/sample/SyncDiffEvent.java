@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of the differences found by a sync between Symphony and ConnectWise
+ */
+@Name("com.insightsystems.symphony.tal.SyncDiff")
+@Label("Sync Diff")
+@Category({"Symphony TAL", "Sync"})
+@Description("Ticket fields and comments found different between Symphony and ConnectWise")
+@StackTrace(false)
+class SyncDiffEvent extends Event {
+
+    @Label("Symphony ID")
+    String symphonyId;
+
+    @Label("Patched Fields")
+    @Description("ConnectWise ticket fields PATCHed, comma separated")
+    String patchedFields;
+
+    @Label("Symphony Fields")
+    @Description("Symphony ticket fields updated from ConnectWise, comma separated")
+    String symphonyFields;
+
+    @Label("Comments To Patch")
+    int commentsToPatch;
+
+    @Label("Comments To Post")
+    int commentsToPost;
+
+    @Label("Comments From ConnectWise")
+    int commentsFromConnectWise;
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of one ticket sync, from start to end
+ */
+@Name("com.insightsystems.symphony.tal.Sync")
+@Label("Ticket Sync")
+@Category({"Symphony TAL", "Sync"})
+@Description("Synchronization of a Symphony ticket with ConnectWise")
+@StackTrace(false)
+class SyncEvent extends Event {
+
+    @Label("Symphony ID")
+    String symphonyId;
+
+    @Label("ConnectWise ID")
+    String thirdPartyId;
+
+    @Label("Connection")
+    @Description("How the ConnectWise ticket was reached: link, id or create")
+    String connection;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Configuration Version")
+    long configVersion;
+}
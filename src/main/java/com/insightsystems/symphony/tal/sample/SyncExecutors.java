@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors of asynchronous ticket syncs.
+ *
+ * This is the Java 11 variant: syncs share a pool of platform threads, queueing once they are all busy.
+ * On Java 21+ the multi-release jar provides the variant of src/main/java21 instead, which runs every sync on
+ * its own virtual thread.
+ */
+final class SyncExecutors {
+
+    private SyncExecutors() {
+    }
+
+    /**
+     * @param platformThreads number of threads syncs share
+     * @return new executor of syncs
+     */
+    static ExecutorService newSyncExecutor(int platformThreads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "cw-sync-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(platformThreads, platformThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return new executor of hedged ConnectWise requests, each request of a hedged GET running on its own thread
+     */
+    static ExecutorService newHedgeExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "cw-hedge-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return description of the threads syncs run on, for logs
+     */
+    static String describe() {
+        return "platform threads";
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+/**
+ * Priority class of a sync, from the Symphony priority of its ticket.
+ *
+ * ConnectWise calls waiting for a connection are served by {@link PriorityCallLimiter} in proportion to the
+ * weight of their class, so that a flood of low priority updates cannot hold back critical ones.
+ */
+public enum SyncPriority {
+    CRITICAL("Critical", 8),
+    MAJOR("Major", 4),
+    MINOR("Minor", 2),
+    INFORMATIONAL("Informational", 1);
+
+    /**
+     * Class of syncs whose ticket priority is unknown, and of calls made outside syncs
+     */
+    public static final SyncPriority DEFAULT = MINOR;
+
+    private final String symphonyPriority;
+    private final int defaultWeight;
+
+    SyncPriority(String symphonyPriority, int defaultWeight) {
+        this.symphonyPriority = symphonyPriority;
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * @return Symphony priority of the class, i.e. "Critical"
+     */
+    public String getSymphonyPriority() {
+        return symphonyPriority;
+    }
+
+    /**
+     * @return share of the ConnectWise connections the class gets when
+     * {@link ConnectWiseConfigProperty#PRIORITY_WEIGHTS} is not configured
+     */
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    /**
+     * @return default weights of the classes, indexed by {@link #ordinal()}
+     */
+    public static int[] defaultWeights() {
+        SyncPriority[] priorities = values();
+        int[] weights = new int[priorities.length];
+        for (int i = 0; i < priorities.length; i++)
+            weights[i] = priorities[i].defaultWeight;
+        return weights;
+    }
+
+    /**
+     * @param symphonyPriority Symphony priority of a ticket, before its mapping to ConnectWise
+     * @return class of the priority, {@link #DEFAULT} if unknown
+     */
+    public static SyncPriority of(String symphonyPriority) {
+        SyncPriority priority = find(symphonyPriority);
+        return priority != null ? priority : DEFAULT;
+    }
+
+    /**
+     * @param symphonyPriority Symphony priority, i.e. "Critical"
+     * @return class of the priority, null if unknown
+     */
+    public static SyncPriority find(String symphonyPriority) {
+        if (symphonyPriority != null) {
+            for (SyncPriority priority : values()) {
+                if (priority.symphonyPriority.equalsIgnoreCase(symphonyPriority.trim()))
+                    return priority;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lightweight trace of one sync: a span per stage, the ConnectWise calls made with their sizes,
+ * and the decisions taken (link or ID connection, ticket creation, skipped PATCH...).
+ *
+ * Only sampled syncs get a recording trace, every other sync uses {@link #NOOP} whose methods return immediately.
+ */
+public class SyncTrace {
+
+    /**
+     * Trace of syncs that are not sampled
+     */
+    public static final SyncTrace NOOP = new SyncTrace(null, false);
+
+    private final String ticketId;
+    private final boolean enabled;
+    private final long startNanos = System.nanoTime();
+    private final long startMillis = System.currentTimeMillis();
+    private final List<String> events;
+
+    private long durationNanos;
+    private long bytesOut;
+    private long bytesIn;
+    private int calls;
+    private String outcome;
+
+    private SyncTrace(String ticketId, boolean enabled) {
+        this.ticketId = ticketId;
+        this.enabled = enabled;
+        this.events = enabled ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Starts a recording trace
+     * @param ticketId Symphony ID of the synced ticket
+     * @return new trace
+     */
+    public static SyncTrace start(String ticketId) {
+        return new SyncTrace(ticketId, true);
+    }
+
+    /**
+     * @return whether this trace records anything
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return start time of a stage, to be passed to {@link #span(String, long)}
+     */
+    public long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a stage
+     * @param stage stage name, i.e. "notes GET"
+     * @param begin value returned by {@link #begin()} when the stage started
+     */
+    public void span(String stage, long begin) {
+        if (!enabled)
+            return;
+
+        long now = System.nanoTime();
+        add(String.format("  +%dms %dms %s", millis(begin - startNanos), millis(now - begin), stage));
+    }
+
+    /**
+     * Records a decision taken by the sync
+     * @param decision decision, i.e. "create"
+     */
+    public void decision(String decision) {
+        if (!enabled)
+            return;
+
+        add(String.format("  +%dms decision %s", millis(System.nanoTime() - startNanos), decision));
+    }
+
+    /**
+     * Records a ConnectWise call
+     * @param method HTTP method
+     * @param endpoint endpoint class of the call
+     * @param statusCode HTTP status code, 0 if no response was received
+     * @param bytesOut request body size
+     * @param bytesIn response body size
+     * @param nanos call latency in nanoseconds
+     */
+    public void call(String method, AdapterMetrics.Endpoint endpoint, int statusCode, long bytesOut, long bytesIn,
+                     long nanos) {
+        if (!enabled)
+            return;
+
+        synchronized (this) {
+            calls++;
+            this.bytesOut += bytesOut;
+            this.bytesIn += bytesIn;
+        }
+        add(String.format("  +%dms %dms http %s %s %d out=%d in=%d", millis(System.nanoTime() - nanos - startNanos),
+                millis(nanos), method, endpoint.name().toLowerCase(Locale.ROOT), statusCode, bytesOut, bytesIn));
+    }
+
+    /**
+     * Ends the trace
+     * @param outcome outcome of the sync, i.e. "ok"
+     */
+    public void end(String outcome) {
+        if (!enabled)
+            return;
+
+        this.outcome = outcome;
+        this.durationNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return total duration of the sync in nanoseconds, 0 until {@link #end(String)} is called
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    private synchronized void add(String event) {
+        events.add(event);
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append("sync ticket=").append(ticketId)
+                .append(" started=").append(Instant.ofEpochMilli(startMillis))
+                .append(" total=").append(millis(durationNanos)).append("ms")
+                .append(" calls=").append(calls)
+                .append(" out=").append(bytesOut)
+                .append(" in=").append(bytesIn)
+                .append(" outcome=").append(outcome);
+        for (String event : events)
+            builder.append('\n').append(event);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples sync traces and keeps the slowest ones in a bounded in-memory buffer that can be dumped on demand,
+ * either through {@link #dumpTraces()} or over JMX.
+ */
+public class SyncTraceRecorder implements SyncTracesMXBean {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SyncTraceRecorder.class);
+
+    private final int capacity;
+
+    /**
+     * Kept traces, fastest at the head so it is the one evicted
+     */
+    private final PriorityQueue<SyncTrace> slowest =
+            new PriorityQueue<>(Comparator.comparingLong(SyncTrace::getDurationNanos));
+
+    private volatile ObjectName objectName;
+
+    /**
+     * @param capacity maximum number of traces kept
+     */
+    public SyncTraceRecorder(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Starts the trace of a sync
+     * @param ticketId Symphony ID of the synced ticket
+     * @param sampleRate fraction of syncs traced, between 0 and 1
+     * @return recording trace if the sync is sampled, {@link SyncTrace#NOOP} otherwise
+     */
+    public SyncTrace start(String ticketId, double sampleRate) {
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)
+            return SyncTrace.NOOP;
+
+        return SyncTrace.start(ticketId);
+    }
+
+    /**
+     * Ends a trace and keeps it if it is among the slowest
+     * @param trace trace to end
+     * @param outcome outcome of the sync, i.e. "ok"
+     */
+    public void finish(SyncTrace trace, String outcome) {
+        if (!trace.isEnabled())
+            return;
+
+        trace.end(outcome);
+        synchronized (slowest) {
+            if (slowest.size() < capacity) {
+                slowest.add(trace);
+            } else if (slowest.peek().getDurationNanos() < trace.getDurationNanos()) {
+                slowest.poll();
+                slowest.add(trace);
+            }
+        }
+    }
+
+    /**
+     * Publishes the kept traces on the platform MBean server
+     * @param name value of the "name" key of the MBean object name, i.e. the account ID
+     */
+    public void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName(
+                    "com.insightsystems.symphony.tal:type=ConnectWiseAdapterTraces,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (Exception e) {
+            logger.warn("register: unable to register sync traces MBean - {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the kept traces from the platform MBean server
+     */
+    public void unregister() {
+        ObjectName objectName = this.objectName;
+        if (objectName == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            logger.debug("unregister: unable to unregister sync traces MBean - {}", e.getMessage());
+        }
+        this.objectName = null;
+    }
+
+    @Override
+    public int getTraceCount() {
+        synchronized (slowest) {
+            return slowest.size();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public String dumpTraces() {
+        List<SyncTrace> traces;
+        synchronized (slowest) {
+            traces = new ArrayList<>(slowest);
+        }
+        traces.sort(Comparator.comparingLong(SyncTrace::getDurationNanos).reversed());
+
+        StringBuilder builder = new StringBuilder();
+        for (SyncTrace trace : traces)
+            builder.append(trace).append('\n');
+        return builder.toString();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (slowest) {
+            slowest.clear();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+/**
+ * JMX view of the sync traces kept by {@link SyncTraceRecorder}
+ */
+public interface SyncTracesMXBean {
+
+    /**
+     * @return number of traces currently kept
+     */
+    int getTraceCount();
+
+    /**
+     * @return maximum number of traces kept
+     */
+    int getCapacity();
+
+    /**
+     * @return the kept traces, slowest first
+     */
+    String dumpTraces();
+
+    /**
+     * Drops every kept trace
+     */
+    void clear();
+}
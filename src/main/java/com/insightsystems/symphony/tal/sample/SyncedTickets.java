@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.avispl.symphony.api.tal.dto.Comment;
+import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.avispl.symphony.api.tal.dto.UpdateSource;
+import org.json.JSONObject;
+
+/**
+ * Tickets as last exchanged with Symphony, keyed by ConnectWise ticket ID, with the origin of each ticket field.
+ *
+ * Callback notifications only carry the ConnectWise side of a ticket; the Symphony ID, link and customer it is pushed
+ * with come from here. The origin of a field tells which side supplied its value last and holds the digest of the
+ * ConnectWise value it was exchanged as, so that a value the adapter wrote to ConnectWise is not taken back as a
+ * ConnectWise change when it comes back, whatever its mapping. Likewise a Symphony update carrying exactly the values
+ * last exchanged, with no ConnectWise change notified since, is the echo of a push. The values last exchanged are
+ * also what {@link ConflictResolver} tells the side that changed a value by, and with no ConnectWise change notified
+ * since, the ConnectWise ticket as last read stands for ConnectWise, so that a sync can write without reading first.
+ *
+ * The least recently used tickets are dropped beyond the capacity. Tickets are kept as copies, comments included,
+ * since Symphony and syncs may change the ticket they were given; a ticket exchanged again unchanged keeps its copy.
+ * Kept tickets and ConnectWise tickets are shared with readers, which must not change them.
+ */
+public class SyncedTickets {
+
+    /**
+     * ConnectWise fields whose origin is kept
+     */
+    static final String[] FIELDS = {"summary", "priority", "status", "owner"};
+
+    /**
+     * Fields of the ConnectWise ticket kept, as compared by syncs
+     */
+    private static final String[] CONNECTWISE_FIELDS = {"id", "summary", "priority", "status", "owner", "board",
+            "_info"};
+
+    /**
+     * Origin of the value of a ticket field
+     */
+    public static final class Origin {
+        private final UpdateSource source;
+        private final long connectWiseDigest;
+        private final long modified;
+
+        /**
+         * @param source side that supplied the value last
+         * @param connectWiseDigest digest of the ConnectWise value, see {@link ConnectWiseKeys#digest(CharSequence...)}
+         * @param modified time the source last modified the value, in epoch milliseconds; 0 if unknown
+         */
+        public Origin(UpdateSource source, long connectWiseDigest, long modified) {
+            this.source = source;
+            this.connectWiseDigest = connectWiseDigest;
+            this.modified = modified;
+        }
+
+        public UpdateSource getSource() {
+            return source;
+        }
+
+        public long getConnectWiseDigest() {
+            return connectWiseDigest;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+    }
+
+    /**
+     * Ticket as last exchanged
+     */
+    public static final class Synced {
+        private final TalTicket ticket;
+        private final JSONObject connectWise;
+        private final Map<String, Origin> origins;
+        private final long readAt;
+        private final boolean settled;
+        private long notifiedAt;
+
+        private Synced(TalTicket ticket, JSONObject connectWise, Map<String, Origin> origins, long readAt,
+                       boolean settled, long notifiedAt) {
+            this.ticket = ticket;
+            this.connectWise = connectWise;
+            this.origins = origins;
+            this.readAt = readAt;
+            this.settled = settled;
+            this.notifiedAt = notifiedAt;
+        }
+
+        /**
+         * @return ticket as last exchanged, with Symphony values
+         */
+        public TalTicket getTicket() {
+            return ticket;
+        }
+
+        /**
+         * @return origins of the ticket fields by ConnectWise field, i.e. "status"
+         */
+        public Map<String, Origin> getOrigins() {
+            return origins;
+        }
+
+        /**
+         * @return ConnectWise ticket as last read, with the fields syncs compare only
+         */
+        public JSONObject getConnectWise() {
+            return connectWise;
+        }
+
+        /**
+         * @return false if writes of the exchange failed and are retried
+         */
+        public boolean isSettled() {
+            return settled;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} before ConnectWise was last read for the ticket
+         */
+        public long getReadAt() {
+            return readAt;
+        }
+
+        /**
+         * Callbacks can be lost, so a ticket read stands for ConnectWise only for a while, and only once notifications
+         * of its changes are registered
+         * @param registeredAt {@link System#nanoTime()} once the ConnectWise callback was registered
+         * @param maxAgeNanos time the ticket read stands for ConnectWise, in nanoseconds
+         * @return true if the exchange is settled, ConnectWise was read after the callback was registered and within
+         * the maximum age, and ConnectWise notified no change of the ticket since
+         */
+        public boolean isFresh(long registeredAt, long maxAgeNanos) {
+            return settled && readAt - registeredAt > 0 && System.nanoTime() - readAt < maxAgeNanos &&
+                    (notifiedAt == 0 || notifiedAt - readAt < 0);
+        }
+
+        /**
+         * @param ticket ticket as received from Symphony
+         * @return true if the ticket has the link, fields, description and comments last exchanged
+         */
+        boolean sameTicket(TalTicket ticket) {
+            return Objects.equals(ticket.getThirdPartyLink(), this.ticket.getThirdPartyLink()) &&
+                    Objects.equals(ticket.getSubject(), this.ticket.getSubject()) &&
+                    Objects.equals(ticket.getStatus(), this.ticket.getStatus()) &&
+                    Objects.equals(ticket.getPriority(), this.ticket.getPriority()) &&
+                    Objects.equals(ticket.getAssignedTo(), this.ticket.getAssignedTo()) &&
+                    Objects.equals(ticket.getRequester(), this.ticket.getRequester()) &&
+                    sameNotes(ticket);
+        }
+
+        /**
+         * @param ticket ticket as received from Symphony
+         * @return true if the ticket has the description and exactly the comments last exchanged, by ConnectWise ID
+         * and text
+         */
+        public boolean sameNotes(TalTicket ticket) {
+            if (!Objects.equals(ticket.getDescription(), this.ticket.getDescription()))
+                return false;
+            Set<Comment> comments = ticket.getComments() != null ? ticket.getComments() : Collections.emptySet();
+            if (comments.size() != this.ticket.getComments().size())
+                return false;
+
+            Map<String, String> lastComments = new HashMap<>();
+            for (Comment comment : this.ticket.getComments())
+                lastComments.put(comment.getThirdPartyId(), comment.getText());
+            for (Comment comment : comments) {
+                if (comment.getThirdPartyId() == null ||
+                        !Objects.equals(lastComments.remove(comment.getThirdPartyId()), comment.getText()))
+                    return false;
+            }
+            return lastComments.isEmpty();
+        }
+    }
+
+    private final Map<Long, Synced> tickets;
+    private int capacity;
+
+    /**
+     * @param capacity maximum number of tickets kept
+     */
+    public SyncedTickets(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.tickets = new LinkedHashMap<Long, Synced>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Synced> eldest) {
+                return size() > SyncedTickets.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Changes the maximum number of tickets kept, dropping the least recently used tickets beyond it
+     * @param capacity maximum number of tickets kept
+     */
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        Iterator<Long> eldest = tickets.keySet().iterator();
+        while (tickets.size() > this.capacity && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return maximum number of tickets kept
+     */
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Keeps a copy of a ticket exchanged with Symphony
+     * @param ticket ticket as Symphony has it now, ignored without a valid ConnectWise ID
+     * @param CWTicket ConnectWise ticket, as last returned by ConnectWise
+     * @param origins origins of the ticket fields by ConnectWise field, kept as is and not to be changed afterwards
+     * @param readAt {@link System#nanoTime()} before ConnectWise was read for the exchange
+     * @param settled false if writes of the exchange failed and are retried, the ticket is then never an echo
+     */
+    public void put(TalTicket ticket, JSONObject CWTicket, Map<String, Origin> origins, long readAt,
+                    boolean settled) {
+        long ticketId = ConnectWiseKeys.id(ticket.getThirdPartyId());
+        if (ticketId <= 0)
+            return;
+
+        // ConnectWise responses are not changed once read: the projection shares their values
+        JSONObject connectWise = new JSONObject(CWTicket, CONNECTWISE_FIELDS);
+        Map<String, Origin> kept = Collections.unmodifiableMap(origins);
+        synchronized (this) {
+            Synced previous = tickets.get(ticketId);
+            TalTicket last = previous != null && previous.sameTicket(ticket) &&
+                    Objects.equals(ticket.getSymphonyId(), previous.ticket.getSymphonyId()) &&
+                    Objects.equals(ticket.getCustomerId(), previous.ticket.getCustomerId()) &&
+                    Objects.equals(ticket.getLastModified(), previous.ticket.getLastModified()) ?
+                    previous.ticket : copy(ticket);
+            tickets.put(ticketId, new Synced(last, connectWise, kept, readAt, settled,
+                    previous != null ? previous.notifiedAt : 0));
+        }
+    }
+
+    /**
+     * @param ticketId ConnectWise ticket ID
+     * @return ticket as last exchanged, shared, null if not kept
+     */
+    public synchronized Synced last(long ticketId) {
+        return tickets.get(ticketId);
+    }
+
+    /**
+     * @param ticketId ConnectWise ticket ID
+     * @return ticket as last exchanged with a copy of the ticket, to be changed, null if not kept
+     */
+    public synchronized Synced get(long ticketId) {
+        Synced synced = tickets.get(ticketId);
+        return synced != null ? new Synced(copy(synced.ticket), synced.connectWise, synced.origins, synced.readAt,
+                synced.settled, synced.notifiedAt) : null;
+    }
+
+    /**
+     * @param ticketId ConnectWise ticket ID
+     * @return origins of the ticket fields as last exchanged, empty if the ticket is not kept
+     */
+    public synchronized Map<String, Origin> origins(long ticketId) {
+        Synced synced = tickets.get(ticketId);
+        return synced != null ? synced.origins : Collections.emptyMap();
+    }
+
+    /**
+     * Records that ConnectWise notified a change of a ticket not made by the adapter
+     * @param ticketId ConnectWise ticket ID
+     */
+    public synchronized void notified(long ticketId) {
+        Synced synced = tickets.get(ticketId);
+        if (synced != null)
+            synced.notifiedAt = System.nanoTime();
+    }
+
+    /**
+     * Drops a ticket whose last exchange is no longer known, i.e. after a failed write
+     * @param ticketId ConnectWise ticket ID
+     */
+    public synchronized void forget(long ticketId) {
+        tickets.remove(ticketId);
+    }
+
+    /**
+     * Checks whether a Symphony update only echoes the ticket last exchanged: same fields, same notes, no
+     * ConnectWise change notified since ConnectWise was read, and no write left to retry
+     * @param ticket ticket as received from Symphony
+     * @param registeredAt {@link System#nanoTime()} once the ConnectWise callback was registered
+     * @param maxAgeNanos time a ticket read stands for ConnectWise, in nanoseconds
+     * @return true if syncing the ticket would change nothing
+     * @see Synced#isFresh(long, long)
+     */
+    public synchronized boolean isEcho(TalTicket ticket, long registeredAt, long maxAgeNanos) {
+        Synced synced = tickets.get(ConnectWiseKeys.id(ticket.getThirdPartyId()));
+        return synced != null && synced.isFresh(registeredAt, maxAgeNanos) && synced.sameTicket(ticket);
+    }
+
+    /**
+     * Drops every ticket, i.e. when the ConnectWise instance changes
+     */
+    public synchronized void clear() {
+        tickets.clear();
+    }
+
+    /**
+     * @return number of tickets kept
+     */
+    public synchronized int size() {
+        return tickets.size();
+    }
+
+    /**
+     * @param CWTicket ConnectWise ticket
+     * @param field ConnectWise field, one of {@link #FIELDS}
+     * @return value of the field as Symphony is given it: the summary, the name of the priority and status, the
+     * identifier of the owner; null if missing
+     */
+    static String connectWiseValue(JSONObject CWTicket, String field) {
+        if ("summary".equals(field))
+            return CWTicket.optString(field, null);
+        JSONObject reference = CWTicket.optJSONObject(field);
+        return reference != null ? reference.optString("owner".equals(field) ? "identifier" : "name", null) : null;
+    }
+
+    /**
+     * @return copy of the ticket with copies of its comments, attachments left out
+     */
+    private static TalTicket copy(TalTicket ticket) {
+        Set<Comment> comments = new HashSet<>();
+        if (ticket.getComments() != null) {
+            for (Comment comment : ticket.getComments())
+                comments.add(new Comment(comment.getSymphonyId(), comment.getThirdPartyId(), comment.getCreator(),
+                        comment.getText(), comment.getLastModified()));
+        }
+        return new TalTicket(ticket.getSymphonyId(), ticket.getSymphonyLink(), ticket.getThirdPartyId(),
+                ticket.getThirdPartyLink(), ticket.getCustomerId(), ticket.getPriority(), ticket.getStatus(),
+                ticket.getSubject(), ticket.getDescription(), ticket.getRequester(), ticket.getAssignedTo(),
+                comments, new HashSet<>(),
+                ticket.getExtraParams() != null ? new HashMap<>(ticket.getExtraParams()) : null, ticket.getLastModified());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Reads of ConnectWise tickets by ID, batched across concurrent syncs.
+ *
+ * The first sync to read a ticket opens a batch and waits up to the maximum wait for others to join it, then reads
+ * every ticket of the batch with one {@code GET .../tickets?conditions=id in (...)}, projected on the fields syncs
+ * compare; a full batch is read at once. Each sync gets its own ticket back, or a 404 if ConnectWise did not return
+ * it. A batch of one ticket is read with the plain {@code GET .../tickets/{id}}, so that a sync on its own only pays
+ * the wait; other syncs of that ticket in the batch share the result.
+ *
+ * Syncs reading the same ticket in one batch share its JSON object, which syncs only read.
+ */
+public class TicketBatchReader {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TicketBatchReader.class);
+
+    /**
+     * Fields of the ticket read by syncs
+     */
+    static final String FIELDS = "id,summary,priority/id,priority/name,status/id,status/name,owner/identifier," +
+            "board/id,_info/lastUpdated";
+
+    /**
+     * Tickets read together, in the order they joined
+     */
+    private static final class Batch {
+        final Map<Long, CompletableFuture<JSONObject>> reads = new LinkedHashMap<>();
+        SyncPriority priority = SyncPriority.INFORMATIONAL;
+    }
+
+    private final ConnectWiseClient client;
+    private final String ticketsUrl;
+    private final int batchSize;
+    private final long maxWaitNanos;
+    private final AdapterMetrics metrics;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition closed = lock.newCondition();
+    private Batch open;
+
+    /**
+     * @param client ConnectWise client the tickets are read with
+     * @param ticketsUrl URL of the tickets endpoint, i.e. "https://connect.myCompany.com.au/v4_6_release/apis/3.0
+     *                   /service/tickets"; null if not configured, reads are then not batched
+     * @param batchSize maximum number of tickets read at once, 1 or less to read every ticket on its own
+     * @param maxWaitMillis maximum wait for other tickets to read together, in milliseconds
+     * @param metrics metrics batched reads are recorded to
+     */
+    public TicketBatchReader(ConnectWiseClient client, String ticketsUrl, int batchSize, long maxWaitMillis,
+                             AdapterMetrics metrics) {
+        this.client = client;
+        this.ticketsUrl = ticketsUrl;
+        this.batchSize = batchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reads a ConnectWise ticket, in a batch if the URL is the URL of a ticket by ID
+     * @param url ticket URL, i.e. the Symphony third party link
+     * @param context state of the sync
+     * @return JSON object of the ticket; only the fields of {@link #FIELDS} if read in a batch
+     * @throws TalAdapterSyncException if the ticket cannot be read, with {@link HttpStatus#NOT_FOUND} if it does not
+     * exist
+     */
+    public JSONObject read(String url, SyncContext context) throws TalAdapterSyncException {
+        long ticketId = batchSize > 1 ? ticketId(url) : -1;
+        if (ticketId < 0)
+            return context.call(url, "GET", null);
+
+        Batch batch;
+        CompletableFuture<JSONObject> read;
+        boolean leader = false;
+        lock.lock();
+        try {
+            if (open == null) {
+                open = new Batch();
+                leader = true;
+            }
+            batch = open;
+            read = batch.reads.computeIfAbsent(ticketId, id -> new CompletableFuture<>());
+            if (context.getPriority().ordinal() < batch.priority.ordinal())
+                batch.priority = context.getPriority();
+
+            if (batch.reads.size() >= batchSize) {
+                open = null;
+                closed.signalAll();
+            } else if (leader) {
+                long wait = Math.min(maxWaitNanos, context.getDeadline().remainingNanos());
+                try {
+                    while (open == batch && wait > 0)
+                        wait = closed.awaitNanos(wait);
+                } catch (InterruptedException e) {
+                    // The batch is still read, for the syncs waiting on it
+                    Thread.currentThread().interrupt();
+                }
+                if (open == batch)
+                    open = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (leader) {
+            if (batch.reads.size() == 1)
+                return readAlone(url, read, context);
+            send(batch, context.getTrace());
+        }
+        return await(read, context);
+    }
+
+    /**
+     * @param url request URL
+     * @return ConnectWise ticket ID if the URL is the URL of a ticket of this reader, -1 otherwise
+     */
+    long ticketId(String url) {
+        if (ticketsUrl == null || url == null || !url.startsWith(ticketsUrl + "/"))
+            return -1;
+
+        String id = url.substring(ticketsUrl.length() + 1);
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) < '0' || id.charAt(i) > '9')
+                return -1;
+        }
+        return ConnectWiseKeys.id(id);
+    }
+
+    /**
+     * Reads the only ticket of a closed batch with the plain GET, and hands it to the other syncs of the same ticket
+     * that joined the batch
+     */
+    private static JSONObject readAlone(String url, CompletableFuture<JSONObject> read, SyncContext context)
+            throws TalAdapterSyncException {
+        try {
+            JSONObject ticket = context.call(url, "GET", null);
+            read.complete(ticket);
+            return ticket;
+        } catch (TalAdapterSyncException | RuntimeException e) {
+            read.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the tickets of a closed batch and hands each to its syncs
+     */
+    private void send(Batch batch, SyncTrace trace) {
+        StringJoiner ids = new StringJoiner(",", "id in (", ")");
+        for (Long ticketId : batch.reads.keySet())
+            ids.add(ticketId.toString());
+        String url = ticketsUrl + "?conditions=" + URLEncoder.encode(ids.toString(), StandardCharsets.UTF_8) +
+                "&fields=" + FIELDS + "&pageSize=" + batch.reads.size();
+
+        logger.debug("send: reading {} tickets in one batch", batch.reads.size());
+        try {
+            // The batch serves syncs with deadlines of their own, each bounds its wait for it
+            JSONObject response = client.call(url, "GET", null, trace, batch.priority, Deadline.NONE);
+            if (response != null && response.has("JSONArray")) {
+                JSONArray tickets = response.getJSONArray("JSONArray");
+                for (int i = 0; i < tickets.length(); i++) {
+                    JSONObject ticket = tickets.getJSONObject(i);
+                    CompletableFuture<JSONObject> read = batch.reads.get(ticket.optLong("id"));
+                    if (read != null)
+                        read.complete(ticket);
+                }
+            }
+            for (Map.Entry<Long, CompletableFuture<JSONObject>> read : batch.reads.entrySet()) {
+                read.getValue().completeExceptionally(new TalAdapterSyncException("Ticket " + read.getKey() +
+                        " not found", HttpStatus.NOT_FOUND));
+            }
+            metrics.ticketsBatched(batch.reads.size());
+        } catch (TalAdapterSyncException e) {
+            fail(batch, e);
+        } catch (RuntimeException e) {
+            fail(batch, new TalAdapterSyncException("Batched ticket read failed: " + e.getMessage(), e));
+        }
+    }
+
+    private static void fail(Batch batch, TalAdapterSyncException e) {
+        logger.error("send: batched read of {} tickets failed - {}", batch.reads.size(), e.getMessage());
+        for (CompletableFuture<JSONObject> read : batch.reads.values())
+            read.completeExceptionally(e);
+    }
+
+    /**
+     * Waits for the ticket of a batch, within the deadline of the sync
+     */
+    private static JSONObject await(CompletableFuture<JSONObject> read, SyncContext context)
+            throws TalAdapterSyncException {
+        try {
+            return read.get(context.getDeadline().remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw Deadline.exceeded("batched ticket GET");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TalAdapterSyncException)
+                throw (TalAdapterSyncException) e.getCause();
+            throw new TalAdapterSyncException("Batched ticket read failed: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TalAdapterSyncException(e + " - batched ticket read interrupted");
+        }
+    }
+}
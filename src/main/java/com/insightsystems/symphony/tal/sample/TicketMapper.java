@@ -5,12 +5,8 @@
 package com.insightsystems.symphony.tal.sample;
 
 import java.util.Collections;
-import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
-import com.avispl.symphony.api.tal.TalConfigService;
 import com.avispl.symphony.api.tal.dto.TalTicket;
 import com.avispl.symphony.api.tal.dto.TicketSystemConfig;
 
@@ -29,18 +25,72 @@ public class TicketMapper {
      * Note that the {@link TalTicket} model is used for both TAL and third-party tickets just to simplify the sample,
      * when integrating with a real ticket system, the appropriate class for third-party tickets should be used.
      *
+     * Compiles the configuration mappings on every call, prefer {@link #mapSymphonyToThirdParty(TalTicket, MappingSnapshot, MemberDirectory)}
+     * with a snapshot compiled once per configuration.
+     *
      * @param ticket ticket instance that needs to be mapped
      * @param config adapter configuration
      * @return the mapped ticket
      */
     public static TalTicket mapSymphonyToThirdParty(TalTicket ticket, TicketSystemConfig config)
     {
-        mapTicketStatus(ticket, config);
-        mapTicketPriority(ticket, config);
-        mapRequestor(ticket, config);
-        mapAssignee(ticket, config);
-        mapCommentCreator(ticket, config);
-        mapAttachmentCreator(ticket, config);
+        return mapSymphonyToThirdParty(ticket, MappingSnapshot.compile(config), null);
+    }
+
+    /**
+     * Converts a TAL ticket into appropriate representation for a Ticket System
+     * and performs statuses/priorities/etc mapping.
+     *
+     * Users are resolved through the ConnectWise member directory first, and through the configured user mapping
+     * if the directory does not know them.
+     *
+     * @param ticket ticket instance that needs to be mapped
+     * @param mappings compiled adapter mappings
+     * @param members ConnectWise member directory, may be null
+     * @return the mapped ticket
+     */
+    public static TalTicket mapSymphonyToThirdParty(TalTicket ticket, MappingSnapshot mappings, MemberDirectory members)
+    {
+        mapTicketStatus(ticket, mappings);
+        mapTicketPriority(ticket, mappings);
+        mapRequestor(ticket, mappings, members);
+        mapAssignee(ticket, mappings, members);
+        mapCommentCreator(ticket, mappings, members);
+        mapAttachmentCreator(ticket, mappings, members);
+
+        return ticket;
+    }
+
+    /**
+     * Converts a ticket holding Ticket System values back into its TAL representation
+     * and performs statuses/priorities/etc reverse mapping.
+     *
+     * Values that have no reverse mapping are left untouched.
+     *
+     * @param ticket ticket instance that needs to be mapped
+     * @param mappings compiled adapter mappings
+     * @param members ConnectWise member directory, may be null
+     * @return the mapped ticket
+     */
+    public static TalTicket mapThirdPartyToSymphony(TalTicket ticket, MappingSnapshot mappings, MemberDirectory members)
+    {
+        String status = mappings.statusForSymphony(ticket.getStatus());
+        if (status != null)
+            ticket.setStatus(status);
+
+        String priority = mappings.priorityForSymphony(ticket.getPriority());
+        if (priority != null)
+            ticket.setPriority(priority);
+
+        ticket.setRequester(mapUserToSymphony(ticket.getRequester(), mappings, members));
+        ticket.setAssignedTo(mapUserToSymphony(ticket.getAssignedTo(), mappings, members));
+
+        Optional.ofNullable(ticket.getComments())
+                .orElse(Collections.emptySet())
+                .forEach(c -> c.setCreator(mapUserToSymphony(c.getCreator(), mappings, members)));
+        Optional.ofNullable(ticket.getAttachments())
+                .orElse(Collections.emptySet())
+                .forEach(a -> a.setCreator(mapUserToSymphony(a.getCreator(), mappings, members)));
 
         return ticket;
     }
@@ -48,10 +98,10 @@ public class TicketMapper {
     /**
      * Maps ticket status from Symphony to 3rd party ticketing system
      * @param ticket ticket instance that needs to be mapped
-     * @param config adapter configuration
+     * @param mappings compiled adapter mappings
      */
-    private static void mapTicketStatus(TalTicket ticket, TicketSystemConfig config) {
-        String thirdPartyStatus = config.getStatusMappingForThirdParty().get(ticket.getStatus());
+    private static void mapTicketStatus(TalTicket ticket, MappingSnapshot mappings) {
+        String thirdPartyStatus = mappings.statusForThirdParty(ticket.getStatus());
 
         if (thirdPartyStatus == null)
             return;
@@ -62,10 +112,10 @@ public class TicketMapper {
     /**
      * Maps ticket priority from Symphony to 3rd party ticketing system
      * @param ticket ticket instance that needs to be mapped
-     * @param config adapter configuration
+     * @param mappings compiled adapter mappings
      */
-    private static void mapTicketPriority(TalTicket ticket, TicketSystemConfig config) {
-        String thirdPartyPriority = config.getPriorityMappingForThirdParty().get(ticket.getPriority());
+    private static void mapTicketPriority(TalTicket ticket, MappingSnapshot mappings) {
+        String thirdPartyPriority = mappings.priorityForThirdParty(ticket.getPriority());
 
         if (thirdPartyPriority == null)
             return;
@@ -76,60 +126,88 @@ public class TicketMapper {
     /**
      * Maps ticket requestor from Symphony to 3rd party ticketing system
      * @param ticket ticket instance that needs to be mapped
-     * @param config adapter configuration
+     * @param mappings compiled adapter mappings
+     * @param members ConnectWise member directory, may be null
      */
-    private static void mapRequestor(TalTicket ticket, TicketSystemConfig config) {
-        ticket.setRequester(mapUser(ticket.getRequester(), config));
+    private static void mapRequestor(TalTicket ticket, MappingSnapshot mappings, MemberDirectory members) {
+        ticket.setRequester(mapUser(ticket.getRequester(), mappings, members));
     }
 
     /**
      * Maps ticket assignee from Symphony to 3rd party ticketing system
      * @param ticket ticket instance that needs to be mapped
-     * @param config adapter configuration
+     * @param mappings compiled adapter mappings
+     * @param members ConnectWise member directory, may be null
      */
-    private static void mapAssignee(TalTicket ticket, TicketSystemConfig config) {
-        ticket.setAssignedTo(mapUser(ticket.getAssignedTo(), config));
+    private static void mapAssignee(TalTicket ticket, MappingSnapshot mappings, MemberDirectory members) {
+        ticket.setAssignedTo(mapUser(ticket.getAssignedTo(), mappings, members));
     }
 
     /**
      * Maps comment requestors from Symphony to 3rd party ticketing system
      * @param ticket ticket instance that needs to be mapped
-     * @param config adapter configuration
+     * @param mappings compiled adapter mappings
+     * @param members ConnectWise member directory, may be null
      */
-    private static void mapCommentCreator(TalTicket ticket, TicketSystemConfig config) {
+    private static void mapCommentCreator(TalTicket ticket, MappingSnapshot mappings, MemberDirectory members) {
         Optional.ofNullable(ticket.getComments())
                 .orElse(Collections.emptySet())
                 .stream()
-                .forEach(c -> c.setCreator(mapUser(c.getCreator(), config)));
+                .forEach(c -> c.setCreator(mapUser(c.getCreator(), mappings, members)));
     }
 
     /**
      * Maps attachment requestors from Symphony to 3rd party ticketing system
      * @param ticket ticket instance that needs to be mapped
-     * @param config adapter configuration
+     * @param mappings compiled adapter mappings
+     * @param members ConnectWise member directory, may be null
      */
-    private static void mapAttachmentCreator(TalTicket ticket, TicketSystemConfig config) {
+    private static void mapAttachmentCreator(TalTicket ticket, MappingSnapshot mappings, MemberDirectory members) {
         Optional.ofNullable(ticket.getAttachments())
                 .orElse(Collections.emptySet())
                 .stream()
-                .forEach(c -> c.setCreator(mapUser(c.getCreator(), config)));
+                .forEach(c -> c.setCreator(mapUser(c.getCreator(), mappings, members)));
     }
 
     /**
      * Maps user ID from Symphony to 3rd party ticketing system
      * @param userId user identifier to map
-     * @param config adapter configuration
-     * @return mapped identifier eligible for 3rd party ticketing system
+     * @param mappings compiled adapter mappings
+     * @param members ConnectWise member directory, may be null
+     * @return mapped identifier eligible for 3rd party ticketing system, userId itself if it is not mapped
      */
-    private static String mapUser(String userId, TicketSystemConfig config) {
+    private static String mapUser(String userId, MappingSnapshot mappings, MemberDirectory members) {
         if (userId == null)
             return null;
 
-        String thirdPartyUserId = config.getUserMappingForThirdParty().get(userId).getThirdPartyId();
+        String thirdPartyUserId = members != null ? members.identifierFor(userId) : null;
+        if (thirdPartyUserId == null)
+            thirdPartyUserId = mappings.userForThirdParty(userId);
 
         if (thirdPartyUserId == null)
             return userId;
 
         return thirdPartyUserId;
     }
+
+    /**
+     * Maps user ID from 3rd party ticketing system to Symphony
+     * @param userId user identifier to map
+     * @param mappings compiled adapter mappings
+     * @param members ConnectWise member directory, may be null
+     * @return mapped Symphony identifier, userId itself if it is not mapped
+     */
+    private static String mapUserToSymphony(String userId, MappingSnapshot mappings, MemberDirectory members) {
+        if (userId == null)
+            return null;
+
+        String symphonyUserId = members != null ? members.emailFor(userId) : null;
+        if (symphonyUserId == null)
+            symphonyUserId = mappings.userForSymphony(userId);
+
+        if (symphonyUserId == null)
+            return userId;
+
+        return symphonyUserId;
+    }
 }
@@ -0,0 +1,264 @@
+package symphony.mock;
+
+import com.avispl.symphony.api.tal.dto.Attachment;
+import com.avispl.symphony.api.tal.dto.Comment;
+import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.insightsystems.symphony.tal.mocks.MockConnectWiseServer;
+import com.insightsystems.symphony.tal.mocks.MockTalConfigService;
+import com.insightsystems.symphony.tal.sample.SampleTalAdapterImpl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Allocation budget check: measures the bytes allocated by full ticket syncs against a local
+ * {@link MockConnectWiseServer}, for representative ticket sizes, and compares them to recorded budgets.
+ *
+ * Allocations are read from {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long[])} for the
+ * syncing thread and the HTTP client threads, the mock ConnectWise threads being left out. Each scenario is
+ * warmed up so the JIT settles first, then the median of the measured syncs is compared to its budget.
+ * AllocationBudgetTest runs the check in the test phase with fewer syncs; run on its own, it exits with status 1 if a
+ * scenario goes over its budget. Run it with -Dsun.net.httpserver.nodelay=true as the tests are, or every request to
+ * the mock ConnectWise waits for a delayed ACK.
+ *
+ * Arguments: path of the budget file (default allocation-budget.properties), then "--record" (or
+ * "--record=true") to write the measured values, with some headroom, as the new budgets.
+ */
+public class MockAllocationBudget {
+
+    private static final String USER = "lucap@insightsystems.com.au";
+    private static final int WARMUP_SYNCS = 20;
+    private static final int MEASURED_SYNCS = 11;
+
+    /**
+     * Headroom added to measured values when recording budgets
+     */
+    private static final double RECORD_HEADROOM = 1.15;
+
+    /**
+     * Representative ticket: number of comments and size of the description and comments, in characters
+     */
+    enum Scenario {
+        SMALL(0, 200),
+        MEDIUM(20, 500),
+        LARGE(100, 1000);
+
+        final int comments;
+        final int textSize;
+
+        Scenario(int comments, int textSize) {
+            this.comments = comments;
+            this.textSize = textSize;
+        }
+    }
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Random random = new Random(42);
+    private long commentSequence;
+    private int warmupSyncs = WARMUP_SYNCS;
+    private int measuredSyncs = MEASURED_SYNCS;
+
+    public static void main(String[] args) throws Exception {
+        Path budgetFile = Paths.get(args.length > 0 ? args[0] : "allocation-budget.properties");
+        List<String> arguments = Arrays.asList(args);
+        boolean record = arguments.contains("--record") || arguments.contains("--record=true");
+
+        Map<String, Long> measured = new MockAllocationBudget().measure();
+        if (record) {
+            write(budgetFile, measured);
+            System.out.println("MockAllocationBudget: budgets recorded to " + budgetFile);
+            return;
+        }
+
+        List<String> exceeded = check(budgetFile, measured);
+        if (!exceeded.isEmpty()) {
+            System.out.println("MockAllocationBudget: " + exceeded.size() + " scenario(s) over their allocation budget");
+            System.exit(1);
+        }
+        System.out.println("MockAllocationBudget: all scenarios within their allocation budget");
+    }
+
+    /**
+     * Compares measured allocations to their budgets, printing one line per measure
+     * @param budgetFile budget file
+     * @param measured median bytes allocated per sync, by "scenario.kind"
+     * @return measures over their budget, with their allocation and budget
+     */
+    static List<String> check(Path budgetFile, Map<String, Long> measured) throws IOException {
+        Properties budgets = new Properties();
+        try (Reader reader = Files.newBufferedReader(budgetFile)) {
+            budgets.load(reader);
+        }
+
+        List<String> exceeded = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : measured.entrySet()) {
+            String budget = budgets.getProperty(entry.getKey());
+            if (budget == null) {
+                System.out.printf("  %-16s %,12d bytes/sync, no budget%n", entry.getKey(), entry.getValue());
+                continue;
+            }
+            long limit = Long.parseLong(budget.trim());
+            boolean over = entry.getValue() > limit;
+            System.out.printf("  %-16s %,12d bytes/sync, budget %,12d%s%n", entry.getKey(), entry.getValue(), limit,
+                    over ? "  OVER BUDGET" : "");
+            if (over)
+                exceeded.add(String.format("%s %,d bytes/sync, budget %,d", entry.getKey(), entry.getValue(), limit));
+        }
+        return exceeded;
+    }
+
+    /**
+     * Changes the number of syncs run per scenario and kind of sync, i.e. fewer for a quicker check
+     * @param warmupSyncs syncs run before measuring
+     * @param measuredSyncs syncs measured, the median being kept
+     * @return this check
+     */
+    MockAllocationBudget setSyncs(int warmupSyncs, int measuredSyncs) {
+        this.warmupSyncs = warmupSyncs;
+        this.measuredSyncs = Math.max(1, measuredSyncs);
+        return this;
+    }
+
+    /**
+     * Runs every scenario against a fresh mock ConnectWise and adapter
+     * @return median bytes allocated per sync, by "scenario.kind"
+     */
+    private Map<String, Long> measure() throws Exception {
+        Map<String, Long> measured = new LinkedHashMap<>();
+        for (Scenario scenario : Scenario.values())
+            measured.putAll(measure(scenario));
+        return measured;
+    }
+
+    /**
+     * Runs a scenario against a fresh mock ConnectWise and adapter
+     * @param scenario ticket size
+     * @return median bytes allocated per sync, by "scenario.kind"
+     */
+    Map<String, Long> measure(Scenario scenario) throws Exception {
+        Map<String, Long> measured = new LinkedHashMap<>();
+        MockConnectWiseServer connectWise = new MockConnectWiseServer().start();
+        SampleTalAdapterImpl adapter = new SampleTalAdapterImpl();
+        adapter.setTalConfigService(new MockTalConfigService(connectWise.ticketSourceConfig()));
+        adapter.init();
+        try {
+            String name = scenario.name().toLowerCase(Locale.ROOT);
+            System.out.printf("MockAllocationBudget: %s ticket, %d comments of %d characters%n", name,
+                    scenario.comments, scenario.textSize);
+            measured.put(name + ".create", measureCreate(adapter, scenario));
+            measured.put(name + ".unchanged", measureUpdate(adapter, scenario, false));
+            measured.put(name + ".update", measureUpdate(adapter, scenario, true));
+        } finally {
+            adapter.destroy();
+            connectWise.stop();
+        }
+        return measured;
+    }
+
+    /**
+     * Syncs of new tickets, creating them on ConnectWise
+     */
+    private long measureCreate(SampleTalAdapterImpl adapter, Scenario scenario) throws Exception {
+        long[] samples = new long[measuredSyncs];
+        for (int i = -warmupSyncs; i < measuredSyncs; i++) {
+            TalTicket ticket = newTicket(scenario);
+            long allocated = allocatedBytes();
+            adapter.syncTalTicket(ticket);
+            if (i >= 0)
+                samples[i] = allocatedBytes() - allocated;
+        }
+        return median(samples);
+    }
+
+    /**
+     * Syncs of an existing ticket, either unchanged or with a new comment and a status change
+     */
+    private long measureUpdate(SampleTalAdapterImpl adapter, Scenario scenario, boolean changed) throws Exception {
+        TalTicket ticket = adapter.syncTalTicket(newTicket(scenario));
+        long[] samples = new long[measuredSyncs];
+        for (int i = -warmupSyncs; i < measuredSyncs; i++) {
+            if (changed) {
+                ticket.setStatus(i % 2 == 0 ? "ClosePending" : "Open");
+                ticket.getComments().add(newComment(scenario));
+                ticket.setLastModified(System.currentTimeMillis());
+            }
+            long allocated = allocatedBytes();
+            ticket = adapter.syncTalTicket(ticket);
+            if (i >= 0)
+                samples[i] = allocatedBytes() - allocated;
+        }
+        return median(samples);
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread and the HTTP client threads
+     */
+    private long allocatedBytes() {
+        List<Long> ids = new ArrayList<>();
+        ids.add(Thread.currentThread().getId());
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null && info.getThreadName().startsWith("HttpClient"))
+                ids.add(info.getThreadId());
+        }
+
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(ids.stream().mapToLong(Long::longValue).toArray())) {
+            if (bytes > 0)
+                total += bytes;
+        }
+        return total;
+    }
+
+    private TalTicket newTicket(Scenario scenario) {
+        Set<Comment> comments = new HashSet<>();
+        for (int c = 0; c < scenario.comments; c++)
+            comments.add(newComment(scenario));
+
+        return new TalTicket(UUID.randomUUID().toString(), UUID.randomUUID().toString(), null, null, "", "Major",
+                "Open", "<ALLOCATION> Alert on device", text(scenario.textSize), USER, USER, comments,
+                new HashSet<Attachment>(), new HashMap<>(), System.currentTimeMillis());
+    }
+
+    private Comment newComment(Scenario scenario) {
+        return new Comment("c" + ++commentSequence, null, USER, text(scenario.textSize), System.currentTimeMillis());
+    }
+
+    private String text(int size) {
+        StringBuilder builder = new StringBuilder(size + 32);
+        while (builder.length() < size)
+            builder.append("Device reported state ").append(random.nextInt(1000)).append(". ");
+        builder.setLength(size);
+        return builder.toString();
+    }
+
+    private static long median(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Records measured allocations, with {@link #RECORD_HEADROOM}, as the new budgets
+     * @param budgetFile budget file, replaced
+     * @param measured median bytes allocated per sync, by "scenario.kind"
+     */
+    static void write(Path budgetFile, Map<String, Long> measured) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(budgetFile)) {
+            writer.write("# Bytes allocated per sync, checked by AllocationBudgetTest in \"mvn test\"\n");
+            writer.write("# Recorded by MockAllocationBudget, measured values plus "
+                    + Math.round((RECORD_HEADROOM - 1) * 100) + "% headroom\n");
+            for (Map.Entry<String, Long> entry : measured.entrySet()) {
+                long budget = (long) Math.ceil(entry.getValue() * RECORD_HEADROOM / 1024) * 1024;
+                writer.write(entry.getKey() + "=" + budget + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package symphony.mock;
+
+import com.avispl.symphony.api.tal.dto.Attachment;
+import com.avispl.symphony.api.tal.dto.Comment;
+import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.avispl.symphony.api.tal.error.TalAdapterSyncException;
+import com.insightsystems.symphony.tal.mocks.FaultInjector;
+import com.insightsystems.symphony.tal.mocks.MockConnectWiseServer;
+import com.insightsystems.symphony.tal.mocks.MockTalConfigService;
+import com.insightsystems.symphony.tal.mocks.MockTalProxy;
+import com.insightsystems.symphony.tal.sample.ConnectWiseConfigProperty;
+import com.insightsystems.symphony.tal.sample.LatencyHistogram;
+import com.insightsystems.symphony.tal.sample.SampleTalAdapterImpl;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator: drives streams of Symphony ticket updates through {@link MockTalProxy} into one adapter per
+ * account, concurrently and at a fixed rate, then reports throughput, latency, ConnectWise calls per sync and errors.
+ *
+ * Updates are issued open-loop: each sync is scheduled at a fixed interval whatever the adapter response time, and
+ * its latency is measured from its scheduled time, so that queueing behind slow syncs is accounted for.
+ *
+ * By default the adapters sync with a local {@link MockConnectWiseServer}; "--offline=false" targets the
+ * ConnectWise instance configured in {@link MockTalConfigService} instead.
+ *
+ * Options, as --name=value: accounts, tickets (per account), rate (syncs per second), duration (seconds),
+ * threads, skew (Zipf exponent of ticket popularity, 0 for uniform), comments (initial comments per ticket),
+ * commentGrowth (probability a sync adds a comment), commentEdit (probability a sync edits a comment),
+ * commentSize (characters), fieldChange (probability a sync changes status or priority), offline,
+ * latencyMedian and latencySigma (mock ConnectWise log-normal latency in milliseconds), throttleRate,
+ * errorRate (mock ConnectWise fault rates), hedgePercentile (adapter GET hedging, 0 for none), seed.
+ *
+ * i.e. "--accounts=4 --tickets=500 --rate=200 --duration=120 --skew=1.2"
+ */
+public class MockLoadGenerator {
+
+    private static final String USER = "lucap@insightsystems.com.au";
+    private static final String[] STATUSES = {"Open", "ClosePending", "Close"};
+    private static final String[] PRIORITIES = {"Critical", "Major", "Minor", "Informational"};
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final Map<String, String> options;
+    private final MockTalProxy proxy = new MockTalProxy();
+    private final List<SampleTalAdapterImpl> adapters = new ArrayList<>();
+    private final List<UUID> accounts = new ArrayList<>();
+    private final Map<UUID, TicketState[]> tickets = new HashMap<>();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> latencyByPriority = new ConcurrentHashMap<>();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final AtomicLong commentSequence = new AtomicLong();
+
+    private double[] popularity;
+    private MockConnectWiseServer connectWise;
+
+    /**
+     * State of a generated ticket, the Symphony side of a ticket as it evolves over its updates
+     */
+    private static class TicketState {
+        final TalTicket ticket;
+
+        TicketState(TalTicket ticket) {
+            this.ticket = ticket;
+        }
+    }
+
+    public MockLoadGenerator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new MockLoadGenerator(options).run();
+    }
+
+    /**
+     * Sets up the accounts, runs the load and prints the report
+     */
+    public void run() throws Exception {
+        int accountCount = intOption("accounts", 1);
+        int ticketCount = intOption("tickets", 100);
+        double rate = doubleOption("rate", 20);
+        long duration = TimeUnit.SECONDS.toNanos(intOption("duration", 60));
+        int threads = intOption("threads", 16);
+
+        setUp(accountCount, ticketCount);
+        System.out.printf("MockLoadGenerator: %d account(s), %d ticket(s) each, %.1f syncs/s for %ds on %d threads%n",
+                accountCount, ticketCount, rate, TimeUnit.NANOSECONDS.toSeconds(duration), threads);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long nextReport = start + REPORT_INTERVAL;
+        long reported = 0;
+        for (long intended = start; intended < start + duration; intended += interval) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+
+            long scheduled = intended;
+            executor.execute(() -> sync(scheduled));
+
+            if (System.nanoTime() >= nextReport) {
+                long done = completed.sum() + failed.sum();
+                System.out.printf("  %4ds: %.1f syncs/s, queued %d, failed %d, p99 %.0fms%n",
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start),
+                        (done - reported) * 1e9 / REPORT_INTERVAL, executor.getQueue().size(), failed.sum(),
+                        latency.getPercentileMillis(99));
+                reported = done;
+                nextReport += REPORT_INTERVAL;
+            }
+        }
+
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.MINUTES))
+            System.out.println("MockLoadGenerator: syncs still running after 5 minutes, reporting anyway");
+        long elapsed = System.nanoTime() - start;
+
+        report(elapsed);
+        tearDown(executor);
+    }
+
+    private void setUp(int accountCount, int ticketCount) throws Exception {
+        boolean offline = Boolean.parseBoolean(options.getOrDefault("offline", "true"));
+        Map<String, String> ticketSourceConfig = new HashMap<>();
+        if (offline) {
+            connectWise = new MockConnectWiseServer().start();
+            FaultInjector faults = connectWise.faults();
+            faults.setLatency(FaultInjector.LatencyDistribution.logNormal(doubleOption("latencyMedian", 20),
+                    doubleOption("latencySigma", 0.5)));
+            faults.setThrottleRate(doubleOption("throttleRate", 0), 1);
+            faults.setServerErrorRate(doubleOption("errorRate", 0), 503);
+            if (options.containsKey("seed"))
+                faults.setSeed(Long.parseLong(options.get("seed")));
+            ticketSourceConfig = connectWise.ticketSourceConfig();
+        }
+        if (options.containsKey("hedgePercentile")) {
+            ticketSourceConfig = new HashMap<>(ticketSourceConfig);
+            ticketSourceConfig.put(ConnectWiseConfigProperty.HEDGE_PERCENTILE, options.get("hedgePercentile"));
+        }
+
+        Random random = options.containsKey("seed") ? new Random(Long.parseLong(options.get("seed"))) : new Random();
+        for (int a = 0; a < accountCount; a++) {
+            UUID account = new UUID(0x5ca1ab1eL, a);
+            SampleTalAdapterImpl adapter = new SampleTalAdapterImpl();
+            adapter.setAccountId(account);
+            adapter.setTalProxy(proxy);
+            adapter.setTalConfigService(new MockTalConfigService(ticketSourceConfig));
+            adapter.init();
+            adapters.add(adapter);
+            accounts.add(account);
+
+            TicketState[] states = new TicketState[ticketCount];
+            for (int t = 0; t < ticketCount; t++)
+                states[t] = new TicketState(newTicket(a, t, random));
+            tickets.put(account, states);
+        }
+
+        popularity = zipf(ticketCount, doubleOption("skew", 1.0));
+    }
+
+    private void tearDown(ExecutorService executor) {
+        executor.shutdownNow();
+        for (SampleTalAdapterImpl adapter : adapters)
+            adapter.destroy();
+        if (connectWise != null)
+            connectWise.stop();
+    }
+
+    /**
+     * Updates a ticket and syncs it
+     * @param intended time the sync was scheduled at
+     */
+    private void sync(long intended) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID account = accounts.get(random.nextInt(accounts.size()));
+        TicketState state = tickets.get(account)[pick(random.nextDouble())];
+
+        // Symphony sends the updates of a ticket one after the other
+        synchronized (state) {
+            update(state.ticket, random);
+            String priority = state.ticket.getPriority();
+            long begin = System.nanoTime();
+            try {
+                proxy.publish(account, state.ticket);
+                completed.increment();
+            } catch (TalAdapterSyncException e) {
+                failed.increment();
+                error("TalAdapterSyncException " + (e.getHttpStatus() != null ? e.getHttpStatus() : "no status"));
+            } catch (RuntimeException e) {
+                failed.increment();
+                error(e.getClass().getSimpleName() + " " + e.getMessage());
+            }
+            long end = System.nanoTime();
+            serviceTime.record(end - begin);
+            latency.record(end - intended);
+            latencyByPriority.computeIfAbsent(priority, k -> new LatencyHistogram()).record(end - intended);
+        }
+    }
+
+    /**
+     * Applies the changes a Symphony user or alert would make to a ticket between two syncs
+     */
+    private void update(TalTicket ticket, Random random) {
+        if (random.nextDouble() < doubleOption("fieldChange", 0.2)) {
+            if (random.nextBoolean())
+                ticket.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+            else
+                ticket.setPriority(PRIORITIES[random.nextInt(PRIORITIES.length)]);
+        }
+
+        if (random.nextDouble() < doubleOption("commentGrowth", 0.3))
+            ticket.getComments().add(newComment(random));
+
+        if (random.nextDouble() < doubleOption("commentEdit", 0.05) && !ticket.getComments().isEmpty()) {
+            List<Comment> comments = new ArrayList<>(ticket.getComments());
+            Comment comment = comments.get(random.nextInt(comments.size()));
+            comment.setText(text(random) + " (edited)");
+            comment.setLastModified(System.currentTimeMillis());
+            // Comments are hashed on their content, so the set is rebuilt after the edit
+            ticket.setComments(new HashSet<>(comments));
+        }
+        ticket.setLastModified(System.currentTimeMillis());
+    }
+
+    private TalTicket newTicket(int account, int index, Random random) {
+        String symphonyId = account + "-" + index;
+        Set<Comment> comments = new HashSet<>();
+        for (int c = intOption("comments", 0); c > 0; c--)
+            comments.add(newComment(random));
+
+        return new TalTicket(symphonyId, symphonyId, null, null, "", PRIORITIES[random.nextInt(PRIORITIES.length)],
+                "Open", "<LOAD> Alert on device " + symphonyId, "Generated alert ticket " + symphonyId, USER, USER,
+                comments, new HashSet<Attachment>(), new HashMap<>(), System.currentTimeMillis());
+    }
+
+    private Comment newComment(Random random) {
+        return new Comment("c" + commentSequence.incrementAndGet(), null, USER, text(random),
+                System.currentTimeMillis());
+    }
+
+    private String text(Random random) {
+        int size = intOption("commentSize", 200);
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size)
+            builder.append("Device reported state ").append(random.nextInt(1000)).append(". ");
+        builder.setLength(size);
+        return builder.toString();
+    }
+
+    /**
+     * Cumulative distribution of ticket popularity, ticket 0 being the hottest
+     * @param count number of tickets
+     * @param exponent Zipf exponent, 0 for uniform popularity
+     */
+    private static double[] zipf(int count, double exponent) {
+        double[] cumulative = new double[count];
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            total += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < count; i++)
+            cumulative[i] /= total;
+        return cumulative;
+    }
+
+    private int pick(double draw) {
+        int index = Arrays.binarySearch(popularity, draw);
+        return Math.min(index >= 0 ? index : -index - 1, popularity.length - 1);
+    }
+
+    private void error(String error) {
+        errors.computeIfAbsent(error, k -> new LongAdder()).increment();
+    }
+
+    private void report(long elapsed) {
+        long syncs = completed.sum() + failed.sum();
+        long calls = 0;
+        for (SampleTalAdapterImpl adapter : adapters) {
+            for (long count : adapter.getMetrics().getCallCounts().values())
+                calls += count;
+        }
+
+        System.out.println("MockLoadGenerator: results");
+        System.out.printf("  syncs:          %d (%d failed)%n", syncs, failed.sum());
+        System.out.printf("  throughput:     %.1f syncs/s%n", syncs * 1e9 / elapsed);
+        System.out.printf("  latency:        p50 %.1fms  p99 %.1fms  p999 %.1fms  max %.1fms%n",
+                latency.getPercentileMillis(50), latency.getPercentileMillis(99), latency.getPercentileMillis(99.9),
+                latency.getMaxMillis());
+        System.out.printf("  service time:   p50 %.1fms  p99 %.1fms  p999 %.1fms%n",
+                serviceTime.getPercentileMillis(50), serviceTime.getPercentileMillis(99),
+                serviceTime.getPercentileMillis(99.9));
+        for (String priority : PRIORITIES) {
+            LatencyHistogram histogram = latencyByPriority.get(priority);
+            if (histogram != null)
+                System.out.printf("    %-13s p50 %.1fms  p99 %.1fms%n", priority, histogram.getPercentileMillis(50),
+                        histogram.getPercentileMillis(99));
+        }
+        System.out.printf("  API calls/sync: %.2f (%d calls)%n", syncs == 0 ? 0 : (double) calls / syncs, calls);
+        if (connectWise != null)
+            System.out.printf("  mock ConnectWise: %d requests, %d tickets%n", connectWise.getRequestCount(),
+                    connectWise.getTicketCount());
+        errors.entrySet().stream()
+                .sorted(Map.Entry.<String, LongAdder>comparingByValue(Comparator.comparingLong(LongAdder::sum)).reversed())
+                .forEach(e -> System.out.printf("  error:          %d x %s%n", e.getValue().sum(), e.getKey()));
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private double doubleOption(String name, double defaultValue) {
+        return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+    }
+}
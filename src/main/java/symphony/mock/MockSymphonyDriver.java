@@ -1,18 +1,28 @@
 package symphony.mock;
 
 import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.insightsystems.symphony.tal.mocks.MockConnectWiseServer;
+import com.insightsystems.symphony.tal.mocks.MockTalConfigService;
 import com.insightsystems.symphony.tal.sample.SampleTalAdapterImpl;
 
 import java.net.MalformedURLException;
 
 public class MockSymphonyDriver {
-    public static void main(String[] args) {
+    /**
+     * Runs a sync against the ConnectWise instance configured in MockTalConfigService,
+     * or against a local MockConnectWiseServer when run with the "offline" argument
+     */
+    public static void main(String[] args) throws Exception {
+        boolean offline = args.length > 0 && args[0].equals("offline");
+        MockConnectWiseServer connectWise = offline ? new MockConnectWiseServer().start() : null;
 
         // --- MOCK ENVIRONMENT SETUP --- //
         MockSymphony Symphony = new MockSymphony();
 
         // Instance of TalAdapter implementation is created
         SampleTalAdapterImpl talAdapter = new SampleTalAdapterImpl();
+        if (offline)
+            talAdapter.setTalConfigService(new MockTalConfigService(connectWise.ticketSourceConfig()));
 
         Symphony.setTAL(talAdapter);
 
@@ -26,13 +36,16 @@ public class MockSymphonyDriver {
         // --- TEST TICKET UPDATE --- //
 
         // Get symphony ticket
-        TalTicket newTicket = Symphony.getTicket();
+        TalTicket newTicket = offline ? Symphony.getTicket2() : Symphony.getTicket();
         System.out.println("MockSymphonyDriver: Created ticket: " + newTicket);
 
         // Symphony updates TAL
         TalTicket ThirdPartyTicket = Symphony.updateTal(newTicket);
         System.out.println("MockSymphonyDriver: Complete ticket: " + ThirdPartyTicket);
 
+        talAdapter.destroy();
+        if (offline)
+            connectWise.stop();
 
 
     }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors of asynchronous ticket syncs.
+ *
+ * This is the Java 21 variant, packaged under META-INF/versions/21 of the multi-release jar: every sync runs on
+ * its own virtual thread, which releases its carrier thread while blocked on a ConnectWise call, so thousands of
+ * concurrent syncs need neither a large pool nor a queue. ConnectWise concurrency stays bounded by the client
+ * limiter.
+ */
+final class SyncExecutors {
+
+    private SyncExecutors() {
+    }
+
+    /**
+     * @param platformThreads ignored, virtual threads are not pooled
+     * @return new executor of syncs
+     */
+    static ExecutorService newSyncExecutor(int platformThreads) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("cw-sync-", 1).factory());
+    }
+
+    /**
+     * @return new executor of hedged ConnectWise requests, each request of a hedged GET running on its own thread
+     */
+    static ExecutorService newHedgeExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("cw-hedge-", 1).factory());
+    }
+
+    /**
+     * @return description of the threads syncs run on, for logs
+     */
+    static String describe() {
+        return "virtual threads";
+    }
+}
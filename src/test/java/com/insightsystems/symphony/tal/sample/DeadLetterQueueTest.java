@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.avispl.symphony.api.tal.dto.Attachment;
+import com.avispl.symphony.api.tal.dto.Comment;
+import com.avispl.symphony.api.tal.dto.TalTicket;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Dead letters kept in a file across retries
+ */
+class DeadLetterQueueTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void retryKeepsTheLetterAsReceived() throws Exception {
+        Path file = DeadLetterQueue.file(directory, "account");
+        DeadLetterQueue failed = new DeadLetterQueue();
+        failed.open(file);
+        failed.add(ticket("Printer on fire"), "sync", "Service Unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+
+        // due at once on the next start
+        String saved = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        Files.write(file, saved.replaceAll("\"nextAttemptAt\":\\d+", "\"nextAttemptAt\":0")
+                .getBytes(StandardCharsets.UTF_8));
+        DeadLetterQueue queue = new DeadLetterQueue();
+        queue.open(file);
+
+        List<TalTicket> due = queue.takeDue(1);
+        assertEquals(1, due.size());
+        TalTicket retried = due.get(0);
+        // the adapter tracks the ticket as received when the retry is submitted...
+        TalTicket received = SyncCheckpoint.copy(retried);
+        // ...then the sync takes the text of the note edited in ConnectWise, and fails again
+        retried.getComments().iterator().next().setText("Printer fixed");
+        queue.add(received, "sync", "Service Unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+
+        DeadLetterQueue.DeadLetter[] letters = mapper.readValue(file.toFile(), DeadLetterQueue.DeadLetter[].class);
+        assertEquals(1, letters.length);
+        assertEquals(2, letters[0].getFailures());
+        assertEquals("Printer on fire", letters[0].getTicket().getComments().iterator().next().getText());
+    }
+
+    private static TalTicket ticket(String comment) {
+        Set<Comment> comments = new HashSet<>();
+        comments.add(new Comment("comment-1", "1", "Jane Doe", comment, 1_000L));
+        return new TalTicket("ticket-1", "http://symphony/ticket-1", "42", "http://connectwise/42", "customer",
+                "Major", "Open", "Printer", "Printer on fire", null, null, comments, new HashSet<Attachment>(),
+                new HashMap<>(), 1_000L);
+    }
+}
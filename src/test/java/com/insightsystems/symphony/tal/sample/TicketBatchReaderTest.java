@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 AVI-SPL Inc. All Rights Reserved.
+ */
+
+package com.insightsystems.symphony.tal.sample;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.insightsystems.symphony.tal.mocks.MockConnectWiseServer;
+import com.insightsystems.symphony.tal.mocks.MockTalConfigService;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Batched ticket reads against the mock ConnectWise
+ */
+class TicketBatchReaderTest {
+
+    private MockConnectWiseServer connectWise;
+    private ConfigSnapshot snapshot;
+    private ExecutorService syncs;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connectWise = new MockConnectWiseServer().start();
+        Map<String, String> config = connectWise.ticketSourceConfig();
+        // long enough for a second sync to join the batch of the first
+        config.put(ConnectWiseConfigProperty.TICKET_BATCH_WAIT, "500");
+        snapshot = ConfigSnapshot.compile(1, new MockTalConfigService(config)
+                .retrieveTicketSystemConfig(UUID.randomUUID()), new AdapterMetrics());
+        syncs = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        syncs.shutdownNow();
+        snapshot.retire();
+        connectWise.stop();
+    }
+
+    @Test
+    void concurrentReadsOfOneTicketShareTheRead() throws Exception {
+        int ticketId = connectWise.addTicket("Hot ticket", "New");
+        String url = connectWise.getUrl() + MockConnectWiseServer.API_PATH + "/" + ticketId;
+
+        Future<JSONObject> first = syncs.submit(() -> read(url));
+        Future<JSONObject> second = syncs.submit(() -> read(url));
+
+        // the deadline of the syncs is 10 seconds: a sync left waiting on the batch would time out well after this
+        assertEquals(ticketId, first.get(3, TimeUnit.SECONDS).getInt("id"));
+        assertEquals(ticketId, second.get(3, TimeUnit.SECONDS).getInt("id"));
+        assertEquals(1L, connectWise.getRequestCounts().get("GET /service/tickets/{id}"));
+    }
+
+    private JSONObject read(String url) throws Exception {
+        return new SyncContext(snapshot, SyncTrace.NOOP, SyncPriority.MAJOR, Deadline.after(10_000)).getTicket(url);
+    }
+}
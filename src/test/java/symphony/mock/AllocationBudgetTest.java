@@ -0,0 +1,39 @@
+package symphony.mock;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Allocation budget of full ticket syncs, checked with {@link MockAllocationBudget} in the test phase.
+ *
+ * Each scenario runs fewer syncs than the standalone check, large tickets fewest since each of their syncs writes
+ * a hundred notes; the budgets are recorded with these counts. After an intended change, record new budgets with:
+ *     mvn test -Dtest=AllocationBudgetTest -Dallocation.record=true
+ */
+class AllocationBudgetTest {
+
+    private static final Path BUDGET_FILE = Paths.get("allocation-budget.properties");
+
+    @Test
+    void syncsStayWithinTheirAllocationBudget() throws Exception {
+        Map<String, Long> measured = new LinkedHashMap<>();
+        // Scenarios run in order in one JVM, so the large ticket syncs start with the JIT warmed up by the others
+        measured.putAll(new MockAllocationBudget().setSyncs(10, 5).measure(MockAllocationBudget.Scenario.SMALL));
+        measured.putAll(new MockAllocationBudget().setSyncs(10, 5).measure(MockAllocationBudget.Scenario.MEDIUM));
+        measured.putAll(new MockAllocationBudget().setSyncs(5, 3).measure(MockAllocationBudget.Scenario.LARGE));
+
+        if (Boolean.getBoolean("allocation.record")) {
+            MockAllocationBudget.write(BUDGET_FILE, measured);
+            return;
+        }
+        List<String> exceeded = MockAllocationBudget.check(BUDGET_FILE, measured);
+        assertTrue(exceeded.isEmpty(), "over their allocation budget: " + exceeded);
+    }
+}